@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.crypto.keygen;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link StringKeyGenerator} that generates Base64-encoded random keys, like {@link Base64StringKeyGenerator},
+ * for use under high concurrency, for example, when generating token values.
+ *
+ * <p>
+ * A {@code SecureRandom} shared by all threads serializes the generation of keys, so each thread uses its own
+ * {@code SecureRandom}, a {@code DRBG} (Java 9+) or {@code SHA1PRNG} instance, seeded from a shared
+ * {@code SecureRandom}. The {@code SecureRandom} of each thread is {@link #setReseedInterval(Duration) reseeded}
+ * periodically, which only accesses the shared {@code SecureRandom} once per interval.
+ *
+ * @since 0.2.0
+ * @see Base64StringKeyGenerator
+ */
+public final class ConcurrentBase64StringKeyGenerator implements StringKeyGenerator {
+
+	private static final int DEFAULT_KEY_LENGTH = 32;
+
+	private static final int SEED_LENGTH = 32;
+
+	private static final String[] ALGORITHMS = { "DRBG", "SHA1PRNG" };
+
+	private final SecureRandom seedSource = new SecureRandom();
+
+	private final ThreadLocal<Generator> generators = ThreadLocal.withInitial(Generator::new);
+
+	private final Base64.Encoder encoder;
+
+	private final int keyLength;
+
+	private volatile long reseedIntervalNanos = Duration.ofHours(1).toNanos();
+
+	/**
+	 * Constructs a {@code ConcurrentBase64StringKeyGenerator} that generates 32-byte keys
+	 * using the provided {@code Base64.Encoder}.
+	 *
+	 * @param encoder the {@code Base64.Encoder}
+	 */
+	public ConcurrentBase64StringKeyGenerator(Base64.Encoder encoder) {
+		this(encoder, DEFAULT_KEY_LENGTH);
+	}
+
+	/**
+	 * Constructs a {@code ConcurrentBase64StringKeyGenerator} using the provided parameters.
+	 *
+	 * @param encoder the {@code Base64.Encoder}
+	 * @param keyLength the number of random bytes of a key
+	 */
+	public ConcurrentBase64StringKeyGenerator(Base64.Encoder encoder, int keyLength) {
+		Assert.notNull(encoder, "encoder cannot be null");
+		Assert.isTrue(keyLength >= DEFAULT_KEY_LENGTH, "keyLength must be greater than or equal to " + DEFAULT_KEY_LENGTH);
+		this.encoder = encoder;
+		this.keyLength = keyLength;
+	}
+
+	/**
+	 * Sets the interval after which the {@code SecureRandom} of a thread is reseeded. The default is 1 hour.
+	 *
+	 * @param reseedInterval the interval after which the {@code SecureRandom} of a thread is reseeded
+	 */
+	public void setReseedInterval(Duration reseedInterval) {
+		Assert.notNull(reseedInterval, "reseedInterval cannot be null");
+		Assert.isTrue(!reseedInterval.isNegative() && !reseedInterval.isZero(), "reseedInterval must be greater than Duration.ZERO");
+		this.reseedIntervalNanos = reseedInterval.toNanos();
+	}
+
+	@Override
+	public String generateKey() {
+		byte[] key = new byte[this.keyLength];
+		this.generators.get().nextBytes(key);
+		return this.encoder.encodeToString(key);
+	}
+
+	private byte[] nextSeed() {
+		byte[] seed = new byte[SEED_LENGTH];
+		// nextBytes() rather than generateSeed(), which may block
+		this.seedSource.nextBytes(seed);
+		return seed;
+	}
+
+	private static SecureRandom newSecureRandom() {
+		for (String algorithm : ALGORITHMS) {
+			try {
+				return SecureRandom.getInstance(algorithm);
+			}
+			catch (NoSuchAlgorithmException ex) {
+				// Try the next algorithm
+			}
+		}
+		return new SecureRandom();
+	}
+
+	private final class Generator {
+
+		private final SecureRandom secureRandom = newSecureRandom();
+
+		private long seededAt;
+
+		private Generator() {
+			reseed();
+		}
+
+		private void nextBytes(byte[] bytes) {
+			if (System.nanoTime() - this.seededAt >= reseedIntervalNanos) {
+				reseed();
+			}
+			this.secureRandom.nextBytes(bytes);
+		}
+
+		private void reseed() {
+			// A seed supplements, rather than replaces, the existing seed of a DRBG, which seeds itself
+			// on instantiation. A SHA1PRNG seeded before its first use does not seed itself, so its
+			// seed is taken from the shared SecureRandom, and later seeds supplement it as well
+			this.secureRandom.setSeed(nextSeed());
+			this.seededAt = System.nanoTime();
+		}
+
+	}
+
+}
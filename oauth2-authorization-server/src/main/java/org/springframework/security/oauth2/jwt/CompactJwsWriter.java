@@ -0,0 +1,344 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.jwt;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Writes the JWS Signing Input and the JWS Compact Serialization of a {@link JwtClaimsSet}
+ * to reusable, per-thread buffers, without building an intermediate JSON object.
+ *
+ * <p>
+ * The claims are written the same way as the Nimbus {@code JWTClaimsSet}: the registered date claims
+ * (and any {@code Date}) as seconds since the epoch, a single-valued audience as a string,
+ * and claims with a {@code null} value, an empty subject or an empty audience are omitted.
+ *
+ * @since 0.2.0
+ * @see NimbusJwsEncoder#setDirectSerializationEnabled(boolean)
+ * @see <a target="_blank" href="https://tools.ietf.org/html/rfc7515#section-7.1">JWS Compact Serialization</a>
+ */
+final class CompactJwsWriter {
+
+	private static final ThreadLocal<CompactJwsWriter> WRITERS = ThreadLocal.withInitial(CompactJwsWriter::new);
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// Buffers grown beyond this capacity (by unusually large tokens) are not retained
+	private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+	private static final byte[] BASE64URL_ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+	private final Buffer json = new Buffer();
+
+	private final Buffer compact = new Buffer();
+
+	private int signingInputLength;
+
+	private CompactJwsWriter() {
+	}
+
+	static CompactJwsWriter get() {
+		CompactJwsWriter writer = WRITERS.get();
+		writer.json.reset();
+		writer.compact.reset();
+		writer.signingInputLength = 0;
+		return writer;
+	}
+
+	/**
+	 * Writes the JWS Signing Input, {@code BASE64URL(header) || '.' || BASE64URL(claims)}.
+	 * @param encodedHeader the ASCII bytes of the Base64url encoded JOSE header
+	 * @param claims the claims
+	 * @param jwtId the {@code jti} claim, which overrides the {@code jti} of the claims
+	 * @return {@code true} if the claims were written, or {@code false} if a claim value is of an unsupported type
+	 */
+	boolean writeSigningInput(byte[] encodedHeader, JwtClaimsSet claims, String jwtId) {
+		if (!writeClaims(claims.getClaims(), jwtId)) {
+			return false;
+		}
+		this.compact.write(encodedHeader, 0, encodedHeader.length);
+		this.compact.write('.');
+		writeBase64Url(this.json.bytes, 0, this.json.length);
+		this.signingInputLength = this.compact.length;
+		return true;
+	}
+
+	/**
+	 * Returns a copy of the JWS Signing Input.
+	 * @return the JWS Signing Input
+	 */
+	byte[] getSigningInput() {
+		return Arrays.copyOf(this.compact.bytes, this.signingInputLength);
+	}
+
+	/**
+	 * Returns the JWS Compact Serialization, {@code signing input || '.' || BASE64URL(signature)}.
+	 * @param encodedSignature the Base64url encoded signature
+	 * @return the JWS Compact Serialization
+	 */
+	String toCompactSerialization(String encodedSignature) {
+		this.compact.write('.');
+		for (int i = 0; i < encodedSignature.length(); i++) {
+			this.compact.write(encodedSignature.charAt(i));
+		}
+		String jws = new String(this.compact.bytes, 0, this.compact.length, StandardCharsets.US_ASCII);
+		this.json.trim();
+		this.compact.trim();
+		return jws;
+	}
+
+	private boolean writeClaims(Map<String, Object> claims, String jwtId) {
+		this.json.write('{');
+		boolean first = true;
+		for (Map.Entry<String, Object> claim : claims.entrySet()) {
+			String name = claim.getKey();
+			Object value = claim.getValue();
+			if (value == null || JwtClaimNames.JTI.equals(name) || isOmitted(name, value)) {
+				continue;
+			}
+			if (!first) {
+				this.json.write(',');
+			}
+			first = false;
+			writeString(name);
+			this.json.write(':');
+			if (!writeClaimValue(name, value)) {
+				return false;
+			}
+		}
+		if (!first) {
+			this.json.write(',');
+		}
+		writeString(JwtClaimNames.JTI);
+		this.json.write(':');
+		writeString(jwtId);
+		this.json.write('}');
+		return true;
+	}
+
+	private static boolean isOmitted(String name, Object value) {
+		// Consistent with the conversion to the Nimbus JWTClaimsSet
+		if (JwtClaimNames.SUB.equals(name)) {
+			return value instanceof String && !StringUtils.hasText((String) value);
+		}
+		if (JwtClaimNames.AUD.equals(name)) {
+			return value instanceof Collection && ((Collection<?>) value).isEmpty();
+		}
+		return false;
+	}
+
+	private boolean writeClaimValue(String name, Object value) {
+		if (JwtClaimNames.ISS.equals(name) && value instanceof URL) {
+			writeString(((URL) value).toExternalForm());
+			return true;
+		}
+		if (JwtClaimNames.AUD.equals(name) && value instanceof List && ((List<?>) value).size() == 1) {
+			return writeValue(((List<?>) value).get(0));
+		}
+		if (value instanceof Instant && (JwtClaimNames.IAT.equals(name)
+				|| JwtClaimNames.EXP.equals(name) || JwtClaimNames.NBF.equals(name))) {
+			writeLong(((Instant) value).toEpochMilli() / 1000);
+			return true;
+		}
+		return writeValue(value);
+	}
+
+	private boolean writeValue(Object value) {
+		if (value == null) {
+			this.json.write(NULL, 0, NULL.length);
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Boolean) {
+			byte[] bytes = (Boolean) value ? TRUE : FALSE;
+			this.json.write(bytes, 0, bytes.length);
+		} else if (value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte) {
+			writeLong(((Number) value).longValue());
+		} else if (value instanceof Date) {
+			writeLong(((Date) value).getTime() / 1000);
+		} else if (value instanceof Collection) {
+			this.json.write('[');
+			boolean first = true;
+			for (Object element : (Collection<?>) value) {
+				if (!first) {
+					this.json.write(',');
+				}
+				first = false;
+				if (!writeValue(element)) {
+					return false;
+				}
+			}
+			this.json.write(']');
+		} else if (value instanceof Map) {
+			this.json.write('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!(entry.getKey() instanceof String)) {
+					return false;
+				}
+				if (!first) {
+					this.json.write(',');
+				}
+				first = false;
+				writeString((String) entry.getKey());
+				this.json.write(':');
+				if (!writeValue(entry.getValue())) {
+					return false;
+				}
+			}
+			this.json.write('}');
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private void writeString(String value) {
+		Buffer json = this.json;
+		json.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.write('\\');
+				json.write(c);
+			} else if (c < 0x20) {
+				json.write('\\');
+				json.write('u');
+				json.write('0');
+				json.write('0');
+				json.write(HEX_DIGITS[c >> 4]);
+				json.write(HEX_DIGITS[c & 0xF]);
+			} else if (c < 0x80) {
+				json.write(c);
+			} else if (c < 0x800) {
+				json.write(0xC0 | (c >> 6));
+				json.write(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				json.write(0xF0 | (codePoint >> 18));
+				json.write(0x80 | ((codePoint >> 12) & 0x3F));
+				json.write(0x80 | ((codePoint >> 6) & 0x3F));
+				json.write(0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, replaced the same way as String.getBytes(UTF_8)
+				json.write('?');
+			} else {
+				json.write(0xE0 | (c >> 12));
+				json.write(0x80 | ((c >> 6) & 0x3F));
+				json.write(0x80 | (c & 0x3F));
+			}
+		}
+		json.write('"');
+	}
+
+	private void writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			byte[] bytes = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+			this.json.write(bytes, 0, bytes.length);
+			return;
+		}
+		if (value < 0) {
+			this.json.write('-');
+			value = -value;
+		}
+		long divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+		while (divisor > 0) {
+			this.json.write((int) ('0' + (value / divisor) % 10));
+			divisor /= 10;
+		}
+	}
+
+	private void writeBase64Url(byte[] src, int offset, int length) {
+		Buffer compact = this.compact;
+		int end = offset + length;
+		int i = offset;
+		for (; i + 2 < end; i += 3) {
+			int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 18) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 12) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 6) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[bits & 0x3F]);
+		}
+		int remaining = end - i;
+		if (remaining == 1) {
+			int bits = (src[i] & 0xFF) << 16;
+			compact.write(BASE64URL_ALPHABET[(bits >>> 18) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 12) & 0x3F]);
+		} else if (remaining == 2) {
+			int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+			compact.write(BASE64URL_ALPHABET[(bits >>> 18) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 12) & 0x3F]);
+			compact.write(BASE64URL_ALPHABET[(bits >>> 6) & 0x3F]);
+		}
+	}
+
+	private static final class Buffer {
+
+		private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+		private int length;
+
+		private void reset() {
+			this.length = 0;
+		}
+
+		private void trim() {
+			if (this.bytes.length > MAX_RETAINED_CAPACITY) {
+				this.bytes = new byte[INITIAL_CAPACITY];
+			}
+		}
+
+		private void write(int b) {
+			if (this.length == this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, this.bytes.length << 1);
+			}
+			this.bytes[this.length++] = (byte) b;
+		}
+
+		private void write(byte[] src, int offset, int length) {
+			int required = this.length + length;
+			if (required > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length << 1));
+			}
+			System.arraycopy(src, offset, this.bytes, this.length, length);
+			this.length = required;
+		}
+
+	}
+
+}
@@ -16,13 +16,19 @@
 package org.springframework.security.oauth2.jwt;
 
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.nimbusds.jose.JOSEException;
@@ -38,12 +44,13 @@ import com.nimbusds.jose.jwk.JWKSelector;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.produce.JWSSignerFactory;
-import com.nimbusds.jose.util.Base64;
 import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.crypto.keygen.ConcurrentBase64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -55,6 +62,11 @@ import org.springframework.util.StringUtils;
  * provided via the constructor.
  *
  * <p>
+ * The signing key is selected using the {@code alg} (algorithm) JOSE header, so the {@code JWKSource}
+ * may supply several active keys of different types at once, for example, an RSA key for {@code RS256}
+ * and an EC key for {@code ES256}. Exactly one key must match each algorithm in use.
+ *
+ * <p>
  * <b>NOTE:</b> This implementation uses the Nimbus JOSE + JWT SDK.
  *
  * @author Joe Grandja
@@ -81,10 +93,28 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 
 	private static final JWSSignerFactory JWS_SIGNER_FACTORY = new DefaultJWSSignerFactory();
 
-	private final Map<JWK, JWSSigner> jwsSigners = new ConcurrentHashMap<>();
+	private static final StringKeyGenerator DEFAULT_JWT_ID_GENERATOR =
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding());
+
+	// Weakly keyed so that signers for keys rotated out of the JWKSource are reclaimed
+	private final Map<JWK, JWSSigner> jwsSigners = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Map<JWSAlgorithm, JWKSelector> jwkSelectors = new ConcurrentHashMap<>();
+
+	private final Map<JWSAlgorithm, SelectedJwk> selectedJwks = new ConcurrentHashMap<>();
 
 	private final JWKSource<SecurityContext> jwkSource;
 
+	private Duration jwkSelectionRefreshInterval = Duration.ZERO;
+
+	// Weakly keyed so that the headers encoded for keys rotated out of the JWKSource are reclaimed
+	private final Map<JWK, Map<JWSAlgorithm, EncodedJwsHeader>> encodedJwsHeaders =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	private boolean directSerializationEnabled;
+
+	private Supplier<String> jwtIdGenerator = DEFAULT_JWT_ID_GENERATOR::generateKey;
+
 	/**
 	 * Constructs a {@code NimbusJwsEncoder} using the provided parameters.
 	 * @param jwkSource the {@code com.nimbusds.jose.jwk.source.JWKSource}
@@ -94,19 +124,61 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 		this.jwkSource = jwkSource;
 	}
 
+	/**
+	 * Sets the interval during which the JWK selected for a JWS algorithm, and its JWS
+	 * signer, are reused without consulting the {@code com.nimbusds.jose.jwk.source.JWKSource}.
+	 * A rotated key is picked up once the interval has elapsed. The default is
+	 * {@link Duration#ZERO}, which selects the JWK from the {@code JWKSource} on every call.
+	 * @param jwkSelectionRefreshInterval the interval during which a selected JWK is reused
+	 * @since 0.2.0
+	 */
+	public void setJwkSelectionRefreshInterval(Duration jwkSelectionRefreshInterval) {
+		Assert.notNull(jwkSelectionRefreshInterval, "jwkSelectionRefreshInterval cannot be null");
+		Assert.isTrue(!jwkSelectionRefreshInterval.isNegative(), "jwkSelectionRefreshInterval cannot be negative");
+		this.jwkSelectionRefreshInterval = jwkSelectionRefreshInterval;
+		this.selectedJwks.clear();
+	}
+
+	/**
+	 * Sets whether the JWS Compact Serialization is written directly, rather than using the Nimbus
+	 * {@code JWSHeader} and {@code JWTClaimsSet}. When enabled, the encoded JOSE header is cached per
+	 * JWK and JWS algorithm, and the claims are written to a reusable, per-thread buffer, which
+	 * significantly reduces the allocations per encoded JWT. This only applies when the JOSE header
+	 * consists of the {@code alg} header, as set by the authorization server, and the claims are of
+	 * the JSON types (and {@code Instant} for the registered date claims); otherwise the JWT is
+	 * encoded using the Nimbus types. The default is {@code false}.
+	 * @param directSerializationEnabled {@code true} to write the JWS Compact Serialization directly
+	 * @since 0.2.0
+	 */
+	public void setDirectSerializationEnabled(boolean directSerializationEnabled) {
+		this.directSerializationEnabled = directSerializationEnabled;
+	}
+
+	/**
+	 * Sets the {@code Supplier<String>} that generates the value of the {@code jti} claim. The default
+	 * generates a Base64url-encoded, 32-byte random value using a {@code SecureRandom} per thread.
+	 * @param jwtIdGenerator the {@code Supplier<String>} that generates the value of the {@code jti} claim
+	 * @since 0.2.0
+	 */
+	public void setJwtIdGenerator(Supplier<String> jwtIdGenerator) {
+		Assert.notNull(jwtIdGenerator, "jwtIdGenerator cannot be null");
+		this.jwtIdGenerator = jwtIdGenerator;
+	}
+
 	@Override
 	public Jwt encode(JoseHeader headers, JwtClaimsSet claims) throws JwtEncodingException {
 		Assert.notNull(headers, "headers cannot be null");
 		Assert.notNull(claims, "claims cannot be null");
 
-		JWK jwk = selectJwk(headers);
-		if (jwk == null) {
-			throw new JwtEncodingException(
-					String.format(ENCODING_ERROR_MESSAGE_TEMPLATE, "Failed to select a JWK signing key"));
-		}
-		else if (!StringUtils.hasText(jwk.getKeyID())) {
-			throw new JwtEncodingException(String.format(ENCODING_ERROR_MESSAGE_TEMPLATE,
-					"The \"kid\" (key ID) from the selected JWK cannot be empty"));
+		JWSAlgorithm jwsAlgorithm = JWSAlgorithm.parse(headers.getJwsAlgorithm().getName());
+		SelectedJwk selectedJwk = selectJwk(jwsAlgorithm);
+		JWK jwk = selectedJwk.jwk;
+
+		if (this.directSerializationEnabled && isDirectlySerializable(headers)) {
+			Jwt jwt = encodeDirectly(headers, jwsAlgorithm, selectedJwk, claims);
+			if (jwt != null) {
+				return jwt;
+			}
 		}
 
 		// @formatter:off
@@ -115,26 +187,16 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 				.keyId(jwk.getKeyID())
 				.build();
 		claims = JwtClaimsSet.from(claims)
-				.id(UUID.randomUUID().toString())
+				.id(this.jwtIdGenerator.get())
 				.build();
 		// @formatter:on
 
 		JWSHeader jwsHeader = JWS_HEADER_CONVERTER.convert(headers);
 		JWTClaimsSet jwtClaimsSet = JWT_CLAIMS_SET_CONVERTER.convert(claims);
 
-		JWSSigner jwsSigner = this.jwsSigners.computeIfAbsent(jwk, (key) -> {
-			try {
-				return JWS_SIGNER_FACTORY.createJWSSigner(key);
-			}
-			catch (JOSEException ex) {
-				throw new JwtEncodingException(String.format(ENCODING_ERROR_MESSAGE_TEMPLATE,
-						"Failed to create a JWS Signer -> " + ex.getMessage()), ex);
-			}
-		});
-
 		SignedJWT signedJwt = new SignedJWT(jwsHeader, jwtClaimsSet);
 		try {
-			signedJwt.sign(jwsSigner);
+			signedJwt.sign(selectedJwk.jwsSigner);
 		}
 		catch (JOSEException ex) {
 			throw new JwtEncodingException(
@@ -145,10 +207,60 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 		return new Jwt(jws, claims.getIssuedAt(), claims.getExpiresAt(), headers.getHeaders(), claims.getClaims());
 	}
 
-	private JWK selectJwk(JoseHeader headers) {
-		JWSAlgorithm jwsAlgorithm = JWSAlgorithm.parse(headers.getJwsAlgorithm().getName());
-		JWSHeader jwsHeader = new JWSHeader(jwsAlgorithm);
-		JWKSelector jwkSelector = new JWKSelector(JWKMatcher.forJWSHeader(jwsHeader));
+	private static boolean isDirectlySerializable(JoseHeader headers) {
+		// The "typ" and "kid" headers are overwritten
+		for (String name : headers.getHeaders().keySet()) {
+			if (!JoseHeaderNames.ALG.equals(name) && !JoseHeaderNames.TYP.equals(name)
+					&& !JoseHeaderNames.KID.equals(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Jwt encodeDirectly(JoseHeader headers, JWSAlgorithm jwsAlgorithm, SelectedJwk selectedJwk,
+			JwtClaimsSet claims) {
+		EncodedJwsHeader encodedJwsHeader = this.encodedJwsHeaders
+				.computeIfAbsent(selectedJwk.jwk, (key) -> new ConcurrentHashMap<>())
+				.computeIfAbsent(jwsAlgorithm, (algorithm) -> new EncodedJwsHeader(JoseHeader.from(headers)
+						.type(JOSEObjectType.JWT.getType())
+						.keyId(selectedJwk.jwk.getKeyID())
+						.build()));
+
+		String jwtId = this.jwtIdGenerator.get();
+		CompactJwsWriter writer = CompactJwsWriter.get();
+		if (!writer.writeSigningInput(encodedJwsHeader.encoded, claims, jwtId)) {
+			// The claims contain a value of a type that is only supported by the Nimbus types
+			return null;
+		}
+
+		Base64URL signature;
+		try {
+			signature = selectedJwk.jwsSigner.sign(encodedJwsHeader.jwsHeader, writer.getSigningInput());
+		}
+		catch (JOSEException ex) {
+			throw new JwtEncodingException(
+					String.format(ENCODING_ERROR_MESSAGE_TEMPLATE, "Failed to sign the JWT -> " + ex.getMessage()), ex);
+		}
+		String jws = writer.toCompactSerialization(signature.toString());
+
+		Map<String, Object> jwtClaims = new HashMap<>(claims.getClaims());
+		jwtClaims.put(JwtClaimNames.JTI, jwtId);
+		return new Jwt(jws, claims.getIssuedAt(), claims.getExpiresAt(), encodedJwsHeader.headers, jwtClaims);
+	}
+
+	private SelectedJwk selectJwk(JWSAlgorithm jwsAlgorithm) {
+		Instant now = Instant.now();
+		boolean cacheSelection = !this.jwkSelectionRefreshInterval.isZero();
+		if (cacheSelection) {
+			SelectedJwk selectedJwk = this.selectedJwks.get(jwsAlgorithm);
+			if (selectedJwk != null && now.isBefore(selectedJwk.expiresAt)) {
+				return selectedJwk;
+			}
+		}
+
+		JWKSelector jwkSelector = this.jwkSelectors.computeIfAbsent(jwsAlgorithm,
+				(algorithm) -> new JWKSelector(JWKMatcher.forJWSHeader(new JWSHeader(algorithm))));
 
 		List<JWK> jwks;
 		try {
@@ -163,8 +275,32 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 			throw new JwtEncodingException(String.format(ENCODING_ERROR_MESSAGE_TEMPLATE,
 					"Found multiple JWK signing keys for algorithm '" + jwsAlgorithm.getName() + "'"));
 		}
+		else if (jwks.isEmpty()) {
+			throw new JwtEncodingException(
+					String.format(ENCODING_ERROR_MESSAGE_TEMPLATE, "Failed to select a JWK signing key"));
+		}
+
+		JWK jwk = jwks.get(0);
+		if (!StringUtils.hasText(jwk.getKeyID())) {
+			throw new JwtEncodingException(String.format(ENCODING_ERROR_MESSAGE_TEMPLATE,
+					"The \"kid\" (key ID) from the selected JWK cannot be empty"));
+		}
+
+		JWSSigner jwsSigner = this.jwsSigners.computeIfAbsent(jwk, (key) -> {
+			try {
+				return JWS_SIGNER_FACTORY.createJWSSigner(key);
+			}
+			catch (JOSEException ex) {
+				throw new JwtEncodingException(String.format(ENCODING_ERROR_MESSAGE_TEMPLATE,
+						"Failed to create a JWS Signer -> " + ex.getMessage()), ex);
+			}
+		});
 
-		return !jwks.isEmpty() ? jwks.get(0) : null;
+		SelectedJwk selectedJwk = new SelectedJwk(jwk, jwsSigner, now.plus(this.jwkSelectionRefreshInterval));
+		if (cacheSelection) {
+			this.selectedJwks.put(jwsAlgorithm, selectedJwk);
+		}
+		return selectedJwk;
 	}
 
 	private static class JwsHeaderConverter implements Converter<JoseHeader, JWSHeader> {
@@ -217,7 +353,7 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 
 			List<String> x509CertificateChain = headers.getX509CertificateChain();
 			if (!CollectionUtils.isEmpty(x509CertificateChain)) {
-				builder.x509CertChain(x509CertificateChain.stream().map(Base64::new).collect(Collectors.toList()));
+				builder.x509CertChain(x509CertificateChain.stream().map(com.nimbusds.jose.util.Base64::new).collect(Collectors.toList()));
 			}
 
 			String x509SHA1Thumbprint = headers.getX509SHA1Thumbprint();
@@ -306,4 +442,36 @@ public final class NimbusJwsEncoder implements JwtEncoder {
 
 	}
 
+	private static final class EncodedJwsHeader {
+
+		private final JWSHeader jwsHeader;
+
+		private final byte[] encoded;
+
+		private final Map<String, Object> headers;
+
+		private EncodedJwsHeader(JoseHeader headers) {
+			this.jwsHeader = JWS_HEADER_CONVERTER.convert(headers);
+			this.encoded = this.jwsHeader.toBase64URL().toString().getBytes(StandardCharsets.US_ASCII);
+			this.headers = headers.getHeaders();
+		}
+
+	}
+
+	private static final class SelectedJwk {
+
+		private final JWK jwk;
+
+		private final JWSSigner jwsSigner;
+
+		private final Instant expiresAt;
+
+		private SelectedJwk(JWK jwk, JWSSigner jwsSigner, Instant expiresAt) {
+			this.jwk = jwk;
+			this.jwsSigner = jwsSigner;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
 }
@@ -15,23 +15,48 @@
  */
 package org.springframework.security.oauth2.server.authorization;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import org.springframework.lang.Nullable;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
 import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.util.Assert;
 
 /**
  * An {@link OAuth2AuthorizationService} that stores {@link OAuth2Authorization}'s in-memory.
  *
  * <p>
+ * An authorization is removed once the latest expiry of all of its tokens has passed.
+ * An authorization without any tokens (e.g. an 'in-flight' authorization awaiting consent)
+ * is removed once {@link #setInitializedAuthorizationTimeToLive(Duration)} has elapsed since it was saved.
+ * If {@link #setMaxAuthorizations(int)} is exceeded, the authorization(s) closest to expiring are evicted first.
+ *
+ * <p>
+ * An authorization derived from a stored authorization is only saved if the stored authorization
+ * has not been modified since, otherwise an {@link OAuth2AuthorizationConflictException} is thrown.
+ * The saved authorization is not modified, so an authorization to be updated again is loaded again first.
+ *
+ * <p>
  * <b>NOTE:</b> This implementation should ONLY be used during development/testing.
  *
  * @author Krisztian Toth
@@ -40,7 +65,18 @@ import org.springframework.util.Assert;
  * @see OAuth2AuthorizationService
  */
 public final class InMemoryOAuth2AuthorizationService implements OAuth2AuthorizationService {
+	private static final List<Class<? extends OAuth2Token>> TOKEN_TYPES = Arrays.asList(
+			OAuth2AuthorizationCode.class, OAuth2AccessToken.class, OidcIdToken.class, OAuth2RefreshToken.class);
 	private final Map<String, OAuth2Authorization> authorizations = new ConcurrentHashMap<>();
+	private final Map<String, String> stateIndex = new ConcurrentHashMap<>();
+	private final Map<String, String> authorizationCodeIndex = new ConcurrentHashMap<>();
+	private final Map<String, String> accessTokenIndex = new ConcurrentHashMap<>();
+	private final Map<String, String> refreshTokenIndex = new ConcurrentHashMap<>();
+	private final Map<String, Expiration> expirationIndex = new ConcurrentHashMap<>();
+	private final NavigableSet<Expiration> expirations = new ConcurrentSkipListSet<>();
+	private int maxAuthorizations = Integer.MAX_VALUE;
+	private Duration initializedAuthorizationTimeToLive = Duration.ofMinutes(10);
+	private Clock clock = Clock.systemUTC();
 
 	/**
 	 * Constructs an {@code InMemoryOAuth2AuthorizationService}.
@@ -69,20 +105,157 @@ public final class InMemoryOAuth2AuthorizationService implements OAuth2Authoriza
 			Assert.notNull(authorization, "authorization cannot be null");
 			Assert.isTrue(!this.authorizations.containsKey(authorization.getId()),
 					"The authorization must be unique. Found duplicate identifier: " + authorization.getId());
-			this.authorizations.put(authorization.getId(), authorization);
+			save(authorization);
 		});
 	}
 
 	@Override
 	public void save(OAuth2Authorization authorization) {
 		Assert.notNull(authorization, "authorization cannot be null");
-		this.authorizations.put(authorization.getId(), authorization);
+		store(authorization);
+		removeExpiredAuthorizations();
+		evictExcessAuthorizations();
+	}
+
+	@Override
+	public void saveAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		Assert.noNullElements(authorizations, "authorizations cannot contain null elements");
+		// Expired and excess authorizations are removed once, rather than after each authorization is stored
+		authorizations.forEach(this::store);
+		removeExpiredAuthorizations();
+		evictExcessAuthorizations();
 	}
 
 	@Override
 	public void remove(OAuth2Authorization authorization) {
 		Assert.notNull(authorization, "authorization cannot be null");
-		this.authorizations.remove(authorization.getId(), authorization);
+		this.authorizations.computeIfPresent(authorization.getId(), (id, existingAuthorization) -> {
+			if (!existingAuthorization.equals(authorization)) {
+				return existingAuthorization;
+			}
+			updateIndexes(id, existingAuthorization, null);
+			updateExpiration(id, null);
+			return null;
+		});
+	}
+
+	@Override
+	public void removeAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		authorizations.forEach(this::remove);
+	}
+
+	/**
+	 * Invalidates the tokens of all authorizations of the provided principal.
+	 *
+	 * @param principalName the name of the principal
+	 * @return the number of authorizations invalidated
+	 * @since 0.2.0
+	 */
+	public int invalidateByPrincipalName(String principalName) {
+		Assert.hasText(principalName, "principalName cannot be empty");
+		return invalidateMatching((authorization) -> principalName.equals(authorization.getPrincipalName()));
+	}
+
+	/**
+	 * Invalidates the tokens of all authorizations of the provided registered client.
+	 *
+	 * @param registeredClientId the identifier of the registered client
+	 * @return the number of authorizations invalidated
+	 * @since 0.2.0
+	 */
+	public int invalidateByRegisteredClientId(String registeredClientId) {
+		Assert.hasText(registeredClientId, "registeredClientId cannot be empty");
+		return invalidateMatching((authorization) -> registeredClientId.equals(authorization.getRegisteredClientId()));
+	}
+
+	/**
+	 * Removes all authorizations of the provided principal.
+	 *
+	 * @param principalName the name of the principal
+	 * @return the number of authorizations removed
+	 * @since 0.2.0
+	 */
+	public int removeByPrincipalName(String principalName) {
+		Assert.hasText(principalName, "principalName cannot be empty");
+		return removeMatching((authorization) -> principalName.equals(authorization.getPrincipalName()));
+	}
+
+	/**
+	 * Removes all authorizations of the provided registered client.
+	 *
+	 * @param registeredClientId the identifier of the registered client
+	 * @return the number of authorizations removed
+	 * @since 0.2.0
+	 */
+	public int removeByRegisteredClientId(String registeredClientId) {
+		Assert.hasText(registeredClientId, "registeredClientId cannot be empty");
+		return removeMatching((authorization) -> registeredClientId.equals(authorization.getRegisteredClientId()));
+	}
+
+	@Nullable
+	@Override
+	public OAuth2Authorization consumeAuthorizationCode(String code) {
+		Assert.hasText(code, "code cannot be empty");
+		String id = this.authorizationCodeIndex.get(code);
+		if (id == null) {
+			return null;
+		}
+		AtomicReference<OAuth2Authorization> consumedAuthorization = new AtomicReference<>();
+		this.authorizations.computeIfPresent(id, (key, existingAuthorization) -> {
+			OAuth2Authorization.Token<OAuth2AuthorizationCode> authorizationCode =
+					existingAuthorization.getToken(OAuth2AuthorizationCode.class);
+			if (authorizationCode == null || authorizationCode.isInvalidated() ||
+					!authorizationCode.getToken().getTokenValue().equals(code)) {
+				return existingAuthorization;
+			}
+			// The tokens are unchanged, so the indexes and expiration remain valid
+			OAuth2Authorization authorization = OAuth2Authorization.from(existingAuthorization)
+					.token(authorizationCode.getToken(),
+							(metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+					.build()
+					.withVersion(existingAuthorization.getVersion() + 1);
+			consumedAuthorization.set(authorization);
+			return authorization;
+		});
+		return consumedAuthorization.get();
+	}
+
+	/**
+	 * Sets the maximum number of authorizations to store.
+	 * When exceeded, the authorization(s) closest to expiring are evicted first.
+	 * The default is unbounded.
+	 *
+	 * @param maxAuthorizations the maximum number of authorizations to store
+	 */
+	public void setMaxAuthorizations(int maxAuthorizations) {
+		Assert.isTrue(maxAuthorizations > 0, "maxAuthorizations must be greater than 0");
+		this.maxAuthorizations = maxAuthorizations;
+	}
+
+	/**
+	 * Sets the time-to-live for an authorization that does not (yet) contain any tokens,
+	 * for example, an 'in-flight' authorization awaiting the consent of the resource owner.
+	 * The default is 10 minutes.
+	 *
+	 * @param initializedAuthorizationTimeToLive the time-to-live for an authorization without tokens
+	 */
+	public void setInitializedAuthorizationTimeToLive(Duration initializedAuthorizationTimeToLive) {
+		Assert.notNull(initializedAuthorizationTimeToLive, "initializedAuthorizationTimeToLive cannot be null");
+		Assert.isTrue(!initializedAuthorizationTimeToLive.isNegative() && !initializedAuthorizationTimeToLive.isZero(),
+				"initializedAuthorizationTimeToLive must be greater than 0");
+		this.initializedAuthorizationTimeToLive = initializedAuthorizationTimeToLive;
+	}
+
+	/**
+	 * Sets the {@link Clock} used when determining if an authorization has expired.
+	 *
+	 * @param clock the {@link Clock}
+	 */
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
 	}
 
 	@Nullable
@@ -96,10 +269,257 @@ public final class InMemoryOAuth2AuthorizationService implements OAuth2Authoriza
 	@Override
 	public OAuth2Authorization findByToken(String token, @Nullable OAuth2TokenType tokenType) {
 		Assert.hasText(token, "token cannot be empty");
+		if (tokenType == null) {
+			OAuth2Authorization authorization = findByIndex(this.stateIndex, token, tokenType);
+			if (authorization == null) {
+				authorization = findByIndex(this.authorizationCodeIndex, token, tokenType);
+			}
+			if (authorization == null) {
+				authorization = findByIndex(this.accessTokenIndex, token, tokenType);
+			}
+			if (authorization == null) {
+				authorization = findByIndex(this.refreshTokenIndex, token, tokenType);
+			}
+			return authorization;
+		} else if (OAuth2ParameterNames.STATE.equals(tokenType.getValue())) {
+			return findByIndex(this.stateIndex, token, tokenType);
+		} else if (OAuth2ParameterNames.CODE.equals(tokenType.getValue())) {
+			return findByIndex(this.authorizationCodeIndex, token, tokenType);
+		} else if (OAuth2TokenType.ACCESS_TOKEN.equals(tokenType)) {
+			return findByIndex(this.accessTokenIndex, token, tokenType);
+		} else if (OAuth2TokenType.REFRESH_TOKEN.equals(tokenType)) {
+			return findByIndex(this.refreshTokenIndex, token, tokenType);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a {@code Stream} of the authorizations matching the provided query.
+	 * The authorizations are not copied, so the authorizations saved or removed while the
+	 * {@code Stream} is consumed may or may not be included.
+	 *
+	 * @param query the query
+	 * @return a {@code Stream} of the authorizations matching the query
+	 * @since 0.2.0
+	 */
+	public Stream<OAuth2Authorization> findAll(OAuth2AuthorizationQuery query) {
+		Assert.notNull(query, "query cannot be null");
 		return this.authorizations.values().stream()
-				.filter(authorization -> hasToken(authorization, token, tokenType))
-				.findFirst()
-				.orElse(null);
+				.filter((authorization) -> matches(query, authorization));
+	}
+
+	/**
+	 * Saves the authorizations provided by the {@code Stream}, for example, when importing authorizations
+	 * exported from another {@link OAuth2AuthorizationService}. Unlike {@link #saveAll(Collection)},
+	 * the version of the authorizations is ignored, so existing authorizations are overwritten.
+	 * The provided authorizations are not modified.
+	 *
+	 * @param authorizations the {@code Stream} of authorizations
+	 * @since 0.2.0
+	 */
+	public void importAll(Stream<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		authorizations.forEach((authorization) -> {
+			Assert.notNull(authorization, "authorization cannot be null");
+			// The authorization may be the live instance of another service, so it is copied rather than modified
+			store(authorization.detach());
+		});
+		removeExpiredAuthorizations();
+		evictExcessAuthorizations();
+	}
+
+	private boolean matches(OAuth2AuthorizationQuery query, OAuth2Authorization authorization) {
+		if (query.getPrincipalName() != null && !query.getPrincipalName().equals(authorization.getPrincipalName())) {
+			return false;
+		}
+		if (query.getRegisteredClientId() != null && !query.getRegisteredClientId().equals(authorization.getRegisteredClientId())) {
+			return false;
+		}
+		if (query.getExpiresAfter() == null && query.getExpiresBefore() == null) {
+			return true;
+		}
+		Expiration expiration = this.expirationIndex.get(authorization.getId());
+		Instant expiresAt = expiration != null ? expiration.expiresAt : null;
+		if (query.getExpiresAfter() != null && expiresAt != null && !expiresAt.isAfter(query.getExpiresAfter())) {
+			return false;
+		}
+		return query.getExpiresBefore() == null || (expiresAt != null && expiresAt.isBefore(query.getExpiresBefore()));
+	}
+
+	@Nullable
+	private OAuth2Authorization findByIndex(Map<String, String> index, String token, @Nullable OAuth2TokenType tokenType) {
+		String id = index.get(token);
+		if (id == null) {
+			return null;
+		}
+		OAuth2Authorization authorization = this.authorizations.get(id);
+		// The index may be momentarily ahead of (or behind) the authorization it points to
+		// while a concurrent save() is in progress, so always re-check the match
+		return authorization != null && hasToken(authorization, token, tokenType) ? authorization : null;
+	}
+
+	private void updateIndexes(String id, @Nullable OAuth2Authorization previousAuthorization,
+			@Nullable OAuth2Authorization authorization) {
+		updateIndex(this.stateIndex, id, getState(previousAuthorization), getState(authorization));
+		updateIndex(this.authorizationCodeIndex, id,
+				getTokenValue(previousAuthorization, OAuth2AuthorizationCode.class),
+				getTokenValue(authorization, OAuth2AuthorizationCode.class));
+		updateIndex(this.accessTokenIndex, id,
+				getTokenValue(previousAuthorization, OAuth2AccessToken.class),
+				getTokenValue(authorization, OAuth2AccessToken.class));
+		updateIndex(this.refreshTokenIndex, id,
+				getTokenValue(previousAuthorization, OAuth2RefreshToken.class),
+				getTokenValue(authorization, OAuth2RefreshToken.class));
+	}
+
+	private static void updateIndex(Map<String, String> index, String id,
+			@Nullable String previousValue, @Nullable String value) {
+		// Add the new entry before removing the previous one, so a concurrent lookup never misses an unchanged value
+		if (value != null) {
+			index.put(value, id);
+		}
+		if (previousValue != null && !previousValue.equals(value)) {
+			index.remove(previousValue, id);
+		}
+	}
+
+	@Nullable
+	private Instant resolveExpiresAt(OAuth2Authorization authorization) {
+		Instant expiresAt = null;
+		for (Class<? extends OAuth2Token> tokenType : TOKEN_TYPES) {
+			OAuth2Authorization.Token<? extends OAuth2Token> token = authorization.getToken(tokenType);
+			if (token == null) {
+				continue;
+			}
+			if (token.getToken().getExpiresAt() == null) {
+				// The authorization does not expire
+				return null;
+			}
+			if (expiresAt == null || token.getToken().getExpiresAt().isAfter(expiresAt)) {
+				expiresAt = token.getToken().getExpiresAt();
+			}
+		}
+		if (expiresAt == null) {
+			// The authorization does not contain any tokens yet
+			expiresAt = this.clock.instant().plus(this.initializedAuthorizationTimeToLive);
+		}
+		return expiresAt;
+	}
+
+	private void updateExpiration(String id, @Nullable Expiration expiration) {
+		Expiration previousExpiration = expiration != null ?
+				this.expirationIndex.put(id, expiration) :
+				this.expirationIndex.remove(id);
+		if (expiration != null) {
+			this.expirations.add(expiration);
+		}
+		if (previousExpiration != null && !previousExpiration.equals(expiration)) {
+			this.expirations.remove(previousExpiration);
+		}
+	}
+
+	private int invalidateMatching(Predicate<OAuth2Authorization> filter) {
+		AtomicInteger invalidatedCount = new AtomicInteger();
+		for (String id : this.authorizations.keySet()) {
+			this.authorizations.computeIfPresent(id, (key, existingAuthorization) -> {
+				if (!filter.test(existingAuthorization)) {
+					return existingAuthorization;
+				}
+				OAuth2Authorization authorization = existingAuthorization.invalidateTokens();
+				if (authorization == existingAuthorization) {
+					return existingAuthorization;
+				}
+				// The tokens are unchanged, so the indexes and expiration remain valid
+				authorization = authorization.withVersion(existingAuthorization.getVersion() + 1);
+				invalidatedCount.incrementAndGet();
+				return authorization;
+			});
+		}
+		return invalidatedCount.get();
+	}
+
+	private int removeMatching(Predicate<OAuth2Authorization> filter) {
+		AtomicInteger removedCount = new AtomicInteger();
+		for (String id : this.authorizations.keySet()) {
+			this.authorizations.computeIfPresent(id, (key, existingAuthorization) -> {
+				if (!filter.test(existingAuthorization)) {
+					return existingAuthorization;
+				}
+				updateIndexes(key, existingAuthorization, null);
+				updateExpiration(key, null);
+				removedCount.incrementAndGet();
+				return null;
+			});
+		}
+		return removedCount.get();
+	}
+
+	private void store(OAuth2Authorization authorization) {
+		this.authorizations.compute(authorization.getId(), (id, existingAuthorization) -> {
+			// Compare-and-set against the version of the authorization it was loaded or derived from, if known
+			long version = authorization.getVersion();
+			long existingVersion = existingAuthorization != null ? existingAuthorization.getVersion() : 0;
+			if (version != 0 && version != existingVersion) {
+				throw new OAuth2AuthorizationConflictException(id);
+			}
+			// A copy with the new version is stored, rather than modifying the provided authorization
+			OAuth2Authorization storedAuthorization = authorization.withVersion(existingVersion + 1);
+			updateIndexes(id, existingAuthorization, storedAuthorization);
+			updateExpiration(id, new Expiration(id, resolveExpiresAt(storedAuthorization)));
+			return storedAuthorization;
+		});
+	}
+
+	private void removeExpiredAuthorizations() {
+		Instant now = this.clock.instant();
+		Expiration expiration;
+		while ((expiration = first(this.expirations)) != null &&
+				expiration.expiresAt != null && expiration.expiresAt.isBefore(now)) {
+			evict(expiration);
+		}
+	}
+
+	private void evictExcessAuthorizations() {
+		Expiration expiration;
+		while (this.authorizations.size() > this.maxAuthorizations &&
+				(expiration = first(this.expirations)) != null) {
+			evict(expiration);
+		}
+	}
+
+	private void evict(Expiration expiration) {
+		this.authorizations.computeIfPresent(expiration.id, (id, existingAuthorization) -> {
+			if (!expiration.equals(this.expirationIndex.get(id))) {
+				// Concurrently updated
+				return existingAuthorization;
+			}
+			updateIndexes(id, existingAuthorization, null);
+			updateExpiration(id, null);
+			return null;
+		});
+		// Stale entry (no longer mapped)
+		this.expirations.remove(expiration);
+	}
+
+	@Nullable
+	private static Expiration first(NavigableSet<Expiration> expirations) {
+		Iterator<Expiration> iterator = expirations.iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	@Nullable
+	private static String getState(@Nullable OAuth2Authorization authorization) {
+		return authorization != null ? authorization.getAttribute(OAuth2ParameterNames.STATE) : null;
+	}
+
+	@Nullable
+	private static <T extends OAuth2Token> String getTokenValue(@Nullable OAuth2Authorization authorization,
+			Class<T> tokenType) {
+		if (authorization == null) {
+			return null;
+		}
+		OAuth2Authorization.Token<T> token = authorization.getToken(tokenType);
+		return token != null ? token.getToken().getTokenValue() : null;
 	}
 
 	private static boolean hasToken(OAuth2Authorization authorization, String token, @Nullable OAuth2TokenType tokenType) {
@@ -141,4 +561,42 @@ public final class InMemoryOAuth2AuthorizationService implements OAuth2Authoriza
 				authorization.getToken(OAuth2RefreshToken.class);
 		return refreshToken != null && refreshToken.getToken().getTokenValue().equals(token);
 	}
+
+	private static final class Expiration implements Comparable<Expiration> {
+		private final String id;
+		@Nullable
+		private final Instant expiresAt;
+
+		private Expiration(String id, @Nullable Instant expiresAt) {
+			this.id = id;
+			this.expiresAt = expiresAt;
+		}
+
+		@Override
+		public int compareTo(Expiration other) {
+			// Authorizations that do not expire are ordered last
+			Instant expiresAt = this.expiresAt != null ? this.expiresAt : Instant.MAX;
+			Instant otherExpiresAt = other.expiresAt != null ? other.expiresAt : Instant.MAX;
+			int result = expiresAt.compareTo(otherExpiresAt);
+			return result != 0 ? result : this.id.compareTo(other.id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			Expiration that = (Expiration) obj;
+			return this.id.equals(that.id) &&
+					Objects.equals(this.expiresAt, that.expiresAt);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.id, this.expiresAt);
+		}
+	}
 }
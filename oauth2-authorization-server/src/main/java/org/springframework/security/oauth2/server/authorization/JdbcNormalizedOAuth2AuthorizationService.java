@@ -0,0 +1,687 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobCreator;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.lang.Nullable;
+import org.springframework.security.oauth2.core.AbstractOAuth2Token;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2TokenType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.codec.AttributesCodec;
+import org.springframework.security.oauth2.server.authorization.codec.JacksonAttributesCodec;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * A JDBC implementation of an {@link OAuth2AuthorizationService} that stores each {@link OAuth2Authorization}
+ * in a normalized schema, where each token lives in its own row keyed by the authorization id and the token type.
+ *
+ * <p>
+ * Each row stores a digest of its content, which is compared with the digest of the
+ * {@link OAuth2Authorization} being saved, so that only the rows that changed are written.
+ * For example, refreshing an access token only rewrites the access token row,
+ * leaving the authorization row and the other token rows untouched.
+ * Tokens are looked up by the (indexed) SHA-256 digest of their value.
+ * An authorization derived from an authorization loaded by this service tracks its changes,
+ * so that only the rows of the changed attributes and tokens are written, without comparing digests.
+ *
+ * <p>
+ * Each row stores the {@code version} of the authorization it was last written by, where the version
+ * of an authorization is the highest version of its rows. A row of an authorization loaded by this service
+ * is only written if it was not written since the authorization was loaded, otherwise an
+ * {@link OAuth2AuthorizationConflictException} is thrown, for example, when concurrent requests attempt to use
+ * the same refresh token. Concurrent updates of different rows, such as of different tokens, do not conflict.
+ * The saved authorization is not modified, so an authorization to be saved again is loaded again first.
+ *
+ * <p>
+ * As an authorization spans several rows, it is saved, removed and its authorization code consumed
+ * using the provided {@link TransactionOperations}, for example, a {@code TransactionTemplate},
+ * so that readers never observe a partially written authorization.
+ *
+ * <p>
+ * <b>NOTE:</b> This {@code OAuth2AuthorizationService} depends on the table definitions
+ * described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-normalized-schema.sql" and
+ * therefore MUST be defined in the database schema.
+ *
+ * @since 0.2.0
+ * @see OAuth2AuthorizationService
+ * @see JdbcOAuth2AuthorizationService
+ */
+public class JdbcNormalizedOAuth2AuthorizationService implements OAuth2AuthorizationService {
+
+	private static final String AUTHORIZATION_TABLE_NAME = "oauth2_authorization_entry";
+	private static final String TOKEN_TABLE_NAME = "oauth2_authorization_token";
+
+	private static final String AUTHORIZATION_CODE_TYPE = "authorization_code";
+	private static final String ACCESS_TOKEN_TYPE = "access_token";
+	private static final String OIDC_ID_TOKEN_TYPE = "oidc_id_token";
+	private static final String REFRESH_TOKEN_TYPE = "refresh_token";
+
+	private static final Map<Class<? extends OAuth2Token>, String> TOKEN_TYPES;
+
+	static {
+		Map<Class<? extends OAuth2Token>, String> tokenTypes = new LinkedHashMap<>();
+		tokenTypes.put(OAuth2AuthorizationCode.class, AUTHORIZATION_CODE_TYPE);
+		tokenTypes.put(OAuth2AccessToken.class, ACCESS_TOKEN_TYPE);
+		tokenTypes.put(OidcIdToken.class, OIDC_ID_TOKEN_TYPE);
+		tokenTypes.put(OAuth2RefreshToken.class, REFRESH_TOKEN_TYPE);
+		TOKEN_TYPES = Collections.unmodifiableMap(tokenTypes);
+	}
+
+	// @formatter:off
+	private static final String LOAD_CONTENT_DIGESTS_SQL = "SELECT a.content_digest AS authorization_content_digest, a.version AS authorization_version,"
+			+ " t.token_type, t.content_digest AS token_content_digest, t.version AS token_version"
+			+ " FROM " + AUTHORIZATION_TABLE_NAME + " a"
+			+ " LEFT JOIN " + TOKEN_TABLE_NAME + " t ON t.authorization_id = a.id"
+			+ " WHERE a.id = ?";
+	// @formatter:on
+
+	// @formatter:off
+	private static final String LOAD_AUTHORIZATION_SQL = "SELECT id, registered_client_id, principal_name, authorization_grant_type, attributes, state, version"
+			+ " FROM " + AUTHORIZATION_TABLE_NAME
+			+ " WHERE ";
+	// @formatter:on
+
+	// @formatter:off
+	private static final String LOAD_TOKENS_SQL = "SELECT token_type, token_value, issued_at, expires_at, metadata, access_token_type, access_token_scopes, version"
+			+ " FROM " + TOKEN_TABLE_NAME
+			+ " WHERE authorization_id = ?";
+	// @formatter:on
+
+	private static final String PK_FILTER = "id = ?";
+	// Only writes a row that was not written since the authorization was loaded
+	private static final String VERSION_FILTER = " AND version <= ?";
+	private static final String STATE_FILTER = "state = ?";
+	private static final String TOKEN_FILTER = "id IN (SELECT authorization_id FROM " + TOKEN_TABLE_NAME
+			+ " WHERE token_value_digest = ? AND token_type = ?)";
+	private static final String UNKNOWN_TOKEN_TYPE_FILTER = "state = ? OR id IN (SELECT authorization_id FROM " + TOKEN_TABLE_NAME
+			+ " WHERE token_value_digest = ? AND token_type IN ('" + AUTHORIZATION_CODE_TYPE + "', '"
+			+ ACCESS_TOKEN_TYPE + "', '" + REFRESH_TOKEN_TYPE + "'))";
+
+	// @formatter:off
+	private static final String SAVE_AUTHORIZATION_SQL = "INSERT INTO " + AUTHORIZATION_TABLE_NAME
+			+ " (registered_client_id, principal_name, authorization_grant_type, attributes, state, content_digest, version, id)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	// @formatter:on
+
+	// @formatter:off
+	private static final String UPDATE_AUTHORIZATION_SQL = "UPDATE " + AUTHORIZATION_TABLE_NAME
+			+ " SET registered_client_id = ?, principal_name = ?, authorization_grant_type = ?, attributes = ?, state = ?, content_digest = ?, version = ?"
+			+ " WHERE " + PK_FILTER;
+	// @formatter:on
+
+	private static final String COUNT_AUTHORIZATION_SQL = "SELECT COUNT(*) FROM " + AUTHORIZATION_TABLE_NAME + " WHERE " + PK_FILTER;
+
+	private static final String REMOVE_AUTHORIZATION_SQL = "DELETE FROM " + AUTHORIZATION_TABLE_NAME + " WHERE " + PK_FILTER;
+
+	// @formatter:off
+	private static final String SAVE_TOKEN_SQL = "INSERT INTO " + TOKEN_TABLE_NAME
+			+ " (token_value, token_value_digest, issued_at, expires_at, metadata, access_token_type, access_token_scopes, content_digest, version, authorization_id, token_type)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	// @formatter:on
+
+	// @formatter:off
+	private static final String UPDATE_TOKEN_SQL = "UPDATE " + TOKEN_TABLE_NAME
+			+ " SET token_value = ?, token_value_digest = ?, issued_at = ?, expires_at = ?, metadata = ?, access_token_type = ?, access_token_scopes = ?, content_digest = ?, version = ?"
+			+ " WHERE authorization_id = ? AND token_type = ?";
+	// @formatter:on
+
+	private static final String REMOVE_TOKEN_SQL = "DELETE FROM " + TOKEN_TABLE_NAME
+			+ " WHERE authorization_id = ? AND token_type = ?";
+
+	private static final String REMOVE_TOKENS_SQL = "DELETE FROM " + TOKEN_TABLE_NAME + " WHERE authorization_id = ?";
+
+	private final JdbcOperations jdbcOperations;
+	private final RegisteredClientRepository registeredClientRepository;
+	private final LobHandler lobHandler;
+	private final TransactionOperations transactionOperations;
+	private AttributesCodec attributesCodec = new JacksonAttributesCodec();
+
+	/**
+	 * Constructs a {@code JdbcNormalizedOAuth2AuthorizationService} using the provided parameters.
+	 *
+	 * @param jdbcOperations             the JDBC operations
+	 * @param registeredClientRepository the registered client repository
+	 * @param transactionOperations      the transaction operations used to write authorizations
+	 */
+	public JdbcNormalizedOAuth2AuthorizationService(JdbcOperations jdbcOperations,
+			RegisteredClientRepository registeredClientRepository, TransactionOperations transactionOperations) {
+		this(jdbcOperations, registeredClientRepository, new DefaultLobHandler(), transactionOperations);
+	}
+
+	/**
+	 * Constructs a {@code JdbcNormalizedOAuth2AuthorizationService} using the provided parameters.
+	 *
+	 * @param jdbcOperations             the JDBC operations
+	 * @param registeredClientRepository the registered client repository
+	 * @param lobHandler                 the handler for large binary fields and large text fields
+	 * @param transactionOperations      the transaction operations used to write authorizations
+	 */
+	public JdbcNormalizedOAuth2AuthorizationService(JdbcOperations jdbcOperations,
+			RegisteredClientRepository registeredClientRepository, LobHandler lobHandler,
+			TransactionOperations transactionOperations) {
+		Assert.notNull(jdbcOperations, "jdbcOperations cannot be null");
+		Assert.notNull(registeredClientRepository, "registeredClientRepository cannot be null");
+		Assert.notNull(lobHandler, "lobHandler cannot be null");
+		Assert.notNull(transactionOperations, "transactionOperations cannot be null");
+		this.jdbcOperations = jdbcOperations;
+		this.registeredClientRepository = registeredClientRepository;
+		this.lobHandler = lobHandler;
+		this.transactionOperations = transactionOperations;
+	}
+
+	/**
+	 * Sets the {@link AttributesCodec} used to encode and decode the attributes and token metadata.
+	 * The default is {@link JacksonAttributesCodec}.
+	 *
+	 * @param attributesCodec the {@link AttributesCodec}
+	 */
+	public final void setAttributesCodec(AttributesCodec attributesCodec) {
+		Assert.notNull(attributesCodec, "attributesCodec cannot be null");
+		this.attributesCodec = attributesCodec;
+	}
+
+	@Override
+	public void save(OAuth2Authorization authorization) {
+		Assert.notNull(authorization, "authorization cannot be null");
+		this.transactionOperations.executeWithoutResult((status) -> {
+			if (!saveChanges(authorization)) {
+				saveContent(authorization);
+			}
+		});
+	}
+
+	/**
+	 * Writes only the rows of the attributes and tokens that changed, when the authorization was derived
+	 * from an authorization loaded by this service.
+	 *
+	 * @return {@code true} if the changes were written, otherwise the authorization must be written in full
+	 */
+	private boolean saveChanges(OAuth2Authorization authorization) {
+		OAuth2Authorization.Changes changes = authorization.getChanges();
+		long loadedVersion = authorization.getVersion();
+		if (changes == null || loadedVersion == 0) {
+			return false;
+		}
+		String authorizationId = authorization.getId();
+		if (changes.isEmpty()) {
+			// Nothing to write, unless the authorization was concurrently removed
+			Integer count = this.jdbcOperations.queryForObject(COUNT_AUTHORIZATION_SQL, Integer.class, authorizationId);
+			if (count == null || count == 0) {
+				throw new OAuth2AuthorizationConflictException(authorizationId);
+			}
+			return true;
+		}
+
+		long version = loadedVersion + 1;
+		if (changes.isAttributesChanged()) {
+			saveAuthorization(authorization, toAuthorizationParameters(authorization), true, version, loadedVersion);
+		}
+		for (Class<? extends OAuth2Token> tokenClass : changes.getTokenTypes()) {
+			String tokenType = TOKEN_TYPES.get(tokenClass);
+			if (tokenType == null) {
+				// Not persisted
+				continue;
+			}
+			OAuth2Authorization.Token<?> token = authorization.getToken(tokenClass);
+			if (token != null) {
+				saveToken(authorizationId, toTokenParameters(authorizationId, tokenType, token), true, version, loadedVersion);
+			} else {
+				removeToken(authorizationId, tokenType, loadedVersion);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the rows whose content digest differs from the content digest of the stored rows.
+	 */
+	private void saveContent(OAuth2Authorization authorization) {
+		String authorizationId = authorization.getId();
+		long loadedVersion = authorization.getVersion();
+
+		// Load the content digest of the stored rows, so only the rows that changed are written
+		Map<String, String> tokenContentDigests = new HashMap<>();
+		String[] authorizationContentDigest = new String[1];
+		long[] storedVersion = new long[1];
+		this.jdbcOperations.query(LOAD_CONTENT_DIGESTS_SQL,
+				new ArgumentPreparedStatementSetter(new Object[] { new SqlParameterValue(Types.VARCHAR, authorizationId) }),
+				(rs) -> {
+					authorizationContentDigest[0] = rs.getString("authorization_content_digest");
+					storedVersion[0] = Math.max(storedVersion[0], rs.getLong("authorization_version"));
+					String tokenType = rs.getString("token_type");
+					if (tokenType != null) {
+						tokenContentDigests.put(tokenType, rs.getString("token_content_digest"));
+						storedVersion[0] = Math.max(storedVersion[0], rs.getLong("token_version"));
+					}
+				});
+		if (authorizationContentDigest[0] == null && loadedVersion != 0) {
+			// The authorization was concurrently removed
+			throw new OAuth2AuthorizationConflictException(authorizationId);
+		}
+		long version = Math.max(storedVersion[0], loadedVersion) + 1;
+
+		List<SqlParameterValue> authorizationParameters = toAuthorizationParameters(authorization);
+		// The content_digest parameter precedes the id
+		String contentDigest = (String) authorizationParameters.get(authorizationParameters.size() - 2).getValue();
+		if (!contentDigest.equals(authorizationContentDigest[0])) {
+			saveAuthorization(authorization, authorizationParameters, authorizationContentDigest[0] != null,
+					version, loadedVersion);
+		}
+
+		for (Map.Entry<String, OAuth2Authorization.Token<?>> token : getTokens(authorization).entrySet()) {
+			String tokenType = token.getKey();
+			String storedContentDigest = tokenContentDigests.remove(tokenType);
+			List<SqlParameterValue> tokenParameters = toTokenParameters(authorizationId, tokenType, token.getValue());
+			// The content_digest parameter precedes the authorization_id and token_type
+			String tokenContentDigest = (String) tokenParameters.get(tokenParameters.size() - 3).getValue();
+			if (!tokenContentDigest.equals(storedContentDigest)) {
+				saveToken(authorizationId, tokenParameters, storedContentDigest != null, version, loadedVersion);
+			}
+		}
+
+		// Remove the tokens no longer part of the authorization
+		for (String tokenType : tokenContentDigests.keySet()) {
+			removeToken(authorizationId, tokenType, loadedVersion);
+		}
+	}
+
+	/**
+	 * Updates (or inserts) the authorization row, where an authorization loaded by this service
+	 * is only updated if the row was not written since.
+	 *
+	 * @throws OAuth2AuthorizationConflictException if the row was written (or removed) since the authorization was loaded
+	 */
+	private void saveAuthorization(OAuth2Authorization authorization, List<SqlParameterValue> authorizationParameters,
+			boolean exists, long version, long loadedVersion) {
+		// The version parameter precedes the id
+		List<SqlParameterValue> parameters = new ArrayList<>(authorizationParameters);
+		parameters.add(parameters.size() - 1, new SqlParameterValue(Types.BIGINT, version));
+		if (!exists) {
+			try {
+				update(SAVE_AUTHORIZATION_SQL, parameters);
+				return;
+			} catch (DuplicateKeyException ex) {
+				// The authorization was concurrently inserted, and a failed statement
+				// may abort the transaction, so the insert is not followed by an update
+				throw new OAuth2AuthorizationConflictException(authorization.getId());
+			}
+		}
+		if (!update(UPDATE_AUTHORIZATION_SQL, parameters, loadedVersion)) {
+			throw new OAuth2AuthorizationConflictException(authorization.getId());
+		}
+	}
+
+	/**
+	 * Updates (or inserts) a token row, where the token of an authorization loaded by this service
+	 * is only updated if the row was not written since.
+	 *
+	 * @throws OAuth2AuthorizationConflictException if the row was written since the authorization was loaded,
+	 * or the authorization was removed
+	 */
+	private void saveToken(String authorizationId, List<SqlParameterValue> tokenParameters,
+			boolean exists, long version, long loadedVersion) {
+		// The version parameter precedes the authorization_id and token_type
+		List<SqlParameterValue> parameters = new ArrayList<>(tokenParameters);
+		parameters.add(parameters.size() - 2, new SqlParameterValue(Types.BIGINT, version));
+		if (exists && update(UPDATE_TOKEN_SQL, parameters, loadedVersion)) {
+			return;
+		}
+		try {
+			update(SAVE_TOKEN_SQL, parameters);
+		} catch (DataIntegrityViolationException ex) {
+			// The token was concurrently inserted (or written), or the authorization was removed
+			throw new OAuth2AuthorizationConflictException(authorizationId);
+		}
+	}
+
+	private void removeToken(String authorizationId, String tokenType, long loadedVersion) {
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorizationId));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, tokenType));
+		// A token written since the authorization was loaded is kept, as is a concurrently removed token
+		update(REMOVE_TOKEN_SQL, parameters, loadedVersion);
+	}
+
+	/**
+	 * Runs the update, which is conditional on the version of the row unless the loaded version is {@code 0}.
+	 *
+	 * @return {@code true} if a row was updated
+	 */
+	private boolean update(String sql, List<SqlParameterValue> parameters, long loadedVersion) {
+		if (loadedVersion == 0) {
+			return update(sql, parameters) > 0;
+		}
+		List<SqlParameterValue> versionedParameters = new ArrayList<>(parameters);
+		versionedParameters.add(new SqlParameterValue(Types.BIGINT, loadedVersion));
+		return update(sql + VERSION_FILTER, versionedParameters) > 0;
+	}
+
+	private int update(String sql, List<SqlParameterValue> parameters) {
+		try (LobCreator lobCreator = this.lobHandler.getLobCreator()) {
+			PreparedStatementSetter pss = new JdbcOAuth2AuthorizationService.LobCreatorArgumentPreparedStatementSetter(
+					lobCreator, parameters.toArray());
+			return this.jdbcOperations.update(sql, pss);
+		}
+	}
+
+	@Override
+	public void remove(OAuth2Authorization authorization) {
+		Assert.notNull(authorization, "authorization cannot be null");
+		PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(new Object[] {
+				new SqlParameterValue(Types.VARCHAR, authorization.getId())
+		});
+		this.transactionOperations.executeWithoutResult((status) -> {
+			this.jdbcOperations.update(REMOVE_TOKENS_SQL, pss);
+			this.jdbcOperations.update(REMOVE_AUTHORIZATION_SQL, pss);
+		});
+	}
+
+	@Nullable
+	@Override
+	public OAuth2Authorization findById(String id) {
+		Assert.hasText(id, "id cannot be empty");
+		return findBy(PK_FILTER, new SqlParameterValue(Types.VARCHAR, id));
+	}
+
+	@Nullable
+	@Override
+	public OAuth2Authorization findByToken(String token, @Nullable OAuth2TokenType tokenType) {
+		Assert.hasText(token, "token cannot be empty");
+		if (tokenType == null) {
+			return findBy(UNKNOWN_TOKEN_TYPE_FILTER,
+					new SqlParameterValue(Types.VARCHAR, token),
+					new SqlParameterValue(Types.VARCHAR, JdbcOAuth2AuthorizationService.digest(token)));
+		} else if (OAuth2ParameterNames.STATE.equals(tokenType.getValue())) {
+			return findBy(STATE_FILTER, new SqlParameterValue(Types.VARCHAR, token));
+		} else if (OAuth2ParameterNames.CODE.equals(tokenType.getValue())) {
+			return findByToken(token, AUTHORIZATION_CODE_TYPE);
+		} else if (OAuth2TokenType.ACCESS_TOKEN.equals(tokenType)) {
+			return findByToken(token, ACCESS_TOKEN_TYPE);
+		} else if (OAuth2TokenType.REFRESH_TOKEN.equals(tokenType)) {
+			return findByToken(token, REFRESH_TOKEN_TYPE);
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The authorization code is consumed using an {@code UPDATE} of its token row which is conditional
+	 * on the version of the row, so concurrent requests cannot consume the same authorization code more than once.
+	 */
+	@Nullable
+	@Override
+	public OAuth2Authorization consumeAuthorizationCode(String code) {
+		Assert.hasText(code, "code cannot be empty");
+		return this.transactionOperations.execute((status) -> consume(code));
+	}
+
+	@Nullable
+	private OAuth2Authorization consume(String code) {
+		OAuth2Authorization authorization = findByToken(code, AUTHORIZATION_CODE_TYPE);
+		if (authorization == null) {
+			return null;
+		}
+		OAuth2Authorization.Token<OAuth2AuthorizationCode> authorizationCode =
+				authorization.getToken(OAuth2AuthorizationCode.class);
+		if (authorizationCode == null || authorizationCode.isInvalidated()) {
+			return null;
+		}
+
+		// The consumed authorization matches the stored authorization once updated
+		OAuth2Authorization consumedAuthorization = OAuth2Authorization.from(authorization)
+				.token(authorizationCode.getToken(),
+						(metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.persisted()
+				.build();
+		long version = authorization.getVersion() + 1;
+		List<SqlParameterValue> parameters = toTokenParameters(authorization.getId(), AUTHORIZATION_CODE_TYPE,
+				consumedAuthorization.getToken(OAuth2AuthorizationCode.class));
+		parameters.add(parameters.size() - 2, new SqlParameterValue(Types.BIGINT, version));
+		if (!update(UPDATE_TOKEN_SQL, parameters, authorization.getVersion())) {
+			// Concurrently consumed (or modified)
+			return null;
+		}
+		return consumedAuthorization.withVersion(version);
+	}
+
+	@Nullable
+	private OAuth2Authorization findByToken(String token, String tokenType) {
+		return findBy(TOKEN_FILTER,
+				new SqlParameterValue(Types.VARCHAR, JdbcOAuth2AuthorizationService.digest(token)),
+				new SqlParameterValue(Types.VARCHAR, tokenType));
+	}
+
+	@Nullable
+	private OAuth2Authorization findBy(String filter, SqlParameterValue... parameters) {
+		PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(parameters);
+		List<String> ids = new ArrayList<>();
+		long[] version = new long[1];
+		List<OAuth2Authorization.Builder> result = this.jdbcOperations.query(
+				LOAD_AUTHORIZATION_SQL + filter, pss, (rs, rowNum) -> {
+					ids.add(rs.getString("id"));
+					version[0] = rs.getLong("version");
+					return mapAuthorization(rs);
+				});
+		if (result.isEmpty()) {
+			return null;
+		}
+		OAuth2Authorization.Builder builder = result.get(0);
+		this.jdbcOperations.query(LOAD_TOKENS_SQL,
+				new ArgumentPreparedStatementSetter(new Object[] { new SqlParameterValue(Types.VARCHAR, ids.get(0)) }),
+				(rs) -> {
+					mapToken(rs, builder);
+					// The version of the authorization is the highest version of its rows
+					version[0] = Math.max(version[0], rs.getLong("version"));
+				});
+		return builder.persisted().build().withVersion(version[0]);
+	}
+
+	private OAuth2Authorization.Builder mapAuthorization(ResultSet rs) throws SQLException {
+		String registeredClientId = rs.getString("registered_client_id");
+		RegisteredClient registeredClient = this.registeredClientRepository.findById(registeredClientId);
+		if (registeredClient == null) {
+			throw new DataRetrievalFailureException(
+					"The RegisteredClient with id '" + registeredClientId + "' was not found in the RegisteredClientRepository.");
+		}
+
+		String attributes = rs.getString("attributes");
+		OAuth2Authorization.Builder builder = OAuth2Authorization.withRegisteredClient(registeredClient)
+				.id(rs.getString("id"))
+				.principalName(rs.getString("principal_name"))
+				.authorizationGrantType(new AuthorizationGrantType(rs.getString("authorization_grant_type")))
+				.attributes(() -> this.attributesCodec.decode(attributes));
+
+		String state = rs.getString("state");
+		if (StringUtils.hasText(state)) {
+			builder.attribute(OAuth2ParameterNames.STATE, state);
+		}
+		return builder;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mapToken(ResultSet rs, OAuth2Authorization.Builder builder) throws SQLException {
+		String tokenType = rs.getString("token_type");
+		String tokenValue = new String(this.lobHandler.getBlobAsBytes(rs, "token_value"), StandardCharsets.UTF_8);
+		Timestamp issuedAt = rs.getTimestamp("issued_at");
+		Instant tokenIssuedAt = issuedAt != null ? issuedAt.toInstant() : null;
+		Timestamp expiresAt = rs.getTimestamp("expires_at");
+		Instant tokenExpiresAt = expiresAt != null ? expiresAt.toInstant() : null;
+		String metadata = rs.getString("metadata");
+
+		if (AUTHORIZATION_CODE_TYPE.equals(tokenType)) {
+			OAuth2AuthorizationCode authorizationCode = new OAuth2AuthorizationCode(
+					tokenValue, tokenIssuedAt, tokenExpiresAt);
+			builder.token(authorizationCode, () -> this.attributesCodec.decode(metadata));
+		} else if (ACCESS_TOKEN_TYPE.equals(tokenType)) {
+			OAuth2AccessToken.TokenType accessTokenType = null;
+			if (OAuth2AccessToken.TokenType.BEARER.getValue().equalsIgnoreCase(rs.getString("access_token_type"))) {
+				accessTokenType = OAuth2AccessToken.TokenType.BEARER;
+			}
+			Set<String> scopes = Collections.emptySet();
+			String accessTokenScopes = rs.getString("access_token_scopes");
+			if (accessTokenScopes != null) {
+				scopes = StringUtils.commaDelimitedListToSet(accessTokenScopes);
+			}
+			OAuth2AccessToken accessToken = new OAuth2AccessToken(
+					accessTokenType, tokenValue, tokenIssuedAt, tokenExpiresAt, scopes);
+			builder.token(accessToken, () -> this.attributesCodec.decode(metadata));
+		} else if (OIDC_ID_TOKEN_TYPE.equals(tokenType)) {
+			Map<String, Object> oidcTokenMetadata = this.attributesCodec.decode(metadata);
+			OidcIdToken oidcToken = new OidcIdToken(tokenValue, tokenIssuedAt, tokenExpiresAt,
+					(Map<String, Object>) oidcTokenMetadata.get(OAuth2Authorization.Token.CLAIMS_METADATA_NAME));
+			builder.token(oidcToken, (tokenMetadata) -> tokenMetadata.putAll(oidcTokenMetadata));
+		} else if (REFRESH_TOKEN_TYPE.equals(tokenType)) {
+			OAuth2RefreshToken refreshToken = new OAuth2RefreshToken(tokenValue, tokenIssuedAt, tokenExpiresAt);
+			builder.token(refreshToken, () -> this.attributesCodec.decode(metadata));
+		}
+	}
+
+	private List<SqlParameterValue> toAuthorizationParameters(OAuth2Authorization authorization) {
+		String attributes = this.attributesCodec.encode(authorization.getAttributes());
+		String state = null;
+		String authorizationState = authorization.getAttribute(OAuth2ParameterNames.STATE);
+		if (StringUtils.hasText(authorizationState)) {
+			state = authorizationState;
+		}
+		String contentDigest = contentDigest(authorization.getRegisteredClientId(), authorization.getPrincipalName(),
+				authorization.getAuthorizationGrantType().getValue(), attributes, state);
+
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getRegisteredClientId()));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getPrincipalName()));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getAuthorizationGrantType().getValue()));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, attributes));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, state));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, contentDigest));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getId()));
+		return parameters;
+	}
+
+	private List<SqlParameterValue> toTokenParameters(String authorizationId, String tokenType,
+			OAuth2Authorization.Token<?> token) {
+		AbstractOAuth2Token oauth2Token = (AbstractOAuth2Token) token.getToken();
+		String tokenValue = oauth2Token.getTokenValue();
+		Timestamp issuedAt = oauth2Token.getIssuedAt() != null ? Timestamp.from(oauth2Token.getIssuedAt()) : null;
+		Timestamp expiresAt = oauth2Token.getExpiresAt() != null ? Timestamp.from(oauth2Token.getExpiresAt()) : null;
+		String metadata = this.attributesCodec.encode(token.getMetadata());
+		String accessTokenType = null;
+		String accessTokenScopes = null;
+		if (oauth2Token instanceof OAuth2AccessToken) {
+			OAuth2AccessToken accessToken = (OAuth2AccessToken) oauth2Token;
+			accessTokenType = accessToken.getTokenType().getValue();
+			if (!CollectionUtils.isEmpty(accessToken.getScopes())) {
+				accessTokenScopes = StringUtils.collectionToDelimitedString(accessToken.getScopes(), ",");
+			}
+		}
+		String contentDigest = contentDigest(tokenValue, issuedAt, expiresAt, metadata, accessTokenType, accessTokenScopes);
+
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		parameters.add(new SqlParameterValue(Types.BLOB, tokenValue.getBytes(StandardCharsets.UTF_8)));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, JdbcOAuth2AuthorizationService.digest(tokenValue)));
+		parameters.add(new SqlParameterValue(Types.TIMESTAMP, issuedAt));
+		parameters.add(new SqlParameterValue(Types.TIMESTAMP, expiresAt));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, metadata));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenType));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenScopes));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, contentDigest));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorizationId));
+		parameters.add(new SqlParameterValue(Types.VARCHAR, tokenType));
+		return parameters;
+	}
+
+	private static Map<String, OAuth2Authorization.Token<?>> getTokens(OAuth2Authorization authorization) {
+		Map<String, OAuth2Authorization.Token<?>> tokens = new LinkedHashMap<>();
+		TOKEN_TYPES.forEach((tokenClass, tokenType) -> {
+			OAuth2Authorization.Token<?> token = authorization.getToken(tokenClass);
+			if (token != null) {
+				tokens.put(tokenType, token);
+			}
+		});
+		return tokens;
+	}
+
+	private static String contentDigest(Object... values) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (Object value : values) {
+				if (value == null) {
+					md.update((byte) 0);
+					continue;
+				}
+				byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+				md.update((byte) 1);
+				md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+				md.update(bytes);
+			}
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex.getMessage(), ex);
+		}
+	}
+
+	protected final JdbcOperations getJdbcOperations() {
+		return this.jdbcOperations;
+	}
+
+	protected final LobHandler getLobHandler() {
+		return this.lobHandler;
+	}
+
+	protected final AttributesCodec getAttributesCodec() {
+		return this.attributesCodec;
+	}
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Purges expired and abandoned {@link OAuth2Authorization}s stored by a {@link JdbcOAuth2AuthorizationService}
+ * with the {@link JdbcOAuth2AuthorizationService#setExpiresAtEnabled(boolean) expiry of authorizations} enabled.
+ *
+ * <p>
+ * An authorization is expired once all of its tokens have expired.
+ * An authorization awaiting consent is abandoned once the {@link #setAbandonedAuthorizationGracePeriod(Duration) grace period}
+ * has elapsed since it was saved.
+ *
+ * <p>
+ * The authorizations are deleted in batches of {@link #setBatchSize(int) bounded size}, ordered by the indexed
+ * {@code expires_at} column, optionally {@link #setPauseBetweenBatches(Duration) pausing between batches}
+ * to limit the load on the database. This class is a {@code Runnable} so it can be scheduled,
+ * for example, using a {@code TaskScheduler}:
+ *
+ * <pre>
+ * taskScheduler.scheduleWithFixedDelay(new JdbcOAuth2AuthorizationPurger(jdbcOperations), Duration.ofMinutes(10));
+ * </pre>
+ *
+ * <p>
+ * <b>NOTE:</b> This class depends on the additional column and index described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-expires-at-schema.sql",
+ * which also populates the column of the existing authorizations. An authorization whose column is {@code NULL}
+ * is never purged, as one of its tokens never expires.
+ *
+ * @since 0.2.0
+ * @see JdbcOAuth2AuthorizationService#setExpiresAtEnabled(boolean)
+ */
+public final class JdbcOAuth2AuthorizationPurger implements Runnable {
+
+	// @formatter:off
+	private static final String EXPIRED_AUTHORIZATIONS_FILTER = "expires_at < ? AND state IS NULL";
+
+	private static final String ABANDONED_AUTHORIZATIONS_FILTER = "expires_at < ? AND state IS NOT NULL";
+
+	private static final String SELECT_AUTHORIZATION_IDS_SQL = "SELECT id"
+			+ " FROM oauth2_authorization"
+			+ " WHERE %s"
+			+ " ORDER BY expires_at";
+
+	private static final String DELETE_AUTHORIZATIONS_SQL = "DELETE FROM oauth2_authorization"
+			+ " WHERE %s"
+			+ " AND id IN (%s)";
+	// @formatter:on
+
+	private final JdbcOperations jdbcOperations;
+	private int batchSize = 100;
+	private Duration pauseBetweenBatches = Duration.ZERO;
+	private Duration abandonedAuthorizationGracePeriod = Duration.ofHours(1);
+	private Clock clock = Clock.systemUTC();
+	private volatile PurgeResult lastPurgeResult;
+
+	/**
+	 * Constructs a {@code JdbcOAuth2AuthorizationPurger} using the provided parameters.
+	 *
+	 * @param jdbcOperations the JDBC operations
+	 */
+	public JdbcOAuth2AuthorizationPurger(JdbcOperations jdbcOperations) {
+		Assert.notNull(jdbcOperations, "jdbcOperations cannot be null");
+		this.jdbcOperations = jdbcOperations;
+	}
+
+	/**
+	 * Sets the maximum number of authorizations deleted per statement. The default is {@code 100}.
+	 *
+	 * @param batchSize the maximum number of authorizations deleted per statement
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the time to pause between batches, which limits the rate at which authorizations are deleted.
+	 * The default is {@code Duration.ZERO}.
+	 *
+	 * @param pauseBetweenBatches the time to pause between batches
+	 */
+	public void setPauseBetweenBatches(Duration pauseBetweenBatches) {
+		Assert.notNull(pauseBetweenBatches, "pauseBetweenBatches cannot be null");
+		Assert.isTrue(!pauseBetweenBatches.isNegative(), "pauseBetweenBatches cannot be negative");
+		this.pauseBetweenBatches = pauseBetweenBatches;
+	}
+
+	/**
+	 * Sets the time after which an authorization awaiting consent is considered abandoned.
+	 * The default is 1 hour.
+	 *
+	 * @param abandonedAuthorizationGracePeriod the time after which an authorization awaiting consent is considered abandoned
+	 */
+	public void setAbandonedAuthorizationGracePeriod(Duration abandonedAuthorizationGracePeriod) {
+		Assert.notNull(abandonedAuthorizationGracePeriod, "abandonedAuthorizationGracePeriod cannot be null");
+		Assert.isTrue(!abandonedAuthorizationGracePeriod.isNegative(), "abandonedAuthorizationGracePeriod cannot be negative");
+		this.abandonedAuthorizationGracePeriod = abandonedAuthorizationGracePeriod;
+	}
+
+	/**
+	 * Sets the {@link Clock} used to determine the current time.
+	 *
+	 * @param clock the {@link Clock}
+	 */
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the result of the last completed purge, or {@code null} if no purge was completed.
+	 *
+	 * @return the result of the last completed purge, or {@code null}
+	 */
+	@Nullable
+	public PurgeResult getLastPurgeResult() {
+		return this.lastPurgeResult;
+	}
+
+	@Override
+	public void run() {
+		purge();
+	}
+
+	/**
+	 * Deletes the expired and abandoned authorizations.
+	 *
+	 * @return the {@link PurgeResult}
+	 */
+	public PurgeResult purge() {
+		long start = System.nanoTime();
+		Instant now = this.clock.instant();
+		long expiredCount = purge(EXPIRED_AUTHORIZATIONS_FILTER, now);
+		long abandonedCount = purge(ABANDONED_AUTHORIZATIONS_FILTER, now.minus(this.abandonedAuthorizationGracePeriod));
+		PurgeResult purgeResult = new PurgeResult(expiredCount, abandonedCount,
+				Duration.ofNanos(System.nanoTime() - start));
+		this.lastPurgeResult = purgeResult;
+		return purgeResult;
+	}
+
+	private long purge(String filter, Instant threshold) {
+		SqlParameterValue thresholdParameter = new SqlParameterValue(Types.TIMESTAMP, Timestamp.from(threshold));
+		String selectSql = String.format(SELECT_AUTHORIZATION_IDS_SQL, filter);
+		long purgedCount = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			List<String> ids = this.jdbcOperations.query((connection) -> {
+				PreparedStatement ps = connection.prepareStatement(selectSql);
+				ps.setMaxRows(this.batchSize);
+				new ArgumentPreparedStatementSetter(new Object[] { thresholdParameter }).setValues(ps);
+				return ps;
+			}, (rs, rowNum) -> rs.getString(1));
+			if (ids.isEmpty()) {
+				break;
+			}
+
+			// The filter is repeated to skip authorizations saved since they were selected
+			List<SqlParameterValue> parameters = new ArrayList<>(ids.size() + 1);
+			parameters.add(thresholdParameter);
+			for (String id : ids) {
+				parameters.add(new SqlParameterValue(Types.VARCHAR, id));
+			}
+			String deleteSql = String.format(DELETE_AUTHORIZATIONS_SQL, filter,
+					String.join(", ", Collections.nCopies(ids.size(), "?")));
+			int deletedCount = this.jdbcOperations.update(deleteSql,
+					new ArgumentPreparedStatementSetter(parameters.toArray()));
+			purgedCount += deletedCount;
+			if (ids.size() < this.batchSize || deletedCount == 0) {
+				break;
+			}
+			pause();
+		}
+		return purgedCount;
+	}
+
+	private void pause() {
+		if (this.pauseBetweenBatches.isZero()) {
+			return;
+		}
+		try {
+			Thread.sleep(this.pauseBetweenBatches.toMillis());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The result of a purge.
+	 */
+	public static final class PurgeResult {
+		private final long expiredAuthorizationCount;
+		private final long abandonedAuthorizationCount;
+		private final Duration duration;
+
+		private PurgeResult(long expiredAuthorizationCount, long abandonedAuthorizationCount, Duration duration) {
+			this.expiredAuthorizationCount = expiredAuthorizationCount;
+			this.abandonedAuthorizationCount = abandonedAuthorizationCount;
+			this.duration = duration;
+		}
+
+		/**
+		 * Returns the number of expired authorizations deleted.
+		 *
+		 * @return the number of expired authorizations deleted
+		 */
+		public long getExpiredAuthorizationCount() {
+			return this.expiredAuthorizationCount;
+		}
+
+		/**
+		 * Returns the number of abandoned authorizations awaiting consent deleted.
+		 *
+		 * @return the number of abandoned authorizations deleted
+		 */
+		public long getAbandonedAuthorizationCount() {
+			return this.abandonedAuthorizationCount;
+		}
+
+		/**
+		 * Returns the total number of authorizations deleted.
+		 *
+		 * @return the total number of authorizations deleted
+		 */
+		public long getPurgedAuthorizationCount() {
+			return this.expiredAuthorizationCount + this.abandonedAuthorizationCount;
+		}
+
+		/**
+		 * Returns the time spent purging.
+		 *
+		 * @return the time spent purging
+		 */
+		public Duration getDuration() {
+			return this.duration;
+		}
+
+		@Override
+		public String toString() {
+			return "PurgeResult{expiredAuthorizationCount=" + this.expiredAuthorizationCount
+					+ ", abandonedAuthorizationCount=" + this.abandonedAuthorizationCount
+					+ ", duration=" + this.duration + '}';
+		}
+
+	}
+
+}
@@ -16,25 +16,42 @@
 package org.springframework.security.oauth2.server.authorization;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
@@ -48,12 +65,15 @@ import org.springframework.security.oauth2.core.AbstractOAuth2Token;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
 import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.codec.AttributesCodec;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.jackson2.OAuth2AuthorizationServerJackson2Module;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -68,6 +88,30 @@ import org.springframework.util.StringUtils;
  * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-schema.sql" and
  * therefore MUST be defined in the database schema.
  *
+ * <p>
+ * If {@link #setTokenValueDigestEnabled(boolean) token value digests} are enabled, the additional columns and indexes
+ * described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-token-value-digest-schema.sql"
+ * MUST also be defined in the database schema.
+ *
+ * <p>
+ * Likewise, if the {@link #setExpiresAtEnabled(boolean) expiry of authorizations} is stored, the additional column and index
+ * described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-expires-at-schema.sql"
+ * MUST also be defined in the database schema.
+ *
+ * <p>
+ * If {@link #setOptimisticLockingEnabled(boolean) optimistic locking} is enabled, the additional column
+ * described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-version-schema.sql"
+ * MUST also be defined in the database schema.
+ *
+ * <p>
+ * Finally, if the {@link #setAuthorizationCodeConsumedAtEnabled(boolean) instant the authorization code is consumed}
+ * is stored, the additional column described in
+ * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-code-consumed-at-schema.sql"
+ * MUST also be defined in the database schema.
+ *
  * @author Ovidiu Popa
  * @since 0.1.2
  * @see OAuth2AuthorizationService
@@ -104,44 +148,101 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			+ "refresh_token_metadata";
 	// @formatter:on
 
+	private static final String[] TOKEN_VALUE_DIGEST_COLUMN_NAMES = {
+			"authorization_code_value_digest", "access_token_value_digest", "refresh_token_value_digest"
+	};
+
+	private static final String EXPIRES_AT_COLUMN_NAME = "expires_at";
+
+	private static final String VERSION_COLUMN_NAME = "version";
+
+	private static final String AUTHORIZATION_CODE_CONSUMED_AT_COLUMN_NAME = "authorization_code_consumed_at";
+
 	private static final String TABLE_NAME = "oauth2_authorization";
 
+	private static final Map<Class<? extends OAuth2Token>, String> TOKEN_COLUMN_PREFIXES_BY_TYPE;
+
+	static {
+		Map<Class<? extends OAuth2Token>, String> tokenColumnPrefixesByType = new HashMap<>();
+		tokenColumnPrefixesByType.put(OAuth2AuthorizationCode.class, "authorization_code");
+		tokenColumnPrefixesByType.put(OAuth2AccessToken.class, "access_token");
+		tokenColumnPrefixesByType.put(OidcIdToken.class, "oidc_id_token");
+		tokenColumnPrefixesByType.put(OAuth2RefreshToken.class, "refresh_token");
+		TOKEN_COLUMN_PREFIXES_BY_TYPE = Collections.unmodifiableMap(tokenColumnPrefixesByType);
+	}
+
+	private static final OAuth2TokenType STATE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.STATE);
+
+	// The length of the unpadded Base64url encoding of the 32-byte keys generated for reference access tokens
+	private static final int REFERENCE_ACCESS_TOKEN_LENGTH = 43;
+
 	private static final String PK_FILTER = "id = ?";
 	private static final String UNKNOWN_TOKEN_TYPE_FILTER = "state = ? OR authorization_code_value = ? OR " +
 			"access_token_value = ? OR refresh_token_value = ?";
 
 	private static final String STATE_FILTER = "state = ?";
+	private static final String PRINCIPAL_NAME_FILTER = "principal_name = ?";
+	private static final String REGISTERED_CLIENT_ID_FILTER = "registered_client_id = ?";
+	private static final String EXPIRES_AFTER_FILTER = "(expires_at > ? OR expires_at IS NULL)";
+	private static final String EXPIRES_BEFORE_FILTER = "expires_at < ?";
+	private static final String NEXT_PAGE_FILTER = "id > ?";
 	private static final String AUTHORIZATION_CODE_FILTER = "authorization_code_value = ?";
 	private static final String ACCESS_TOKEN_FILTER = "access_token_value = ?";
 	private static final String REFRESH_TOKEN_FILTER = "refresh_token_value = ?";
 
+	private static final String UNKNOWN_TOKEN_TYPE_DIGEST_FILTER = "state = ? OR authorization_code_value_digest = ? OR " +
+			"access_token_value_digest = ? OR refresh_token_value_digest = ?";
+	private static final String AUTHORIZATION_CODE_DIGEST_FILTER = "authorization_code_value_digest = ?";
+	private static final String ACCESS_TOKEN_DIGEST_FILTER = "access_token_value_digest = ?";
+	private static final String REFRESH_TOKEN_DIGEST_FILTER = "refresh_token_value_digest = ?";
+
 	// @formatter:off
 	private static final String LOAD_AUTHORIZATION_SQL = "SELECT " + COLUMN_NAMES
 			+ " FROM " + TABLE_NAME
 			+ " WHERE ";
 	// @formatter:on
 
+	private static final String FIND_AUTHORIZATIONS_SQL = "SELECT " + COLUMN_NAMES
+			+ " FROM " + TABLE_NAME;
+
 	// @formatter:off
 	private static final String SAVE_AUTHORIZATION_SQL = "INSERT INTO " + TABLE_NAME
 			+ " (" + COLUMN_NAMES + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 	// @formatter:on
 
 	// @formatter:off
-	private static final String UPDATE_AUTHORIZATION_SQL = "UPDATE " + TABLE_NAME
+	private static final String UPDATE_AUTHORIZATION_SET = "UPDATE " + TABLE_NAME
 			+ " SET registered_client_id = ?, principal_name = ?, authorization_grant_type = ?, attributes = ?, state = ?,"
 			+ " authorization_code_value = ?, authorization_code_issued_at = ?, authorization_code_expires_at = ?, authorization_code_metadata = ?,"
 			+ " access_token_value = ?, access_token_issued_at = ?, access_token_expires_at = ?, access_token_metadata = ?, access_token_type = ?, access_token_scopes = ?,"
 			+ " oidc_id_token_value = ?, oidc_id_token_issued_at = ?, oidc_id_token_expires_at = ?, oidc_id_token_metadata = ?,"
-			+ " refresh_token_value = ?, refresh_token_issued_at = ?, refresh_token_expires_at = ?, refresh_token_metadata = ?"
-			+ " WHERE " + PK_FILTER;
+			+ " refresh_token_value = ?, refresh_token_issued_at = ?, refresh_token_expires_at = ?, refresh_token_metadata = ?";
 	// @formatter:on
 
+	private static final String UPDATE_AUTHORIZATION_SQL = UPDATE_AUTHORIZATION_SET
+			+ " WHERE " + PK_FILTER;
+
 	private static final String REMOVE_AUTHORIZATION_SQL = "DELETE FROM " + TABLE_NAME + " WHERE " + PK_FILTER;
 
+	private static final String REMOVE_AUTHORIZATIONS_SQL = "DELETE FROM " + TABLE_NAME + " WHERE id IN (%s)";
+
+	private static final String REMOVE_AUTHORIZATIONS_BY_SQL = "DELETE FROM " + TABLE_NAME + " WHERE ";
+
 	private final JdbcOperations jdbcOperations;
 	private final LobHandler lobHandler;
 	private RowMapper<OAuth2Authorization> authorizationRowMapper;
 	private Function<OAuth2Authorization, List<SqlParameterValue>> authorizationParametersMapper;
+	private boolean tokenValueDigestEnabled;
+	private boolean expiresAtEnabled;
+	private boolean optimisticLockingEnabled;
+	private boolean authorizationCodeConsumedAtEnabled;
+	private int batchSize = 100;
+	private int pageSize = 100;
+	private String saveAuthorizationSql = SAVE_AUTHORIZATION_SQL;
+	private String updateAuthorizationSql = UPDATE_AUTHORIZATION_SQL;
+	private String versionedUpdateAuthorizationSql;
+	private Function<String, OAuth2TokenType> tokenTypeResolver = JdbcOAuth2AuthorizationService::resolveTokenType;
+	private final TokenTypeProbeStatistics tokenTypeProbeStatistics = new TokenTypeProbeStatistics();
 
 	/**
 	 * Constructs a {@code JdbcOAuth2AuthorizationService} using the provided parameters.
@@ -177,31 +278,389 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 	@Override
 	public void save(OAuth2Authorization authorization) {
 		Assert.notNull(authorization, "authorization cannot be null");
-		OAuth2Authorization existingAuthorization = findById(authorization.getId());
-		if (existingAuthorization == null) {
-			insertAuthorization(authorization);
-		} else {
-			updateAuthorization(authorization);
+		if (updateChangedColumns(authorization)) {
+			return;
+		}
+		List<SqlParameterValue> parameters = toParameters(authorization);
+		long version = this.optimisticLockingEnabled ? authorization.getVersion() : 0;
+		if (version != 0) {
+			// Only update the authorization if it was not modified since it was loaded
+			if (updateAuthorization(this.versionedUpdateAuthorizationSql, parameters, version) == 0) {
+				throw new OAuth2AuthorizationConflictException(authorization.getId());
+			}
+			return;
+		}
+		if (authorization.getChanges() == null) {
+			// Not loaded by this service, so most likely a new authorization, which is inserted first
+			if (!insertAuthorization(authorization, parameters)) {
+				updateAuthorization(this.updateAuthorizationSql, parameters, 0);
+			}
+			return;
+		}
+		// Attempt the update first, which avoids loading (and parsing) the existing authorization
+		if (updateAuthorization(this.updateAuthorizationSql, parameters, 0) == 0
+				&& !insertAuthorization(authorization, parameters)) {
+			// The authorization was concurrently inserted
+			updateAuthorization(this.updateAuthorizationSql, parameters, 0);
 		}
 	}
 
-	private void updateAuthorization(OAuth2Authorization authorization) {
+	/**
+	 * Inserts the authorization, unless it exists. Within a transaction, the failed insert may have aborted
+	 * the transaction (e.g. on PostgreSQL), so the authorization is not updated instead.
+	 *
+	 * @return {@code true} if inserted, or {@code false} if it exists and no transaction is active
+	 * @throws OAuth2AuthorizationConflictException if it exists and a transaction is active
+	 */
+	private boolean insertAuthorization(OAuth2Authorization authorization, List<SqlParameterValue> parameters) {
+		try {
+			insertAuthorization(parameters);
+			return true;
+		} catch (DuplicateKeyException ex) {
+			if (TransactionSynchronizationManager.isActualTransactionActive()) {
+				throw new OAuth2AuthorizationConflictException(authorization.getId());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * The authorizations are saved using batched statements of up to {@link #setBatchSize(int) batch size} authorizations,
+	 * except for the updates of authorizations loaded with a version when {@link #setOptimisticLockingEnabled(boolean)
+	 * optimistic locking} is enabled, which are run one by one so that a conflicting update is always detected.
+	 * Unless called within a transaction, the authorizations are not saved atomically: when an
+	 * {@link OAuth2AuthorizationConflictException} is thrown, the other authorizations of the same batch,
+	 * and of the batches before it, are already saved.
+	 */
+	@Override
+	public void saveAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		Assert.noNullElements(authorizations, "authorizations cannot contain null elements");
+		saveInBatches(authorizations.iterator());
+	}
+
+	/**
+	 * Saves the authorizations provided by the {@code Stream} in batches, for example, when importing
+	 * authorizations exported from another database using {@link #findAll(OAuth2AuthorizationQuery)}.
+	 * The memory used is bounded by the {@link #setBatchSize(int) batch size}, regardless of the number of authorizations.
+	 *
+	 * <p>
+	 * Unlike {@link #saveAll(Collection)}, the version of the authorizations (when {@link #setOptimisticLockingEnabled(boolean)
+	 * optimistic locking} is enabled) is ignored, as it refers to where the authorizations were exported from,
+	 * so existing authorizations are overwritten in full. The provided authorizations are not modified.
+	 *
+	 * @param authorizations the {@code Stream} of authorizations
+	 * @since 0.2.0
+	 */
+	public void importAll(Stream<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		// The authorizations may be the live instances of another service, so they are copied rather than modified
+		saveInBatches(authorizations.map((authorization) -> {
+			Assert.notNull(authorization, "authorization cannot be null");
+			return authorization.detach();
+		}).iterator());
+	}
+
+	private void saveInBatches(Iterator<OAuth2Authorization> authorizations) {
+		List<OAuth2Authorization> batch = new ArrayList<>();
+		while (authorizations.hasNext()) {
+			batch.add(authorizations.next());
+			if (batch.size() == this.batchSize) {
+				saveBatch(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			saveBatch(batch);
+		}
+	}
+
+	/**
+	 * Saves the authorizations using a batched update, followed by a batched insert of the authorizations
+	 * that do not exist yet, which is the batched equivalent of {@link #save(OAuth2Authorization)}.
+	 * The versioned updates are not batched, as some drivers do not report the updated count of batched
+	 * statements, which is required to detect a conflicting update.
+	 */
+	private void saveBatch(List<OAuth2Authorization> authorizations) {
+		List<OAuth2Authorization> unversionedAuthorizations = new ArrayList<>();
+		List<List<SqlParameterValue>> unversionedParameters = new ArrayList<>();
+		String conflictingAuthorizationId = null;
+		for (OAuth2Authorization authorization : authorizations) {
+			List<SqlParameterValue> parameters = toParameters(authorization);
+			long version = this.optimisticLockingEnabled ? authorization.getVersion() : 0;
+			if (version != 0) {
+				if (updateAuthorization(this.versionedUpdateAuthorizationSql, parameters, version) == 0
+						&& conflictingAuthorizationId == null) {
+					conflictingAuthorizationId = authorization.getId();
+				}
+			} else {
+				unversionedAuthorizations.add(authorization);
+				unversionedParameters.add(parameters);
+			}
+		}
+
+		if (!unversionedAuthorizations.isEmpty()) {
+			List<List<SqlParameterValue>> updateParameters = new ArrayList<>(unversionedParameters.size());
+			for (List<SqlParameterValue> parameters : unversionedParameters) {
+				updateParameters.add(toUpdateParameters(parameters, 0));
+			}
+			int[] updatedCounts = batchUpdate(this.updateAuthorizationSql, updateParameters);
+			List<OAuth2Authorization> newAuthorizations = new ArrayList<>();
+			List<List<SqlParameterValue>> insertParameters = new ArrayList<>();
+			for (int i = 0; i < updatedCounts.length; i++) {
+				if (updatedCounts[i] == 0) {
+					newAuthorizations.add(unversionedAuthorizations.get(i));
+					insertParameters.add(unversionedParameters.get(i));
+				} else if (updatedCounts[i] == Statement.SUCCESS_NO_INFO) {
+					// The driver does not report whether the authorization exists, so save it individually
+					save(unversionedAuthorizations.get(i));
+				}
+			}
+			if (!newAuthorizations.isEmpty()) {
+				try {
+					batchUpdate(this.saveAuthorizationSql, insertParameters);
+				} catch (DuplicateKeyException ex) {
+					if (TransactionSynchronizationManager.isActualTransactionActive()) {
+						// The failed insert may have aborted the transaction
+						throw ex;
+					}
+					// An authorization was concurrently inserted, so fall back to saving them individually
+					newAuthorizations.forEach(this::save);
+				}
+			}
+		}
+
+		if (conflictingAuthorizationId != null) {
+			throw new OAuth2AuthorizationConflictException(conflictingAuthorizationId);
+		}
+	}
+
+	private int[] batchUpdate(String sql, List<List<SqlParameterValue>> batchParameters) {
+		try (LobCreator lobCreator = this.lobHandler.getLobCreator()) {
+			return this.jdbcOperations.batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					new LobCreatorArgumentPreparedStatementSetter(lobCreator, batchParameters.get(i).toArray())
+							.setValues(ps);
+				}
+
+				@Override
+				public int getBatchSize() {
+					return batchParameters.size();
+				}
+
+			});
+		}
+	}
+
+	private List<SqlParameterValue> toParameters(OAuth2Authorization authorization) {
 		List<SqlParameterValue> parameters = this.authorizationParametersMapper.apply(authorization);
-		SqlParameterValue id = parameters.remove(0);
-		parameters.add(id);
+		if (this.tokenValueDigestEnabled || this.expiresAtEnabled) {
+			parameters = new ArrayList<>(parameters);
+			if (this.tokenValueDigestEnabled) {
+				parameters.addAll(toTokenValueDigestParameters(authorization));
+			}
+			if (this.expiresAtEnabled) {
+				parameters.add(toExpiresAtParameter(authorization));
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Updates only the columns of the attributes and tokens that changed, when the authorization was derived
+	 * from an authorization loaded by this service and the default parameters mapper is used.
+	 *
+	 * @return {@code true} if the changes were written, otherwise the authorization must be written in full
+	 */
+	private boolean updateChangedColumns(OAuth2Authorization authorization) {
+		OAuth2Authorization.Changes changes = authorization.getChanges();
+		if (changes == null || this.authorizationParametersMapper.getClass() != OAuth2AuthorizationParametersMapper.class) {
+			return false;
+		}
+		if (changes.isEmpty()) {
+			return isUnchanged(authorization);
+		}
+		OAuth2AuthorizationParametersMapper authorizationParametersMapper =
+				(OAuth2AuthorizationParametersMapper) this.authorizationParametersMapper;
+		List<String> columnNames = new ArrayList<>();
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		if (changes.isAttributesChanged()) {
+			columnNames.add("attributes");
+			columnNames.add("state");
+			parameters.add(new SqlParameterValue(Types.VARCHAR,
+					authorizationParametersMapper.writeMap(authorization.getAttributes())));
+			parameters.add(OAuth2AuthorizationParametersMapper.toStateParameter(authorization));
+		}
+		for (Class<? extends OAuth2Token> tokenType : changes.getTokenTypes()) {
+			String tokenColumnPrefix = TOKEN_COLUMN_PREFIXES_BY_TYPE.get(tokenType);
+			if (tokenColumnPrefix == null) {
+				// Not persisted
+				continue;
+			}
+			OAuth2Authorization.Token<? extends AbstractOAuth2Token> token =
+					authorization.getToken(tokenType.asSubclass(AbstractOAuth2Token.class));
+			columnNames.add(tokenColumnPrefix + "_value");
+			columnNames.add(tokenColumnPrefix + "_issued_at");
+			columnNames.add(tokenColumnPrefix + "_expires_at");
+			columnNames.add(tokenColumnPrefix + "_metadata");
+			parameters.addAll(authorizationParametersMapper.toSqlParameterList(token));
+			if (OAuth2AccessToken.class.equals(tokenType)) {
+				columnNames.add("access_token_type");
+				columnNames.add("access_token_scopes");
+				parameters.addAll(OAuth2AuthorizationParametersMapper.toAccessTokenTypeAndScopesParameters(
+						authorization.getToken(OAuth2AccessToken.class)));
+			}
+			if (this.tokenValueDigestEnabled && !OidcIdToken.class.equals(tokenType)) {
+				columnNames.add(tokenColumnPrefix + "_value_digest");
+				parameters.add(toTokenValueDigestParameter(token));
+			}
+		}
+		if (this.expiresAtEnabled && !changes.getTokenTypes().isEmpty()) {
+			columnNames.add(EXPIRES_AT_COLUMN_NAME);
+			parameters.add(toExpiresAtParameter(authorization));
+		}
+		if (columnNames.isEmpty()) {
+			return isUnchanged(authorization);
+		}
+		long version = this.optimisticLockingEnabled ? authorization.getVersion() : 0;
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getId()));
+		if (version != 0) {
+			parameters.add(new SqlParameterValue(Types.BIGINT, version));
+		}
+		// @formatter:off
+		String updateSql = "UPDATE " + TABLE_NAME
+				+ " SET " + StringUtils.collectionToDelimitedString(columnNames, ", ", "", " = ?")
+				+ (this.optimisticLockingEnabled ? ", " + VERSION_COLUMN_NAME + " = " + VERSION_COLUMN_NAME + " + 1" : "")
+				+ " WHERE " + PK_FILTER
+				+ (version != 0 ? " AND " + VERSION_COLUMN_NAME + " = ?" : "");
+		// @formatter:on
+		int updatedCount;
 		try (LobCreator lobCreator = this.lobHandler.getLobCreator()) {
 			PreparedStatementSetter pss = new LobCreatorArgumentPreparedStatementSetter(lobCreator,
 					parameters.toArray());
-			this.jdbcOperations.update(UPDATE_AUTHORIZATION_SQL, pss);
+			updatedCount = this.jdbcOperations.update(updateSql, pss);
+		}
+		if (version != 0 && updatedCount == 0) {
+			throw new OAuth2AuthorizationConflictException(authorization.getId());
 		}
+		return updatedCount > 0;
 	}
 
-	private void insertAuthorization(OAuth2Authorization authorization) {
-		List<SqlParameterValue> parameters = this.authorizationParametersMapper.apply(authorization);
+	/**
+	 * Returns {@code true} if the stored authorization is unchanged, when there is nothing to write, rather than
+	 * assuming it, as the authorization may have been concurrently removed (or modified) since it was loaded.
+	 *
+	 * @return {@code true} if the stored authorization is unchanged, otherwise the authorization must be written in full
+	 */
+	private boolean isUnchanged(OAuth2Authorization authorization) {
+		long version = this.optimisticLockingEnabled ? authorization.getVersion() : 0;
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getId()));
+		if (version != 0) {
+			parameters.add(new SqlParameterValue(Types.BIGINT, version));
+		}
+		// @formatter:off
+		String countSql = "SELECT COUNT(*) FROM " + TABLE_NAME
+				+ " WHERE " + PK_FILTER
+				+ (version != 0 ? " AND " + VERSION_COLUMN_NAME + " = ?" : "");
+		// @formatter:on
+		Integer count = this.jdbcOperations.queryForObject(countSql, Integer.class, parameters.toArray());
+		if (count == null || count == 0) {
+			if (version != 0) {
+				throw new OAuth2AuthorizationConflictException(authorization.getId());
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private int updateAuthorization(String updateSql, List<SqlParameterValue> parameters, long version) {
+		List<SqlParameterValue> updateParameters = toUpdateParameters(parameters, version);
+		try (LobCreator lobCreator = this.lobHandler.getLobCreator()) {
+			PreparedStatementSetter pss = new LobCreatorArgumentPreparedStatementSetter(lobCreator,
+					updateParameters.toArray());
+			return this.jdbcOperations.update(updateSql, pss);
+		}
+	}
+
+	private static List<SqlParameterValue> toUpdateParameters(List<SqlParameterValue> parameters, long version) {
+		// The id is moved from the first (insert) to the last (update) parameter
+		List<SqlParameterValue> updateParameters = new ArrayList<>(parameters);
+		SqlParameterValue id = updateParameters.remove(0);
+		updateParameters.add(id);
+		if (version != 0) {
+			updateParameters.add(new SqlParameterValue(Types.BIGINT, version));
+		}
+		return updateParameters;
+	}
+
+	private void insertAuthorization(List<SqlParameterValue> parameters) {
 		try (LobCreator lobCreator = this.lobHandler.getLobCreator()) {
 			PreparedStatementSetter pss = new LobCreatorArgumentPreparedStatementSetter(lobCreator,
 					parameters.toArray());
-			this.jdbcOperations.update(SAVE_AUTHORIZATION_SQL, pss);
+			this.jdbcOperations.update(this.saveAuthorizationSql, pss);
+		}
+	}
+
+	private static List<SqlParameterValue> toTokenValueDigestParameters(OAuth2Authorization authorization) {
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		parameters.add(toTokenValueDigestParameter(authorization.getToken(OAuth2AuthorizationCode.class)));
+		parameters.add(toTokenValueDigestParameter(authorization.getToken(OAuth2AccessToken.class)));
+		parameters.add(toTokenValueDigestParameter(authorization.getToken(OAuth2RefreshToken.class)));
+		return parameters;
+	}
+
+	private static SqlParameterValue toTokenValueDigestParameter(@Nullable OAuth2Authorization.Token<?> token) {
+		String tokenValueDigest = token != null ? digest(token.getToken().getTokenValue()) : null;
+		return new SqlParameterValue(Types.VARCHAR, tokenValueDigest);
+	}
+
+	private static SqlParameterValue toExpiresAtParameter(OAuth2Authorization authorization) {
+		Instant expiresAt = expiresAt(authorization);
+		return new SqlParameterValue(Types.TIMESTAMP, expiresAt != null ? Timestamp.from(expiresAt) : null);
+	}
+
+	/**
+	 * Returns the latest expiry of the tokens of the authorization, or {@code null} if a token never expires.
+	 * An authorization without tokens (awaiting consent) is stamped with the current time instead,
+	 * which is the starting point of the grace period after which it is considered abandoned.
+	 */
+	@Nullable
+	private static Instant expiresAt(OAuth2Authorization authorization) {
+		Instant expiresAt = null;
+		boolean hasToken = false;
+		for (OAuth2Authorization.Token<?> token : Arrays.asList(
+				authorization.getToken(OAuth2AuthorizationCode.class),
+				authorization.getToken(OAuth2AccessToken.class),
+				authorization.getToken(OidcIdToken.class),
+				authorization.getRefreshToken())) {
+			if (token == null) {
+				continue;
+			}
+			hasToken = true;
+			Instant tokenExpiresAt = token.getToken().getExpiresAt();
+			if (tokenExpiresAt == null) {
+				return null;
+			}
+			if (expiresAt == null || tokenExpiresAt.isAfter(expiresAt)) {
+				expiresAt = tokenExpiresAt;
+			}
+		}
+		return hasToken ? expiresAt : Instant.now();
+	}
+
+	static String digest(String tokenValue) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(tokenValue.getBytes(StandardCharsets.UTF_8));
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex.getMessage(), ex);
 		}
 	}
 
@@ -215,6 +674,109 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 		this.jdbcOperations.update(REMOVE_AUTHORIZATION_SQL, pss);
 	}
 
+	@Override
+	public void removeAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		Assert.noNullElements(authorizations, "authorizations cannot contain null elements");
+		List<SqlParameterValue> parameters = new ArrayList<>(Math.min(authorizations.size(), this.batchSize));
+		for (OAuth2Authorization authorization : authorizations) {
+			parameters.add(new SqlParameterValue(Types.VARCHAR, authorization.getId()));
+			if (parameters.size() == this.batchSize) {
+				removeAuthorizations(parameters);
+				parameters.clear();
+			}
+		}
+		if (!parameters.isEmpty()) {
+			removeAuthorizations(parameters);
+		}
+	}
+
+	private void removeAuthorizations(List<SqlParameterValue> idParameters) {
+		String removeSql = String.format(REMOVE_AUTHORIZATIONS_SQL,
+				String.join(", ", Collections.nCopies(idParameters.size(), "?")));
+		this.jdbcOperations.update(removeSql, new ArgumentPreparedStatementSetter(idParameters.toArray()));
+	}
+
+	/**
+	 * Invalidates the tokens of all authorizations of the provided principal, for example,
+	 * when the user logs out of all sessions or the account is compromised.
+	 *
+	 * <p>
+	 * The authorizations are loaded using a single statement and the invalidated authorizations are saved
+	 * in batches using {@link #saveAll(Collection)}, as the token metadata is encoded
+	 * by the {@link #setAuthorizationParametersMapper(Function) parameters mapper} and cannot be updated in place.
+	 *
+	 * @param principalName the name of the principal
+	 * @return the number of authorizations invalidated
+	 * @since 0.2.0
+	 */
+	public int invalidateByPrincipalName(String principalName) {
+		Assert.hasText(principalName, "principalName cannot be empty");
+		return invalidateBy(PRINCIPAL_NAME_FILTER, principalName);
+	}
+
+	/**
+	 * Invalidates the tokens of all authorizations of the provided registered client, for example,
+	 * when the client credentials are compromised.
+	 *
+	 * @param registeredClientId the identifier of the registered client
+	 * @return the number of authorizations invalidated
+	 * @since 0.2.0
+	 * @see #invalidateByPrincipalName(String)
+	 */
+	public int invalidateByRegisteredClientId(String registeredClientId) {
+		Assert.hasText(registeredClientId, "registeredClientId cannot be empty");
+		return invalidateBy(REGISTERED_CLIENT_ID_FILTER, registeredClientId);
+	}
+
+	/**
+	 * Removes all authorizations of the provided principal using a single statement.
+	 *
+	 * @param principalName the name of the principal
+	 * @return the number of authorizations removed
+	 * @since 0.2.0
+	 */
+	public int removeByPrincipalName(String principalName) {
+		Assert.hasText(principalName, "principalName cannot be empty");
+		return removeBy(PRINCIPAL_NAME_FILTER, principalName);
+	}
+
+	/**
+	 * Removes all authorizations of the provided registered client using a single statement.
+	 *
+	 * @param registeredClientId the identifier of the registered client
+	 * @return the number of authorizations removed
+	 * @since 0.2.0
+	 */
+	public int removeByRegisteredClientId(String registeredClientId) {
+		Assert.hasText(registeredClientId, "registeredClientId cannot be empty");
+		return removeBy(REGISTERED_CLIENT_ID_FILTER, registeredClientId);
+	}
+
+	private int invalidateBy(String filter, String value) {
+		SqlParameterValue[] parameters = new SqlParameterValue[] {
+				new SqlParameterValue(Types.VARCHAR, value)
+		};
+		List<OAuth2Authorization> invalidatedAuthorizations = new ArrayList<>();
+		for (OAuth2Authorization authorization : findAllBy(LOAD_AUTHORIZATION_SQL, filter,
+				Arrays.asList(parameters), this.authorizationRowMapper)) {
+			OAuth2Authorization invalidatedAuthorization = authorization.invalidateTokens();
+			if (invalidatedAuthorization != authorization) {
+				invalidatedAuthorizations.add(invalidatedAuthorization);
+			}
+		}
+		saveAll(invalidatedAuthorizations);
+		return invalidatedAuthorizations.size();
+	}
+
+	private int removeBy(String filter, String value) {
+		SqlParameterValue[] parameters = new SqlParameterValue[] {
+				new SqlParameterValue(Types.VARCHAR, value)
+		};
+		return this.jdbcOperations.update(REMOVE_AUTHORIZATIONS_BY_SQL + filter,
+				new ArgumentPreparedStatementSetter(parameters));
+	}
+
 	@Nullable
 	@Override
 	public OAuth2Authorization findById(String id) {
@@ -228,35 +790,266 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 	@Override
 	public OAuth2Authorization findByToken(String token, @Nullable OAuth2TokenType tokenType) {
 		Assert.hasText(token, "token cannot be empty");
+		if (tokenType != null) {
+			return findByTokenType(token, tokenType);
+		}
+
+		// Probe the (single) column of the most likely token type before falling back to all columns
+		OAuth2TokenType resolvedTokenType = this.tokenTypeResolver.apply(token);
+		if (resolvedTokenType != null) {
+			OAuth2Authorization authorization = findByTokenType(token, resolvedTokenType);
+			this.tokenTypeProbeStatistics.record(resolvedTokenType, authorization != null);
+			if (authorization != null) {
+				return authorization;
+			}
+		}
+
 		List<SqlParameterValue> parameters = new ArrayList<>();
-		if (tokenType == null) {
-			parameters.add(new SqlParameterValue(Types.VARCHAR, token));
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			return findBy(UNKNOWN_TOKEN_TYPE_FILTER, parameters);
-		} else if (OAuth2ParameterNames.STATE.equals(tokenType.getValue())) {
+		parameters.add(new SqlParameterValue(Types.VARCHAR, token));
+		parameters.add(toTokenValueParameter(token));
+		parameters.add(toTokenValueParameter(token));
+		parameters.add(toTokenValueParameter(token));
+		return findBy(this.tokenValueDigestEnabled ?
+				UNKNOWN_TOKEN_TYPE_DIGEST_FILTER : UNKNOWN_TOKEN_TYPE_FILTER, parameters);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>
+	 * If the {@link #setAuthorizationCodeConsumedAtEnabled(boolean) instant the authorization code is consumed}
+	 * is stored, the authorization code is first consumed using an {@code UPDATE} of that column, which only succeeds
+	 * if the column is still {@code NULL}, so concurrent requests cannot consume the same authorization code more than once.
+	 * Only then is the authorization loaded and the authorization code invalidated in its metadata.
+	 * Otherwise, the {@link OAuth2AuthorizationService#consumeAuthorizationCode(String) default implementation} is used,
+	 * which requires {@link #setOptimisticLockingEnabled(boolean) optimistic locking} to consume
+	 * the authorization code atomically.
+	 */
+	@Nullable
+	@Override
+	public OAuth2Authorization consumeAuthorizationCode(String code) {
+		Assert.hasText(code, "code cannot be empty");
+		if (!this.authorizationCodeConsumedAtEnabled) {
+			return OAuth2AuthorizationService.super.consumeAuthorizationCode(code);
+		}
+		SqlParameterValue codeParameter = toTokenValueParameter(code);
+		String codeFilter = this.tokenValueDigestEnabled ? AUTHORIZATION_CODE_DIGEST_FILTER : AUTHORIZATION_CODE_FILTER;
+		// @formatter:off
+		String consumeSql = "UPDATE " + TABLE_NAME
+				+ " SET " + AUTHORIZATION_CODE_CONSUMED_AT_COLUMN_NAME + " = ?"
+				+ " WHERE " + codeFilter
+				+ " AND " + AUTHORIZATION_CODE_CONSUMED_AT_COLUMN_NAME + " IS NULL";
+		// @formatter:on
+		PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(new Object[] {
+				new SqlParameterValue(Types.TIMESTAMP, Timestamp.from(Instant.now())), codeParameter
+		});
+		if (this.jdbcOperations.update(consumeSql, pss) == 0) {
+			// Not found or already consumed
+			return null;
+		}
+
+		OAuth2Authorization authorization = findBy(codeFilter, Collections.singletonList(codeParameter));
+		if (authorization == null) {
+			// Concurrently removed
+			return null;
+		}
+		OAuth2Authorization.Token<OAuth2AuthorizationCode> authorizationCode =
+				authorization.getToken(OAuth2AuthorizationCode.class);
+		if (authorizationCode == null || authorizationCode.isInvalidated()) {
+			// Invalidated other than by being consumed, e.g. revoked
+			return null;
+		}
+		OAuth2Authorization consumedAuthorization = OAuth2Authorization.from(authorization)
+				.token(authorizationCode.getToken(),
+						(metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.build();
+		try {
+			save(consumedAuthorization);
+		} catch (OAuth2AuthorizationConflictException ex) {
+			// Concurrently modified after being consumed
+			return null;
+		}
+		return consumedAuthorization;
+	}
+
+	/**
+	 * Returns a {@code Stream} of the authorizations matching the provided query, ordered by identifier.
+	 *
+	 * <p>
+	 * The authorizations are loaded lazily, a page at a time, using keyset pagination on the identifier,
+	 * so the memory used is bounded by the {@link #setPageSize(int) page size}, regardless of the number of authorizations.
+	 * A connection is only held while a page is loaded, so the authorizations saved or removed while the
+	 * {@code Stream} is consumed may or may not be included.
+	 *
+	 * <p>
+	 * Finding authorizations by expiry requires the {@link #setExpiresAtEnabled(boolean) expiry of authorizations}
+	 * to be stored.
+	 *
+	 * @param query the query
+	 * @return a {@code Stream} of the authorizations matching the query
+	 * @since 0.2.0
+	 */
+	public Stream<OAuth2Authorization> findAll(OAuth2AuthorizationQuery query) {
+		Assert.notNull(query, "query cannot be null");
+		Assert.state(this.expiresAtEnabled || (query.getExpiresAfter() == null && query.getExpiresBefore() == null),
+				"expiresAtEnabled must be true to find authorizations by expiry");
+		int pageSize = this.pageSize;
+		Iterator<OAuth2Authorization> iterator = new Iterator<OAuth2Authorization>() {
+			private List<OAuth2Authorization> page = Collections.emptyList();
+			private int index;
+			private boolean lastPage;
+
+			@Override
+			public boolean hasNext() {
+				if (this.index < this.page.size()) {
+					return true;
+				}
+				if (this.lastPage) {
+					return false;
+				}
+				String lastId = !this.page.isEmpty() ? this.page.get(this.page.size() - 1).getId() : null;
+				this.page = findPage(query, lastId, pageSize);
+				this.index = 0;
+				this.lastPage = this.page.size() < pageSize;
+				return !this.page.isEmpty();
+			}
+
+			@Override
+			public OAuth2Authorization next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.page.get(this.index++);
+			}
+
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+	}
+
+	private List<OAuth2Authorization> findPage(OAuth2AuthorizationQuery query, @Nullable String lastId, int pageSize) {
+		List<String> filters = new ArrayList<>();
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		if (query.getPrincipalName() != null) {
+			filters.add(PRINCIPAL_NAME_FILTER);
+			parameters.add(new SqlParameterValue(Types.VARCHAR, query.getPrincipalName()));
+		}
+		if (query.getRegisteredClientId() != null) {
+			filters.add(REGISTERED_CLIENT_ID_FILTER);
+			parameters.add(new SqlParameterValue(Types.VARCHAR, query.getRegisteredClientId()));
+		}
+		if (query.getExpiresAfter() != null) {
+			filters.add(EXPIRES_AFTER_FILTER);
+			parameters.add(new SqlParameterValue(Types.TIMESTAMP, Timestamp.from(query.getExpiresAfter())));
+		}
+		if (query.getExpiresBefore() != null) {
+			filters.add(EXPIRES_BEFORE_FILTER);
+			parameters.add(new SqlParameterValue(Types.TIMESTAMP, Timestamp.from(query.getExpiresBefore())));
+		}
+		if (lastId != null) {
+			filters.add(NEXT_PAGE_FILTER);
+			parameters.add(new SqlParameterValue(Types.VARCHAR, lastId));
+		}
+		String selectSql = versionedSelectSql(FIND_AUTHORIZATIONS_SQL)
+				+ (!filters.isEmpty() ? " WHERE " + String.join(" AND ", filters) : "")
+				+ " ORDER BY id";
+		return this.jdbcOperations.query((connection) -> {
+			PreparedStatement ps = connection.prepareStatement(selectSql);
+			ps.setMaxRows(pageSize);
+			ps.setFetchSize(pageSize);
+			new ArgumentPreparedStatementSetter(parameters.toArray()).setValues(ps);
+			return ps;
+		}, loadedRowMapper(this.authorizationRowMapper));
+	}
+
+	@Nullable
+	private OAuth2Authorization findByTokenType(String token, OAuth2TokenType tokenType) {
+		List<SqlParameterValue> parameters = new ArrayList<>();
+		if (OAuth2ParameterNames.STATE.equals(tokenType.getValue())) {
 			parameters.add(new SqlParameterValue(Types.VARCHAR, token));
 			return findBy(STATE_FILTER, parameters);
 		} else if (OAuth2ParameterNames.CODE.equals(tokenType.getValue())) {
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			return findBy(AUTHORIZATION_CODE_FILTER, parameters);
+			parameters.add(toTokenValueParameter(token));
+			return findBy(this.tokenValueDigestEnabled ?
+					AUTHORIZATION_CODE_DIGEST_FILTER : AUTHORIZATION_CODE_FILTER, parameters);
 		} else if (OAuth2TokenType.ACCESS_TOKEN.equals(tokenType)) {
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			return findBy(ACCESS_TOKEN_FILTER, parameters);
+			parameters.add(toTokenValueParameter(token));
+			return findBy(this.tokenValueDigestEnabled ?
+					ACCESS_TOKEN_DIGEST_FILTER : ACCESS_TOKEN_FILTER, parameters);
 		} else if (OAuth2TokenType.REFRESH_TOKEN.equals(tokenType)) {
-			parameters.add(new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8)));
-			return findBy(REFRESH_TOKEN_FILTER, parameters);
+			parameters.add(toTokenValueParameter(token));
+			return findBy(this.tokenValueDigestEnabled ?
+					REFRESH_TOKEN_DIGEST_FILTER : REFRESH_TOKEN_FILTER, parameters);
 		}
 		return null;
 	}
 
+	@Nullable
+	private static OAuth2TokenType resolveTokenType(String token) {
+		int firstDot = token.indexOf('.');
+		int secondDot = firstDot != -1 ? token.indexOf('.', firstDot + 1) : -1;
+		if (secondDot != -1 && token.indexOf('.', secondDot + 1) == -1) {
+			// JWS Compact Serialization (JWT access token)
+			return OAuth2TokenType.ACCESS_TOKEN;
+		}
+		if (firstDot != -1) {
+			return null;
+		}
+		if (token.endsWith("=")) {
+			// Padded Base64 (state)
+			return STATE_TOKEN_TYPE;
+		}
+		if (token.length() == REFERENCE_ACCESS_TOKEN_LENGTH) {
+			// Unpadded Base64url of a 32-byte key (reference access token)
+			return OAuth2TokenType.ACCESS_TOKEN;
+		}
+		// Unpadded Base64url of a 96-byte key (authorization code or refresh token),
+		// refresh tokens are far more likely to be introspected or revoked
+		return OAuth2TokenType.REFRESH_TOKEN;
+	}
+
+	private SqlParameterValue toTokenValueParameter(String token) {
+		return this.tokenValueDigestEnabled ?
+				new SqlParameterValue(Types.VARCHAR, digest(token)) :
+				new SqlParameterValue(Types.BLOB, token.getBytes(StandardCharsets.UTF_8));
+	}
+
 	private OAuth2Authorization findBy(String filter, List<SqlParameterValue> parameters) {
-		PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(parameters.toArray());
-		List<OAuth2Authorization> result = this.jdbcOperations.query(LOAD_AUTHORIZATION_SQL + filter, pss, this.authorizationRowMapper);
+		return findBy(LOAD_AUTHORIZATION_SQL, filter, parameters);
+	}
+
+	private OAuth2Authorization findBy(String selectSql, String filter, List<SqlParameterValue> parameters) {
+		List<OAuth2Authorization> result = findAllBy(selectSql, filter, parameters, this.authorizationRowMapper);
 		return !result.isEmpty() ? result.get(0) : null;
 	}
 
+	private List<OAuth2Authorization> findAllBy(String selectSql, String filter, List<SqlParameterValue> parameters,
+			RowMapper<OAuth2Authorization> rowMapper) {
+		PreparedStatementSetter pss = new ArgumentPreparedStatementSetter(parameters.toArray());
+		return this.jdbcOperations.query(versionedSelectSql(selectSql) + filter, pss, loadedRowMapper(rowMapper));
+	}
+
+	private String versionedSelectSql(String selectSql) {
+		if (!this.optimisticLockingEnabled) {
+			return selectSql;
+		}
+		return "SELECT " + VERSION_COLUMN_NAME + ", " + selectSql.substring("SELECT ".length());
+	}
+
+	/**
+	 * Returns a {@code RowMapper} marking the mapped authorization as loaded by this service,
+	 * even when mapped by a custom {@link #setAuthorizationRowMapper(RowMapper) row mapper}.
+	 */
+	private RowMapper<OAuth2Authorization> loadedRowMapper(RowMapper<OAuth2Authorization> rowMapper) {
+		return (rs, rowNum) -> {
+			OAuth2Authorization authorization = rowMapper.mapRow(rs, rowNum);
+			if (authorization == null) {
+				return null;
+			}
+			authorization = authorization.persisted();
+			return this.optimisticLockingEnabled ? authorization.withVersion(rs.getLong(VERSION_COLUMN_NAME)) : authorization;
+		};
+	}
+
 	/**
 	 * Sets the {@link RowMapper} used for mapping the current row in
 	 * {@code java.sql.ResultSet} to {@link OAuth2Authorization}. The default is
@@ -284,6 +1077,160 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 		this.authorizationParametersMapper = authorizationParametersMapper;
 	}
 
+	/**
+	 * Sets whether a SHA-256 digest of the authorization code, access token and refresh token values
+	 * is stored in (indexed) fixed-length columns and used for lookups in {@link #findByToken(String, OAuth2TokenType)},
+	 * rather than comparing against the token value columns. The default is {@code false}.
+	 *
+	 * <p>
+	 * <b>NOTE:</b> When enabled, the digest columns of existing rows MUST be populated,
+	 * otherwise their tokens will not be found.
+	 *
+	 * @param tokenValueDigestEnabled {@code true} to store and lookup tokens by the digest of their value
+	 */
+	public final void setTokenValueDigestEnabled(boolean tokenValueDigestEnabled) {
+		this.tokenValueDigestEnabled = tokenValueDigestEnabled;
+		initSaveAuthorizationSql();
+	}
+
+	/**
+	 * Sets whether the instant after which the authorization is no longer usable is stored in
+	 * an (indexed) {@code expires_at} column, which is the latest expiry of its tokens or {@code null}
+	 * if a token never expires. For an authorization awaiting consent, which has no tokens,
+	 * the column holds the time it was saved. The default is {@code false}.
+	 *
+	 * <p>
+	 * The column is used by {@link JdbcOAuth2AuthorizationPurger} to purge expired and abandoned authorizations.
+	 *
+	 * <p>
+	 * <b>NOTE:</b> When enabled, the column of existing rows MUST be populated, otherwise they will never be purged.
+	 * The {@code UPDATE} statements of
+	 * "classpath:org/springframework/security/oauth2/server/authorization/oauth2-authorization-expires-at-schema.sql"
+	 * populate it from the expiry columns of the tokens when the column is added.
+	 *
+	 * @param expiresAtEnabled {@code true} to store the expiry of the authorization
+	 * @since 0.2.0
+	 */
+	public final void setExpiresAtEnabled(boolean expiresAtEnabled) {
+		this.expiresAtEnabled = expiresAtEnabled;
+		initSaveAuthorizationSql();
+	}
+
+	/**
+	 * Sets whether optimistic locking is used, where a {@code version} column is incremented on every update
+	 * and an authorization loaded by this service is only updated if the stored version is unchanged since.
+	 * Otherwise, an {@link OAuth2AuthorizationConflictException} is thrown, for example, when concurrent requests
+	 * attempt to use the same refresh token, rather than the last update silently overwriting the others.
+	 * The default is {@code false}.
+	 *
+	 * <p>
+	 * An authorization that was not loaded by this service (or was loaded with a {@code version} of {@code 0},
+	 * such as an existing row when the column was added) is updated unconditionally.
+	 * The saved authorization is not modified, so an authorization to be updated again is loaded again first.
+	 *
+	 * @param optimisticLockingEnabled {@code true} to use optimistic locking when updating authorizations
+	 * @since 0.2.0
+	 */
+	public final void setOptimisticLockingEnabled(boolean optimisticLockingEnabled) {
+		this.optimisticLockingEnabled = optimisticLockingEnabled;
+		initSaveAuthorizationSql();
+	}
+
+	/**
+	 * Sets whether the instant the authorization code is consumed is stored in an
+	 * {@code authorization_code_consumed_at} column, which is used by {@link #consumeAuthorizationCode(String)}
+	 * to consume the authorization code using a single conditional {@code UPDATE}. The default is {@code false}.
+	 *
+	 * @param authorizationCodeConsumedAtEnabled {@code true} to store the instant the authorization code is consumed
+	 * @since 0.2.0
+	 */
+	public final void setAuthorizationCodeConsumedAtEnabled(boolean authorizationCodeConsumedAtEnabled) {
+		this.authorizationCodeConsumedAtEnabled = authorizationCodeConsumedAtEnabled;
+	}
+
+	/**
+	 * Sets the maximum number of authorizations written per batched statement by
+	 * {@link #saveAll(Collection)} and {@link #removeAll(Collection)}. The default is {@code 100}.
+	 *
+	 * @param batchSize the maximum number of authorizations written per batched statement
+	 * @since 0.2.0
+	 */
+	public final void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of authorizations loaded per query by {@link #findAll(OAuth2AuthorizationQuery)},
+	 * which is also used as the JDBC fetch size. The default is {@code 100}.
+	 *
+	 * @param pageSize the maximum number of authorizations loaded per query
+	 * @since 0.2.0
+	 */
+	public final void setPageSize(int pageSize) {
+		Assert.isTrue(pageSize > 0, "pageSize must be greater than 0");
+		this.pageSize = pageSize;
+	}
+
+	private void initSaveAuthorizationSql() {
+		List<String> columnNames = new ArrayList<>();
+		if (this.tokenValueDigestEnabled) {
+			columnNames.addAll(Arrays.asList(TOKEN_VALUE_DIGEST_COLUMN_NAMES));
+		}
+		if (this.expiresAtEnabled) {
+			columnNames.add(EXPIRES_AT_COLUMN_NAME);
+		}
+		if (columnNames.isEmpty() && !this.optimisticLockingEnabled) {
+			this.saveAuthorizationSql = SAVE_AUTHORIZATION_SQL;
+			this.updateAuthorizationSql = UPDATE_AUTHORIZATION_SQL;
+			this.versionedUpdateAuthorizationSql = null;
+			return;
+		}
+		// @formatter:off
+		this.saveAuthorizationSql = "INSERT INTO " + TABLE_NAME
+				+ " (" + COLUMN_NAMES + StringUtils.collectionToDelimitedString(columnNames, "", ", ", "")
+				+ (this.optimisticLockingEnabled ? ", " + VERSION_COLUMN_NAME : "")
+				+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?"
+				+ StringUtils.collectionToDelimitedString(columnNames, "", ", ?", "")
+				+ (this.optimisticLockingEnabled ? ", 1" : "") + ")";
+		this.updateAuthorizationSql = UPDATE_AUTHORIZATION_SET
+				+ StringUtils.collectionToDelimitedString(columnNames, "", ", ", " = ?")
+				+ (this.optimisticLockingEnabled ? ", " + VERSION_COLUMN_NAME + " = " + VERSION_COLUMN_NAME + " + 1" : "")
+				+ " WHERE " + PK_FILTER;
+		this.versionedUpdateAuthorizationSql = this.optimisticLockingEnabled ?
+				this.updateAuthorizationSql + " AND " + VERSION_COLUMN_NAME + " = ?" :
+				null;
+		// @formatter:on
+	}
+
+	/**
+	 * Sets the {@code Function} used for resolving the most likely {@link OAuth2TokenType token type} of a token
+	 * when {@link #findByToken(String, OAuth2TokenType)} is called without a token type.
+	 * The column of the resolved token type is queried first, before falling back to querying all token columns.
+	 * The {@code Function} may return {@code null} if the token type cannot be resolved.
+	 *
+	 * <p>
+	 * The default resolves a JWT-shaped token, or an unpadded Base64url value of a 32-byte key,
+	 * as an {@link OAuth2TokenType#ACCESS_TOKEN access token}, a padded Base64 value as a {@code state}
+	 * and any other value as a {@link OAuth2TokenType#REFRESH_TOKEN refresh token}.
+	 *
+	 * @param tokenTypeResolver the {@code Function} used for resolving the most likely token type of a token
+	 */
+	public final void setTokenTypeResolver(Function<String, OAuth2TokenType> tokenTypeResolver) {
+		Assert.notNull(tokenTypeResolver, "tokenTypeResolver cannot be null");
+		this.tokenTypeResolver = tokenTypeResolver;
+	}
+
+	/**
+	 * Returns the statistics of the token type probes performed by {@link #findByToken(String, OAuth2TokenType)}
+	 * when called without a token type.
+	 *
+	 * @return the {@link TokenTypeProbeStatistics}
+	 */
+	public final TokenTypeProbeStatistics getTokenTypeProbeStatistics() {
+		return this.tokenTypeProbeStatistics;
+	}
+
 	protected final JdbcOperations getJdbcOperations() {
 		return this.jdbcOperations;
 	}
@@ -300,6 +1247,63 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 		return this.authorizationParametersMapper;
 	}
 
+	/**
+	 * The statistics of the token type probes performed by {@link #findByToken(String, OAuth2TokenType)}
+	 * when called without a token type, used for measuring the accuracy of the
+	 * {@link #setTokenTypeResolver(Function) token type resolver}.
+	 */
+	public static final class TokenTypeProbeStatistics {
+		private final Map<OAuth2TokenType, LongAdder> probes = new ConcurrentHashMap<>();
+		private final Map<OAuth2TokenType, LongAdder> hits = new ConcurrentHashMap<>();
+
+		private TokenTypeProbeStatistics() {
+		}
+
+		private void record(OAuth2TokenType tokenType, boolean hit) {
+			this.probes.computeIfAbsent(tokenType, (key) -> new LongAdder()).increment();
+			if (hit) {
+				this.hits.computeIfAbsent(tokenType, (key) -> new LongAdder()).increment();
+			}
+		}
+
+		/**
+		 * Returns the number of probes performed for the {@link OAuth2TokenType token type}.
+		 *
+		 * @param tokenType the token type
+		 * @return the number of probes performed for the token type
+		 */
+		public long getProbeCount(OAuth2TokenType tokenType) {
+			Assert.notNull(tokenType, "tokenType cannot be null");
+			LongAdder probes = this.probes.get(tokenType);
+			return probes != null ? probes.sum() : 0;
+		}
+
+		/**
+		 * Returns the number of probes for the {@link OAuth2TokenType token type} that found the token.
+		 *
+		 * @param tokenType the token type
+		 * @return the number of probes for the token type that found the token
+		 */
+		public long getHitCount(OAuth2TokenType tokenType) {
+			Assert.notNull(tokenType, "tokenType cannot be null");
+			LongAdder hits = this.hits.get(tokenType);
+			return hits != null ? hits.sum() : 0;
+		}
+
+		/**
+		 * Returns the ratio of probes for the {@link OAuth2TokenType token type} that found the token,
+		 * or {@code 0} if no probes were performed.
+		 *
+		 * @param tokenType the token type
+		 * @return the ratio of probes for the token type that found the token
+		 */
+		public double getHitRate(OAuth2TokenType tokenType) {
+			long probeCount = getProbeCount(tokenType);
+			return probeCount > 0 ? (double) getHitCount(tokenType) / probeCount : 0;
+		}
+
+	}
+
 	/**
 	 * The default {@link RowMapper} that maps the current row in
 	 * {@code java.sql.ResultSet} to {@link OAuth2Authorization}.
@@ -308,6 +1312,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 		private final RegisteredClientRepository registeredClientRepository;
 		private LobHandler lobHandler = new DefaultLobHandler();
 		private ObjectMapper objectMapper = new ObjectMapper();
+		private AttributesCodec attributesCodec;
 
 		public OAuth2AuthorizationRowMapper(RegisteredClientRepository registeredClientRepository) {
 			Assert.notNull(registeredClientRepository, "registeredClientRepository cannot be null");
@@ -333,12 +1338,13 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			String id = rs.getString("id");
 			String principalName = rs.getString("principal_name");
 			String authorizationGrantType = rs.getString("authorization_grant_type");
-			Map<String, Object> attributes = parseMap(rs.getString("attributes"));
+			String attributes = rs.getString("attributes");
 
+			// The attributes and token metadata are parsed on first access
 			builder.id(id)
 					.principalName(principalName)
 					.authorizationGrantType(new AuthorizationGrantType(authorizationGrantType))
-					.attributes((attrs) -> attrs.putAll(attributes));
+					.attributes(() -> parseMap(attributes));
 
 			String state = rs.getString("state");
 			if (StringUtils.hasText(state)) {
@@ -354,11 +1360,11 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 				tokenValue = new String(authorizationCodeValue, StandardCharsets.UTF_8);
 				tokenIssuedAt = rs.getTimestamp("authorization_code_issued_at").toInstant();
 				tokenExpiresAt = rs.getTimestamp("authorization_code_expires_at").toInstant();
-				Map<String, Object> authorizationCodeMetadata = parseMap(rs.getString("authorization_code_metadata"));
+				String authorizationCodeMetadata = rs.getString("authorization_code_metadata");
 
 				OAuth2AuthorizationCode authorizationCode = new OAuth2AuthorizationCode(
 						tokenValue, tokenIssuedAt, tokenExpiresAt);
-				builder.token(authorizationCode, (metadata) -> metadata.putAll(authorizationCodeMetadata));
+				builder.token(authorizationCode, () -> parseMap(authorizationCodeMetadata));
 			}
 
 			byte[] accessTokenValue = this.lobHandler.getBlobAsBytes(rs, "access_token_value");
@@ -366,7 +1372,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 				tokenValue = new String(accessTokenValue, StandardCharsets.UTF_8);
 				tokenIssuedAt = rs.getTimestamp("access_token_issued_at").toInstant();
 				tokenExpiresAt = rs.getTimestamp("access_token_expires_at").toInstant();
-				Map<String, Object> accessTokenMetadata = parseMap(rs.getString("access_token_metadata"));
+				String accessTokenMetadata = rs.getString("access_token_metadata");
 				OAuth2AccessToken.TokenType tokenType = null;
 				if (OAuth2AccessToken.TokenType.BEARER.getValue().equalsIgnoreCase(rs.getString("access_token_type"))) {
 					tokenType = OAuth2AccessToken.TokenType.BEARER;
@@ -378,7 +1384,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 					scopes = StringUtils.commaDelimitedListToSet(accessTokenScopes);
 				}
 				OAuth2AccessToken accessToken = new OAuth2AccessToken(tokenType, tokenValue, tokenIssuedAt, tokenExpiresAt, scopes);
-				builder.token(accessToken, (metadata) -> metadata.putAll(accessTokenMetadata));
+				builder.token(accessToken, () -> parseMap(accessTokenMetadata));
 			}
 
 			byte[] oidcIdTokenValue = this.lobHandler.getBlobAsBytes(rs, "oidc_id_token_value");
@@ -402,13 +1408,13 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 				if (refreshTokenExpiresAt != null) {
 					tokenExpiresAt = refreshTokenExpiresAt.toInstant();
 				}
-				Map<String, Object> refreshTokenMetadata = parseMap(rs.getString("refresh_token_metadata"));
+				String refreshTokenMetadata = rs.getString("refresh_token_metadata");
 
 				OAuth2RefreshToken refreshToken = new OAuth2RefreshToken(
 						tokenValue, tokenIssuedAt, tokenExpiresAt);
-				builder.token(refreshToken, (metadata) -> metadata.putAll(refreshTokenMetadata));
+				builder.token(refreshToken, () -> parseMap(refreshTokenMetadata));
 			}
-			return builder.build();
+			return builder.persisted().build();
 		}
 
 		public final void setLobHandler(LobHandler lobHandler) {
@@ -421,6 +1427,18 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			this.objectMapper = objectMapper;
 		}
 
+		/**
+		 * Sets the {@link AttributesCodec} used to decode the attributes and token metadata.
+		 * When not set, the {@link #setObjectMapper(ObjectMapper) ObjectMapper} is used.
+		 *
+		 * @param attributesCodec the {@link AttributesCodec}
+		 * @since 0.2.0
+		 */
+		public final void setAttributesCodec(AttributesCodec attributesCodec) {
+			Assert.notNull(attributesCodec, "attributesCodec cannot be null");
+			this.attributesCodec = attributesCodec;
+		}
+
 		protected final RegisteredClientRepository getRegisteredClientRepository() {
 			return this.registeredClientRepository;
 		}
@@ -433,7 +1451,14 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			return this.objectMapper;
 		}
 
+		protected final AttributesCodec getAttributesCodec() {
+			return this.attributesCodec;
+		}
+
 		private Map<String, Object> parseMap(String data) {
+			if (this.attributesCodec != null) {
+				return this.attributesCodec.decode(data);
+			}
 			try {
 				return this.objectMapper.readValue(data, new TypeReference<Map<String, Object>>() {});
 			} catch (Exception ex) {
@@ -449,6 +1474,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 	 */
 	public static class OAuth2AuthorizationParametersMapper implements Function<OAuth2Authorization, List<SqlParameterValue>> {
 		private ObjectMapper objectMapper = new ObjectMapper();
+		private AttributesCodec attributesCodec;
 
 		public OAuth2AuthorizationParametersMapper() {
 			ClassLoader classLoader = JdbcOAuth2AuthorizationService.class.getClassLoader();
@@ -467,13 +1493,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 
 			String attributes = writeMap(authorization.getAttributes());
 			parameters.add(new SqlParameterValue(Types.VARCHAR, attributes));
-
-			String state = null;
-			String authorizationState = authorization.getAttribute(OAuth2ParameterNames.STATE);
-			if (StringUtils.hasText(authorizationState)) {
-				state = authorizationState;
-			}
-			parameters.add(new SqlParameterValue(Types.VARCHAR, state));
+			parameters.add(toStateParameter(authorization));
 
 			OAuth2Authorization.Token<OAuth2AuthorizationCode> authorizationCode =
 					authorization.getToken(OAuth2AuthorizationCode.class);
@@ -484,16 +1504,7 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 					authorization.getToken(OAuth2AccessToken.class);
 			List<SqlParameterValue> accessTokenSqlParameters = toSqlParameterList(accessToken);
 			parameters.addAll(accessTokenSqlParameters);
-			String accessTokenType = null;
-			String accessTokenScopes = null;
-			if (accessToken != null) {
-				accessTokenType = accessToken.getToken().getTokenType().getValue();
-				if (!CollectionUtils.isEmpty(accessToken.getToken().getScopes())) {
-					accessTokenScopes = StringUtils.collectionToDelimitedString(accessToken.getToken().getScopes(), ",");
-				}
-			}
-			parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenType));
-			parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenScopes));
+			parameters.addAll(toAccessTokenTypeAndScopesParameters(accessToken));
 
 			OAuth2Authorization.Token<OidcIdToken> oidcIdToken = authorization.getToken(OidcIdToken.class);
 			List<SqlParameterValue> oidcIdTokenSqlParameters = toSqlParameterList(oidcIdToken);
@@ -510,11 +1521,52 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			this.objectMapper = objectMapper;
 		}
 
+		/**
+		 * Sets the {@link AttributesCodec} used to encode the attributes and token metadata.
+		 * When not set, the {@link #setObjectMapper(ObjectMapper) ObjectMapper} is used.
+		 *
+		 * @param attributesCodec the {@link AttributesCodec}
+		 * @since 0.2.0
+		 */
+		public final void setAttributesCodec(AttributesCodec attributesCodec) {
+			Assert.notNull(attributesCodec, "attributesCodec cannot be null");
+			this.attributesCodec = attributesCodec;
+		}
+
 		protected final ObjectMapper getObjectMapper() {
 			return this.objectMapper;
 		}
 
-		private <T extends AbstractOAuth2Token> List<SqlParameterValue> toSqlParameterList(OAuth2Authorization.Token<T> token) {
+		protected final AttributesCodec getAttributesCodec() {
+			return this.attributesCodec;
+		}
+
+		static SqlParameterValue toStateParameter(OAuth2Authorization authorization) {
+			String state = null;
+			String authorizationState = authorization.getAttribute(OAuth2ParameterNames.STATE);
+			if (StringUtils.hasText(authorizationState)) {
+				state = authorizationState;
+			}
+			return new SqlParameterValue(Types.VARCHAR, state);
+		}
+
+		static List<SqlParameterValue> toAccessTokenTypeAndScopesParameters(
+				@Nullable OAuth2Authorization.Token<OAuth2AccessToken> accessToken) {
+			String accessTokenType = null;
+			String accessTokenScopes = null;
+			if (accessToken != null) {
+				accessTokenType = accessToken.getToken().getTokenType().getValue();
+				if (!CollectionUtils.isEmpty(accessToken.getToken().getScopes())) {
+					accessTokenScopes = StringUtils.collectionToDelimitedString(accessToken.getToken().getScopes(), ",");
+				}
+			}
+			List<SqlParameterValue> parameters = new ArrayList<>();
+			parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenType));
+			parameters.add(new SqlParameterValue(Types.VARCHAR, accessTokenScopes));
+			return parameters;
+		}
+
+		<T extends AbstractOAuth2Token> List<SqlParameterValue> toSqlParameterList(@Nullable OAuth2Authorization.Token<T> token) {
 			List<SqlParameterValue> parameters = new ArrayList<>();
 			byte[] tokenValue = null;
 			Timestamp tokenIssuedAt = null;
@@ -537,7 +1589,10 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 			return parameters;
 		}
 
-		private String writeMap(Map<String, Object> data) {
+		String writeMap(Map<String, Object> data) {
+			if (this.attributesCodec != null) {
+				return this.attributesCodec.encode(data);
+			}
 			try {
 				return this.objectMapper.writeValueAsString(data);
 			} catch (Exception ex) {
@@ -547,10 +1602,10 @@ public class JdbcOAuth2AuthorizationService implements OAuth2AuthorizationServic
 
 	}
 
-	private static final class LobCreatorArgumentPreparedStatementSetter extends ArgumentPreparedStatementSetter {
+	static final class LobCreatorArgumentPreparedStatementSetter extends ArgumentPreparedStatementSetter {
 		private final LobCreator lobCreator;
 
-		private LobCreatorArgumentPreparedStatementSetter(LobCreator lobCreator, Object[] args) {
+		LobCreatorArgumentPreparedStatementSetter(LobCreator lobCreator, Object[] args) {
 			super(args);
 			this.lobCreator = lobCreator;
 		}
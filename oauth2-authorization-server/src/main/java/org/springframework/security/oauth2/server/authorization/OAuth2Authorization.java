@@ -15,14 +15,20 @@
  */
 package org.springframework.security.oauth2.server.authorization;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.springframework.lang.Nullable;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
@@ -65,6 +71,8 @@ public class OAuth2Authorization implements Serializable {
 	private AuthorizationGrantType authorizationGrantType;
 	private Map<Class<? extends OAuth2Token>, Token<?>> tokens;
 	private Map<String, Object> attributes;
+	private transient Changes changes;
+	private long version;
 
 	protected OAuth2Authorization() {
 	}
@@ -180,6 +188,98 @@ public class OAuth2Authorization implements Serializable {
 		return (T) this.attributes.get(name);
 	}
 
+	/**
+	 * Returns the {@link Changes} relative to the persisted state of the authorization, which is tracked
+	 * when it is loaded by an {@link OAuth2AuthorizationService} and derived using {@link #from(OAuth2Authorization)}.
+	 *
+	 * @return the {@link Changes}, or {@code null} if the persisted state is unknown
+	 */
+	@Nullable
+	Changes getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * Returns the version of the stored authorization this authorization was loaded or derived from,
+	 * which is used for optimistic concurrency control, or {@code 0} if unknown.
+	 *
+	 * @return the version of the stored authorization, or {@code 0} if unknown
+	 */
+	long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns a copy of this authorization with the provided version of the stored authorization,
+	 * or this authorization if the version is the same. This authorization is not modified,
+	 * as it may be referenced by the caller of an {@link OAuth2AuthorizationService}.
+	 *
+	 * @param version the version of the stored authorization
+	 * @return the authorization with the provided version
+	 */
+	OAuth2Authorization withVersion(long version) {
+		if (this.version == version) {
+			return this;
+		}
+		return copy(this.changes, version);
+	}
+
+	/**
+	 * Returns this authorization if its {@link Changes} are tracked, otherwise a copy of this authorization
+	 * matching its persisted state, which is the baseline for tracking {@link Changes}, for example,
+	 * when it was loaded by an {@link OAuth2AuthorizationService} using a custom mapping.
+	 *
+	 * @return the authorization matching its persisted state
+	 */
+	OAuth2Authorization persisted() {
+		if (this.changes != null) {
+			return this;
+		}
+		return copy(Changes.NONE, this.version);
+	}
+
+	/**
+	 * Returns a copy of this authorization which is unrelated to a stored authorization, that is,
+	 * without a version or {@link Changes}, for example, when imported into another {@link OAuth2AuthorizationService}.
+	 *
+	 * @return the authorization unrelated to a stored authorization
+	 */
+	OAuth2Authorization detach() {
+		return copy(null, 0);
+	}
+
+	private OAuth2Authorization copy(@Nullable Changes changes, long version) {
+		OAuth2Authorization authorization = new OAuth2Authorization();
+		authorization.id = this.id;
+		authorization.registeredClientId = this.registeredClientId;
+		authorization.principalName = this.principalName;
+		authorization.authorizationGrantType = this.authorizationGrantType;
+		authorization.tokens = this.tokens;
+		authorization.attributes = this.attributes;
+		authorization.changes = changes;
+		authorization.version = version;
+		return authorization;
+	}
+
+	/**
+	 * Returns an authorization derived from this authorization with all of its tokens invalidated,
+	 * or this authorization if all of its tokens are already invalidated.
+	 *
+	 * @return the authorization with all of its tokens invalidated
+	 */
+	OAuth2Authorization invalidateTokens() {
+		Builder builder = null;
+		for (Token<?> token : this.tokens.values()) {
+			if (!token.isInvalidated()) {
+				if (builder == null) {
+					builder = from(this);
+				}
+				builder.token(token.getToken(), (metadata) -> metadata.put(Token.INVALIDATED_METADATA_NAME, true));
+			}
+		}
+		return builder != null ? builder.build() : this;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
@@ -222,12 +322,16 @@ public class OAuth2Authorization implements Serializable {
 	 */
 	public static Builder from(OAuth2Authorization authorization) {
 		Assert.notNull(authorization, "authorization cannot be null");
-		return new Builder(authorization.getRegisteredClientId())
+		Builder builder = new Builder(authorization.getRegisteredClientId())
 				.id(authorization.getId())
 				.principalName(authorization.getPrincipalName())
 				.authorizationGrantType(authorization.getAuthorizationGrantType())
-				.tokens(authorization.tokens)
-				.attributes(attrs -> attrs.putAll(authorization.getAttributes()));
+				.tokens(authorization.tokens);
+		// The attributes are carried over without being resolved, as they may be parsed lazily
+		builder.sourceAttributes = authorization.attributes;
+		builder.source = authorization;
+		builder.version = authorization.version;
+		return builder;
 	}
 
 	/**
@@ -262,6 +366,11 @@ public class OAuth2Authorization implements Serializable {
 			this.metadata = Collections.unmodifiableMap(metadata);
 		}
 
+		Token(T token, Supplier<Map<String, Object>> metadataSupplier) {
+			this.token = token;
+			this.metadata = new LazyMap(metadataSupplier);
+		}
+
 		/**
 		 * Returns the token of type {@link OAuth2Token}.
 		 *
@@ -381,6 +490,11 @@ public class OAuth2Authorization implements Serializable {
 		private AuthorizationGrantType authorizationGrantType;
 		private Map<Class<? extends OAuth2Token>, Token<?>> tokens = new HashMap<>();
 		private final Map<String, Object> attributes = new HashMap<>();
+		private transient Supplier<Map<String, Object>> attributesSupplier;
+		private transient Map<String, Object> sourceAttributes;
+		private transient OAuth2Authorization source;
+		private transient boolean persisted;
+		private long version;
 
 		protected Builder(String registeredClientId) {
 			this.registeredClientId = registeredClientId;
@@ -473,6 +587,26 @@ public class OAuth2Authorization implements Serializable {
 			return this;
 		}
 
+		/**
+		 * Sets the {@link OAuth2Token token} and associated metadata,
+		 * which is resolved from the {@code Supplier} on first access.
+		 */
+		<T extends OAuth2Token> Builder token(T token, Supplier<Map<String, Object>> metadataSupplier) {
+			Assert.notNull(token, "token cannot be null");
+			Assert.notNull(metadataSupplier, "metadataSupplier cannot be null");
+			Token<?> existingToken = this.tokens.get(token.getClass());
+			Map<String, Object> existingMetadata = existingToken != null ? existingToken.getMetadata() : null;
+			this.tokens.put(token.getClass(), new Token<>(token, () -> {
+				Map<String, Object> metadata = Token.defaultMetadata();
+				if (existingMetadata != null) {
+					metadata.putAll(existingMetadata);
+				}
+				metadata.putAll(metadataSupplier.get());
+				return metadata;
+			}));
+			return this;
+		}
+
 		protected final Builder tokens(Map<Class<? extends OAuth2Token>, Token<?>> tokens) {
 			this.tokens = new HashMap<>(tokens);
 			return this;
@@ -500,10 +634,30 @@ public class OAuth2Authorization implements Serializable {
 		 * @return the {@link Builder}
 		 */
 		public Builder attributes(Consumer<Map<String, Object>> attributesConsumer) {
+			resolveAttributes();
 			attributesConsumer.accept(this.attributes);
 			return this;
 		}
 
+		/**
+		 * Sets the attribute(s) which are resolved from the {@code Supplier} on first access.
+		 * An attribute {@link #attribute(String, Object) added} to the builder takes precedence.
+		 */
+		Builder attributes(Supplier<Map<String, Object>> attributesSupplier) {
+			Assert.notNull(attributesSupplier, "attributesSupplier cannot be null");
+			this.attributesSupplier = attributesSupplier;
+			this.sourceAttributes = null;
+			return this;
+		}
+
+		/**
+		 * Marks the authorization as matching its persisted state, which is the baseline for tracking {@link Changes}.
+		 */
+		Builder persisted() {
+			this.persisted = true;
+			return this;
+		}
+
 		/**
 		 * Builds a new {@link OAuth2Authorization}.
 		 *
@@ -522,8 +676,182 @@ public class OAuth2Authorization implements Serializable {
 			authorization.principalName = this.principalName;
 			authorization.authorizationGrantType = this.authorizationGrantType;
 			authorization.tokens = Collections.unmodifiableMap(this.tokens);
-			authorization.attributes = Collections.unmodifiableMap(this.attributes);
+			if (this.sourceAttributes != null) {
+				Map<String, Object> sourceAttributes = this.sourceAttributes;
+				Map<String, Object> attributes = new HashMap<>(this.attributes);
+				authorization.attributes = attributes.isEmpty() ? sourceAttributes : new LazyMap(() -> {
+					Map<String, Object> resolvedAttributes = new HashMap<>(sourceAttributes);
+					resolvedAttributes.putAll(attributes);
+					return resolvedAttributes;
+				});
+			} else if (this.attributesSupplier != null) {
+				Supplier<Map<String, Object>> attributesSupplier = this.attributesSupplier;
+				Map<String, Object> attributes = new HashMap<>(this.attributes);
+				authorization.attributes = new LazyMap(() -> {
+					Map<String, Object> resolvedAttributes = new HashMap<>(attributesSupplier.get());
+					resolvedAttributes.putAll(attributes);
+					return resolvedAttributes;
+				});
+			} else {
+				authorization.attributes = Collections.unmodifiableMap(this.attributes);
+			}
+			authorization.changes = changes(authorization);
+			authorization.version = this.version;
 			return authorization;
 		}
+
+		@Nullable
+		private Changes changes(OAuth2Authorization authorization) {
+			if (this.persisted) {
+				return Changes.NONE;
+			}
+			OAuth2Authorization source = this.source;
+			if (source == null || source.changes == null ||
+					!Objects.equals(source.id, authorization.id) ||
+					!Objects.equals(source.registeredClientId, authorization.registeredClientId) ||
+					!Objects.equals(source.principalName, authorization.principalName) ||
+					!Objects.equals(source.authorizationGrantType, authorization.authorizationGrantType)) {
+				return null;
+			}
+			// Tokens are compared by identity, as an unchanged token is carried over from the source
+			Set<Class<? extends OAuth2Token>> tokenTypes = new HashSet<>(source.changes.tokenTypes);
+			for (Class<? extends OAuth2Token> tokenType : source.tokens.keySet()) {
+				if (source.tokens.get(tokenType) != authorization.tokens.get(tokenType)) {
+					tokenTypes.add(tokenType);
+				}
+			}
+			for (Class<? extends OAuth2Token> tokenType : authorization.tokens.keySet()) {
+				if (source.tokens.get(tokenType) != authorization.tokens.get(tokenType)) {
+					tokenTypes.add(tokenType);
+				}
+			}
+			boolean attributesChanged = source.changes.attributesChanged;
+			if (!attributesChanged && source.attributes != authorization.attributes) {
+				// Attributes added to the attributes carried over from the source are assumed to change them,
+				// rather than resolving the attributes for comparison
+				attributesChanged = this.sourceAttributes == source.attributes ||
+						!source.attributes.equals(authorization.attributes);
+			}
+			return new Changes(attributesChanged, tokenTypes);
+		}
+
+		/**
+		 * Merges the attributes which are not yet resolved into the attributes of the builder.
+		 */
+		private void resolveAttributes() {
+			Map<String, Object> resolvedAttributes = null;
+			if (this.sourceAttributes != null) {
+				resolvedAttributes = new HashMap<>(this.sourceAttributes);
+			} else if (this.attributesSupplier != null) {
+				resolvedAttributes = new HashMap<>(this.attributesSupplier.get());
+			}
+			if (resolvedAttributes != null) {
+				resolvedAttributes.putAll(this.attributes);
+				this.attributes.clear();
+				this.attributes.putAll(resolvedAttributes);
+				this.sourceAttributes = null;
+				this.attributesSupplier = null;
+			}
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			resolveAttributes();
+			out.defaultWriteObject();
+		}
+	}
+
+	/**
+	 * The changes of an {@link OAuth2Authorization} relative to its persisted state,
+	 * allowing an {@link OAuth2AuthorizationService} to write only what changed.
+	 */
+	static final class Changes {
+		private static final Changes NONE = new Changes(false, Collections.emptySet());
+		private final boolean attributesChanged;
+		private final Set<Class<? extends OAuth2Token>> tokenTypes;
+
+		private Changes(boolean attributesChanged, Set<Class<? extends OAuth2Token>> tokenTypes) {
+			this.attributesChanged = attributesChanged;
+			this.tokenTypes = Collections.unmodifiableSet(tokenTypes);
+		}
+
+		/**
+		 * Returns {@code true} if the attributes changed.
+		 *
+		 * @return {@code true} if the attributes changed
+		 */
+		boolean isAttributesChanged() {
+			return this.attributesChanged;
+		}
+
+		/**
+		 * Returns the types of the tokens that were added, replaced or removed.
+		 *
+		 * @return the types of the tokens that changed
+		 */
+		Set<Class<? extends OAuth2Token>> getTokenTypes() {
+			return this.tokenTypes;
+		}
+
+		/**
+		 * Returns {@code true} if nothing changed.
+		 *
+		 * @return {@code true} if nothing changed
+		 */
+		boolean isEmpty() {
+			return !this.attributesChanged && this.tokenTypes.isEmpty();
+		}
+	}
+
+	/**
+	 * An unmodifiable {@code Map} which is resolved from a {@code Supplier} on first access.
+	 * It is serialized as the resolved {@code Map}.
+	 */
+	private static final class LazyMap extends AbstractMap<String, Object> implements Serializable {
+		private static final long serialVersionUID = Version.SERIAL_VERSION_UID;
+		private transient Supplier<Map<String, Object>> supplier;
+		private volatile Map<String, Object> map;
+
+		private LazyMap(Supplier<Map<String, Object>> supplier) {
+			this.supplier = supplier;
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return resolve().entrySet();
+		}
+
+		@Override
+		public Object get(Object key) {
+			return resolve().get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return resolve().containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return resolve().size();
+		}
+
+		private Map<String, Object> resolve() {
+			Map<String, Object> map = this.map;
+			if (map == null) {
+				synchronized (this) {
+					map = this.map;
+					if (map == null) {
+						map = Collections.unmodifiableMap(this.supplier.get());
+						this.map = map;
+						this.supplier = null;
+					}
+				}
+			}
+			return map;
+		}
+
+		private Object writeReplace() {
+			return Collections.unmodifiableMap(new HashMap<>(resolve()));
+		}
 	}
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import org.springframework.util.Assert;
+
+/**
+ * This exception is thrown by an {@link OAuth2AuthorizationService} when an {@link OAuth2Authorization}
+ * cannot be saved because the stored authorization it was derived from has been concurrently modified (or removed).
+ * The caller may retry by loading the current authorization and re-applying its changes.
+ *
+ * @since 0.2.0
+ * @see OAuth2AuthorizationService#save(OAuth2Authorization)
+ */
+public class OAuth2AuthorizationConflictException extends RuntimeException {
+	private final String authorizationId;
+
+	/**
+	 * Constructs an {@code OAuth2AuthorizationConflictException} using the provided parameters.
+	 *
+	 * @param authorizationId the identifier of the authorization that was concurrently modified
+	 */
+	public OAuth2AuthorizationConflictException(String authorizationId) {
+		super("The authorization with id '" + authorizationId + "' was concurrently modified");
+		Assert.hasText(authorizationId, "authorizationId cannot be empty");
+		this.authorizationId = authorizationId;
+	}
+
+	/**
+	 * Returns the identifier of the authorization that was concurrently modified.
+	 *
+	 * @return the identifier of the authorization
+	 */
+	public String getAuthorizationId() {
+		return this.authorizationId;
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.time.Instant;
+
+import org.springframework.lang.Nullable;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.util.Assert;
+
+/**
+ * The criteria used to find {@link OAuth2Authorization}s, for example, when listing or exporting
+ * the authorizations of a principal or a registered client.
+ * Every criterion is optional and an authorization must match all of the provided criteria.
+ *
+ * @since 0.2.0
+ * @see JdbcOAuth2AuthorizationService#findAll(OAuth2AuthorizationQuery)
+ * @see InMemoryOAuth2AuthorizationService#findAll(OAuth2AuthorizationQuery)
+ */
+public final class OAuth2AuthorizationQuery {
+	private final String principalName;
+	private final String registeredClientId;
+	private final Instant expiresAfter;
+	private final Instant expiresBefore;
+
+	private OAuth2AuthorizationQuery(String principalName, String registeredClientId,
+			Instant expiresAfter, Instant expiresBefore) {
+		this.principalName = principalName;
+		this.registeredClientId = registeredClientId;
+		this.expiresAfter = expiresAfter;
+		this.expiresBefore = expiresBefore;
+	}
+
+	/**
+	 * Returns the {@code Principal} name of the resource owner (or client), or {@code null} if any.
+	 *
+	 * @return the {@code Principal} name, or {@code null} if any
+	 */
+	@Nullable
+	public String getPrincipalName() {
+		return this.principalName;
+	}
+
+	/**
+	 * Returns the identifier for the {@link RegisteredClient#getId() registered client}, or {@code null} if any.
+	 *
+	 * @return the {@link RegisteredClient#getId()}, or {@code null} if any
+	 */
+	@Nullable
+	public String getRegisteredClientId() {
+		return this.registeredClientId;
+	}
+
+	/**
+	 * Returns the time after which the authorizations expire, or {@code null} if any.
+	 * Authorizations that never expire are included.
+	 *
+	 * @return the time after which the authorizations expire, or {@code null} if any
+	 */
+	@Nullable
+	public Instant getExpiresAfter() {
+		return this.expiresAfter;
+	}
+
+	/**
+	 * Returns the time before which the authorizations expire, or {@code null} if any.
+	 * Authorizations that never expire are excluded.
+	 *
+	 * @return the time before which the authorizations expire, or {@code null} if any
+	 */
+	@Nullable
+	public Instant getExpiresBefore() {
+		return this.expiresBefore;
+	}
+
+	/**
+	 * Returns a new {@link Builder}.
+	 *
+	 * @return the {@link Builder}
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * A builder for {@link OAuth2AuthorizationQuery}.
+	 */
+	public static final class Builder {
+		private String principalName;
+		private String registeredClientId;
+		private Instant expiresAfter;
+		private Instant expiresBefore;
+
+		private Builder() {
+		}
+
+		/**
+		 * Sets the {@code Principal} name of the resource owner (or client).
+		 *
+		 * @param principalName the {@code Principal} name of the resource owner (or client)
+		 * @return the {@link Builder}
+		 */
+		public Builder principalName(String principalName) {
+			Assert.hasText(principalName, "principalName cannot be empty");
+			this.principalName = principalName;
+			return this;
+		}
+
+		/**
+		 * Sets the identifier for the {@link RegisteredClient#getId() registered client}.
+		 *
+		 * @param registeredClientId the {@link RegisteredClient#getId()}
+		 * @return the {@link Builder}
+		 */
+		public Builder registeredClientId(String registeredClientId) {
+			Assert.hasText(registeredClientId, "registeredClientId cannot be empty");
+			this.registeredClientId = registeredClientId;
+			return this;
+		}
+
+		/**
+		 * Sets the time after which the authorizations expire.
+		 *
+		 * @param expiresAfter the time after which the authorizations expire
+		 * @return the {@link Builder}
+		 */
+		public Builder expiresAfter(Instant expiresAfter) {
+			Assert.notNull(expiresAfter, "expiresAfter cannot be null");
+			this.expiresAfter = expiresAfter;
+			return this;
+		}
+
+		/**
+		 * Sets the time before which the authorizations expire.
+		 *
+		 * @param expiresBefore the time before which the authorizations expire
+		 * @return the {@link Builder}
+		 */
+		public Builder expiresBefore(Instant expiresBefore) {
+			Assert.notNull(expiresBefore, "expiresBefore cannot be null");
+			this.expiresBefore = expiresBefore;
+			return this;
+		}
+
+		/**
+		 * Builds a new {@link OAuth2AuthorizationQuery}.
+		 *
+		 * @return the {@link OAuth2AuthorizationQuery}
+		 */
+		public OAuth2AuthorizationQuery build() {
+			if (this.expiresAfter != null && this.expiresBefore != null) {
+				Assert.isTrue(this.expiresAfter.isBefore(this.expiresBefore), "expiresAfter must be before expiresBefore");
+			}
+			return new OAuth2AuthorizationQuery(this.principalName, this.registeredClientId,
+					this.expiresAfter, this.expiresBefore);
+		}
+
+	}
+
+}
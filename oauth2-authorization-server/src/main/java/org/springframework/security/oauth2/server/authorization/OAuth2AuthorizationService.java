@@ -15,8 +15,12 @@
  */
 package org.springframework.security.oauth2.server.authorization;
 
+import java.util.Collection;
+
 import org.springframework.lang.Nullable;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.util.Assert;
 
 /**
  * Implementations of this interface are responsible for the management
@@ -32,7 +36,13 @@ public interface OAuth2AuthorizationService {
 	/**
 	 * Saves the {@link OAuth2Authorization}.
 	 *
+	 * <p>
+	 * An implementation may detect that the stored authorization, which the provided authorization
+	 * was derived from using {@link OAuth2Authorization#from(OAuth2Authorization)}, has been concurrently modified,
+	 * in which case an {@link OAuth2AuthorizationConflictException} is thrown rather than overwriting the modification.
+	 *
 	 * @param authorization the {@link OAuth2Authorization}
+	 * @throws OAuth2AuthorizationConflictException if the stored authorization was concurrently modified
 	 */
 	void save(OAuth2Authorization authorization);
 
@@ -43,6 +53,43 @@ public interface OAuth2AuthorizationService {
 	 */
 	void remove(OAuth2Authorization authorization);
 
+	/**
+	 * Saves the {@link OAuth2Authorization}s.
+	 *
+	 * <p>
+	 * The default implementation calls {@link #save(OAuth2Authorization)} for each authorization.
+	 * Implementations should override it to save the authorizations in bulk, for example, when importing authorizations.
+	 * The authorizations are not necessarily saved atomically, so the authorizations saved before an
+	 * {@link OAuth2AuthorizationConflictException} is thrown remain saved.
+	 *
+	 * @param authorizations the {@link OAuth2Authorization}s
+	 * @throws OAuth2AuthorizationConflictException if a stored authorization was concurrently modified
+	 * @since 0.2.0
+	 */
+	default void saveAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		for (OAuth2Authorization authorization : authorizations) {
+			save(authorization);
+		}
+	}
+
+	/**
+	 * Removes the {@link OAuth2Authorization}s.
+	 *
+	 * <p>
+	 * The default implementation calls {@link #remove(OAuth2Authorization)} for each authorization.
+	 * Implementations should override it to remove the authorizations in bulk.
+	 *
+	 * @param authorizations the {@link OAuth2Authorization}s
+	 * @since 0.2.0
+	 */
+	default void removeAll(Collection<OAuth2Authorization> authorizations) {
+		Assert.notNull(authorizations, "authorizations cannot be null");
+		for (OAuth2Authorization authorization : authorizations) {
+			remove(authorization);
+		}
+	}
+
 	/**
 	 * Returns the {@link OAuth2Authorization} identified by the provided {@code id},
 	 * or {@code null} if not found.
@@ -64,4 +111,45 @@ public interface OAuth2AuthorizationService {
 	@Nullable
 	OAuth2Authorization findByToken(String token, @Nullable OAuth2TokenType tokenType);
 
+	/**
+	 * Consumes the provided authorization {@code code}, by invalidating it in the stored {@link OAuth2Authorization},
+	 * and returns the authorization containing the (now invalidated) authorization code.
+	 * Returns {@code null} if the authorization code is not found or has already been consumed (invalidated).
+	 *
+	 * <p>
+	 * The default implementation finds the authorization and saves it with the authorization code invalidated.
+	 * It only prevents the authorization code from being consumed more than once by concurrent requests
+	 * if {@link #save(OAuth2Authorization)} throws an {@link OAuth2AuthorizationConflictException} when the
+	 * authorization was modified since it was found, otherwise the last {@code save} wins. Implementations
+	 * that do not detect conflicting saves should override it to consume the authorization code atomically.
+	 *
+	 * @param code the authorization code
+	 * @return the {@link OAuth2Authorization} containing the consumed authorization code, or {@code null} if not consumed
+	 * @since 0.2.0
+	 */
+	@Nullable
+	default OAuth2Authorization consumeAuthorizationCode(String code) {
+		Assert.hasText(code, "code cannot be empty");
+		OAuth2Authorization authorization = findByToken(code, new OAuth2TokenType(OAuth2ParameterNames.CODE));
+		if (authorization == null) {
+			return null;
+		}
+		OAuth2Authorization.Token<OAuth2AuthorizationCode> authorizationCode =
+				authorization.getToken(OAuth2AuthorizationCode.class);
+		if (authorizationCode == null || authorizationCode.isInvalidated()) {
+			return null;
+		}
+		authorization = OAuth2Authorization.from(authorization)
+				.token(authorizationCode.getToken(),
+						(metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.build();
+		try {
+			save(authorization);
+		} catch (OAuth2AuthorizationConflictException ex) {
+			// Concurrently consumed
+			return null;
+		}
+		return authorization;
+	}
+
 }
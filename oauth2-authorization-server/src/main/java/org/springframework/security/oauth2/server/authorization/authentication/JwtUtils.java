@@ -18,16 +18,28 @@ package org.springframework.security.oauth2.server.authorization.authentication;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
+import org.springframework.lang.Nullable;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
 import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
 import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.jwt.JoseHeader;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
@@ -42,8 +54,27 @@ final class JwtUtils {
 	private JwtUtils() {
 	}
 
-	static JoseHeader.Builder headers() {
-		return JoseHeader.withAlgorithm(SignatureAlgorithm.RS256);
+	static JoseHeader.Builder headers(SignatureAlgorithm signatureAlgorithm) {
+		// Settings persisted before the signature algorithm was configurable default to RS256
+		return JoseHeader.withAlgorithm(signatureAlgorithm != null ? signatureAlgorithm : SignatureAlgorithm.RS256);
+	}
+
+	static SignatureAlgorithm idTokenSignatureAlgorithm(RegisteredClient registeredClient,
+			@Nullable ProviderSettings providerSettings) {
+		SignatureAlgorithm signatureAlgorithm = registeredClient.getTokenSettings().getIdTokenSignatureAlgorithm();
+		if (signatureAlgorithm == null) {
+			signatureAlgorithm = SignatureAlgorithm.RS256;
+		}
+		// The ID Token must be signed with an algorithm advertised in the OpenID Provider Configuration
+		List<SignatureAlgorithm> supportedAlgorithms = providerSettings != null ?
+				providerSettings.getIdTokenSigningAlgorithms() : null;
+		if (!CollectionUtils.isEmpty(supportedAlgorithms) && !supportedAlgorithms.contains(signatureAlgorithm)) {
+			OAuth2Error error = new OAuth2Error(OAuth2ErrorCodes.SERVER_ERROR,
+					"The ID Token signature algorithm " + signatureAlgorithm.getName() +
+							" of the client is not supported by the provider.", null);
+			throw new OAuth2AuthenticationException(error);
+		}
+		return signatureAlgorithm;
 	}
 
 	static JwtClaimsSet.Builder accessTokenClaims(RegisteredClient registeredClient,
@@ -98,4 +129,44 @@ final class JwtUtils {
 		return claimsBuilder;
 	}
 
+	/**
+	 * Starts encoding the {@link Jwt} on the provided {@code Executor}, so that the calling thread
+	 * can encode another {@link Jwt} in the meantime, or encodes it on the calling thread
+	 * if the {@code Executor} is {@code null} or rejects the task.
+	 *
+	 * @return a {@code Supplier} that waits for, and returns, the encoded {@link Jwt}
+	 */
+	static Supplier<Jwt> encode(JwtEncoder jwtEncoder, JoseHeader headers, JwtClaimsSet claims,
+			@Nullable Executor executor) {
+		if (executor != null) {
+			CompletableFuture<Jwt> jwt = null;
+			try {
+				jwt = CompletableFuture.supplyAsync(() -> jwtEncoder.encode(headers, claims), executor);
+			} catch (RejectedExecutionException ex) {
+				// The executor is saturated, so encode on the calling thread
+			}
+			if (jwt != null) {
+				CompletableFuture<Jwt> encodedJwt = jwt;
+				return () -> join(encodedJwt);
+			}
+		}
+		Jwt jwt = jwtEncoder.encode(headers, claims);
+		return () -> jwt;
+	}
+
+	private static Jwt join(CompletableFuture<Jwt> jwt) {
+		try {
+			return jwt.join();
+		} catch (CompletionException ex) {
+			// Propagate the exception thrown by the JwtEncoder, e.g. JwtEncodingException
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
 }
@@ -15,15 +15,28 @@
  */
 package org.springframework.security.oauth2.server.authorization.authentication;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.springframework.lang.Nullable;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.core.AbstractOAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
+import org.springframework.security.oauth2.jwt.JoseHeader;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 
 /**
  * Utility methods for the OAuth 2.0 {@link AuthenticationProvider}'s.
@@ -75,4 +88,58 @@ final class OAuth2AuthenticationProviderUtils {
 
 		return authorizationBuilder.build();
 	}
+
+	/**
+	 * Starts issuing the {@link OAuth2AccessToken} in the {@link OAuth2TokenFormat} of the {@link RegisteredClient}.
+	 * A {@link OAuth2TokenFormat#SELF_CONTAINED self-contained} access token is encoded using
+	 * {@link JwtUtils#encode(JwtEncoder, JoseHeader, JwtClaimsSet, Executor)}, so that the calling thread
+	 * can encode the ID Token in the meantime.
+	 *
+	 * @return a {@code Supplier} that waits for, and returns, the issued access token
+	 */
+	static Supplier<IssuedAccessToken> issueAccessToken(RegisteredClient registeredClient, JwtEncoder jwtEncoder,
+			JoseHeader headers, JwtClaimsSet claims, Set<String> authorizedScopes,
+			Supplier<String> accessTokenGenerator, @Nullable Executor executor) {
+
+		if (OAuth2TokenFormat.REFERENCE.equals(registeredClient.getTokenSettings().getAccessTokenFormat())) {
+			// The claims are not signed as they are only available using Token Introspection
+			OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+					accessTokenGenerator.get(), claims.getIssuedAt(), claims.getExpiresAt(), authorizedScopes);
+			IssuedAccessToken issuedAccessToken = new IssuedAccessToken(accessToken, claims.getClaims());
+			return () -> issuedAccessToken;
+		}
+
+		Supplier<Jwt> encodedAccessToken = JwtUtils.encode(jwtEncoder, headers, claims, executor);
+		return () -> {
+			Jwt jwtAccessToken = encodedAccessToken.get();
+			OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+					jwtAccessToken.getTokenValue(), jwtAccessToken.getIssuedAt(),
+					jwtAccessToken.getExpiresAt(), authorizedScopes);
+			return new IssuedAccessToken(accessToken, jwtAccessToken.getClaims());
+		};
+	}
+
+	/**
+	 * An issued {@link OAuth2AccessToken} along with its claims,
+	 * which are stored in the {@link OAuth2Authorization.Token#CLAIMS_METADATA_NAME metadata} of the token.
+	 */
+	static final class IssuedAccessToken {
+		private final OAuth2AccessToken token;
+		private final Map<String, Object> claims;
+
+		private IssuedAccessToken(OAuth2AccessToken token, Map<String, Object> claims) {
+			this.token = token;
+			this.claims = claims;
+		}
+
+		OAuth2AccessToken getToken() {
+			return this.token;
+		}
+
+		Map<String, Object> getClaims() {
+			return this.claims;
+		}
+
+	}
+
 }
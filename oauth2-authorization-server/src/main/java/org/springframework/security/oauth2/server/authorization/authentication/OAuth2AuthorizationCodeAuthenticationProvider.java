@@ -23,13 +23,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.crypto.keygen.Base64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.ConcurrentBase64StringKeyGenerator;
 import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
@@ -37,9 +38,9 @@ import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
 import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
-import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.core.oidc.OidcScopes;
 import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
@@ -50,14 +51,17 @@ import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConflictException;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenCustomizer;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.IssuedAccessToken;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.getAuthenticatedClientElseThrowInvalidClient;
+import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.issueAccessToken;
 
 /**
  * An {@link AuthenticationProvider} implementation for the OAuth 2.0 Authorization Code Grant.
@@ -76,16 +80,18 @@ import static org.springframework.security.oauth2.server.authorization.authentic
  * @see <a target="_blank" href="https://tools.ietf.org/html/rfc6749#section-4.1.3">Section 4.1.3 Access Token Request</a>
  */
 public final class OAuth2AuthorizationCodeAuthenticationProvider implements AuthenticationProvider {
-	private static final OAuth2TokenType AUTHORIZATION_CODE_TOKEN_TYPE =
-			new OAuth2TokenType(OAuth2ParameterNames.CODE);
 	private static final OAuth2TokenType ID_TOKEN_TOKEN_TYPE =
 			new OAuth2TokenType(OidcParameterNames.ID_TOKEN);
+	private static final StringKeyGenerator DEFAULT_ACCESS_TOKEN_GENERATOR =
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 32);
 	private static final StringKeyGenerator DEFAULT_REFRESH_TOKEN_GENERATOR =
-			new Base64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 96);
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 96);
 	private final OAuth2AuthorizationService authorizationService;
 	private final JwtEncoder jwtEncoder;
 	private OAuth2TokenCustomizer<JwtEncodingContext> jwtCustomizer = (context) -> {};
+	private Supplier<String> accessTokenGenerator = DEFAULT_ACCESS_TOKEN_GENERATOR::generateKey;
 	private Supplier<String> refreshTokenGenerator = DEFAULT_REFRESH_TOKEN_GENERATOR::generateKey;
+	private Executor tokenSigningExecutor;
 	private ProviderSettings providerSettings;
 
 	/**
@@ -106,6 +112,18 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 		this.jwtCustomizer = jwtCustomizer;
 	}
 
+	/**
+	 * Sets the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * when the access token format is {@link OAuth2TokenFormat#REFERENCE}.
+	 *
+	 * @param accessTokenGenerator the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * @since 0.2.0
+	 */
+	public void setAccessTokenGenerator(Supplier<String> accessTokenGenerator) {
+		Assert.notNull(accessTokenGenerator, "accessTokenGenerator cannot be null");
+		this.accessTokenGenerator = accessTokenGenerator;
+	}
+
 	/**
 	 * Sets the {@code Supplier<String>} that generates the value for the {@link OAuth2RefreshToken}.
 	 *
@@ -116,6 +134,20 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 		this.refreshTokenGenerator = refreshTokenGenerator;
 	}
 
+	/**
+	 * Sets the {@code Executor} used to sign the access token concurrently with the ID Token,
+	 * which is signed on the calling thread, when the {@code openid} scope is requested.
+	 * The {@code Executor} should be bounded, and if it rejects the task, the access token is signed
+	 * on the calling thread. By default, the access token and the ID Token are signed one after the other.
+	 *
+	 * @param tokenSigningExecutor the {@code Executor} used to sign the access token
+	 * @since 0.2.0
+	 */
+	public void setTokenSigningExecutor(Executor tokenSigningExecutor) {
+		Assert.notNull(tokenSigningExecutor, "tokenSigningExecutor cannot be null");
+		this.tokenSigningExecutor = tokenSigningExecutor;
+	}
+
 	@Autowired(required = false)
 	protected void setProviderSettings(ProviderSettings providerSettings) {
 		this.providerSettings = providerSettings;
@@ -130,8 +162,10 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 				getAuthenticatedClientElseThrowInvalidClient(authorizationCodeAuthentication);
 		RegisteredClient registeredClient = clientPrincipal.getRegisteredClient();
 
-		OAuth2Authorization authorization = this.authorizationService.findByToken(
-				authorizationCodeAuthentication.getCode(), AUTHORIZATION_CODE_TOKEN_TYPE);
+		// Consume the authorization code up front, as it can only be used once,
+		// which also invalidates it if a different client is attempting to use it
+		OAuth2Authorization authorization = this.authorizationService.consumeAuthorizationCode(
+				authorizationCodeAuthentication.getCode());
 		if (authorization == null) {
 			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT));
 		}
@@ -142,11 +176,6 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 				OAuth2AuthorizationRequest.class.getName());
 
 		if (!registeredClient.getClientId().equals(authorizationRequest.getClientId())) {
-			if (!authorizationCode.isInvalidated()) {
-				// Invalidate the authorization code given that a different client is attempting to use it
-				authorization = OAuth2AuthenticationProviderUtils.invalidate(authorization, authorizationCode.getToken());
-				this.authorizationService.save(authorization);
-			}
 			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT));
 		}
 
@@ -155,7 +184,7 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT));
 		}
 
-		if (!authorizationCode.isActive()) {
+		if (authorizationCode.isExpired() || authorizationCode.isBeforeUse()) {
 			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT));
 		}
 
@@ -163,7 +192,8 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 		Set<String> authorizedScopes = authorization.getAttribute(
 				OAuth2Authorization.AUTHORIZED_SCOPE_ATTRIBUTE_NAME);
 
-		JoseHeader.Builder headersBuilder = JwtUtils.headers();
+		JoseHeader.Builder headersBuilder = JwtUtils.headers(
+				registeredClient.getTokenSettings().getAccessTokenSignatureAlgorithm());
 		JwtClaimsSet.Builder claimsBuilder = JwtUtils.accessTokenClaims(
 				registeredClient, issuer, authorization.getPrincipalName(),
 				authorizedScopes);
@@ -184,22 +214,15 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 
 		JoseHeader headers = context.getHeaders().build();
 		JwtClaimsSet claims = context.getClaims().build();
-		Jwt jwtAccessToken = this.jwtEncoder.encode(headers, claims);
-
-		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
-				jwtAccessToken.getTokenValue(), jwtAccessToken.getIssuedAt(),
-				jwtAccessToken.getExpiresAt(), authorizedScopes);
-
-		OAuth2RefreshToken refreshToken = null;
-		if (registeredClient.getAuthorizationGrantTypes().contains(AuthorizationGrantType.REFRESH_TOKEN)) {
-			refreshToken = generateRefreshToken(registeredClient.getTokenSettings().getRefreshTokenTimeToLive());
-		}
 
-		Jwt jwtIdToken = null;
+		// Prepare the ID Token up front, so that it can be signed concurrently with the access token
+		JoseHeader idTokenHeaders = null;
+		JwtClaimsSet idTokenClaims = null;
 		if (authorizationRequest.getScopes().contains(OidcScopes.OPENID)) {
 			String nonce = (String) authorizationRequest.getAdditionalParameters().get(OidcParameterNames.NONCE);
 
-			headersBuilder = JwtUtils.headers();
+			headersBuilder = JwtUtils.headers(
+					JwtUtils.idTokenSignatureAlgorithm(registeredClient, this.providerSettings));
 			claimsBuilder = JwtUtils.idTokenClaims(
 					registeredClient, issuer, authorization.getPrincipalName(), nonce);
 
@@ -217,9 +240,21 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 
 			this.jwtCustomizer.customize(context);
 
-			headers = context.getHeaders().build();
-			claims = context.getClaims().build();
-			jwtIdToken = this.jwtEncoder.encode(headers, claims);
+			idTokenHeaders = context.getHeaders().build();
+			idTokenClaims = context.getClaims().build();
+		}
+
+		Supplier<IssuedAccessToken> accessTokenSupplier = issueAccessToken(registeredClient, this.jwtEncoder,
+				headers, claims, authorizedScopes, this.accessTokenGenerator,
+				idTokenClaims != null ? this.tokenSigningExecutor : null);
+		Jwt jwtIdToken = idTokenClaims != null ? this.jwtEncoder.encode(idTokenHeaders, idTokenClaims) : null;
+		IssuedAccessToken issuedAccessToken = accessTokenSupplier.get();
+		OAuth2AccessToken accessToken = issuedAccessToken.getToken();
+		Map<String, Object> accessTokenClaims = issuedAccessToken.getClaims();
+
+		OAuth2RefreshToken refreshToken = null;
+		if (registeredClient.getAuthorizationGrantTypes().contains(AuthorizationGrantType.REFRESH_TOKEN)) {
+			refreshToken = generateRefreshToken(registeredClient.getTokenSettings().getRefreshTokenTimeToLive());
 		}
 
 		OidcIdToken idToken;
@@ -234,7 +269,7 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 		OAuth2Authorization.Builder authorizationBuilder = OAuth2Authorization.from(authorization)
 				.token(accessToken,
 						(metadata) ->
-								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, jwtAccessToken.getClaims())
+								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, accessTokenClaims)
 				);
 		if (refreshToken != null) {
 			authorizationBuilder.refreshToken(refreshToken);
@@ -248,10 +283,12 @@ public final class OAuth2AuthorizationCodeAuthenticationProvider implements Auth
 		authorization = authorizationBuilder.build();
 		// @formatter:on
 
-		// Invalidate the authorization code as it can only be used once
-		authorization = OAuth2AuthenticationProviderUtils.invalidate(authorization, authorizationCode.getToken());
-
-		this.authorizationService.save(authorization);
+		try {
+			this.authorizationService.save(authorization);
+		} catch (OAuth2AuthorizationConflictException ex) {
+			// The authorization was concurrently modified (e.g. revoked)
+			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT), ex);
+		}
 
 		Map<String, Object> additionalParameters = Collections.emptyMap();
 		if (idToken != null) {
@@ -16,10 +16,18 @@
 package org.springframework.security.oauth2.server.authorization.authentication;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
@@ -57,9 +65,13 @@ import org.springframework.util.StringUtils;
  */
 public final class OAuth2ClientAuthenticationProvider implements AuthenticationProvider {
 	private static final OAuth2TokenType AUTHORIZATION_CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.CODE);
+	private static final String VERIFIED_CLIENT_SECRET_MAC_ALGORITHM = "HmacSHA256";
 	private final RegisteredClientRepository registeredClientRepository;
 	private final OAuth2AuthorizationService authorizationService;
+	private final Map<String, VerifiedClientSecret> verifiedClientSecrets = new ConcurrentHashMap<>();
+	private final SecretKeySpec verifiedClientSecretKey = generateVerifiedClientSecretKey();
 	private PasswordEncoder passwordEncoder;
+	private Duration verifiedClientSecretTimeToLive = Duration.ZERO;
 
 	/**
 	 * Constructs an {@code OAuth2ClientAuthenticationProvider} using the provided parameters.
@@ -87,6 +99,26 @@ public final class OAuth2ClientAuthenticationProvider implements AuthenticationP
 	public void setPasswordEncoder(PasswordEncoder passwordEncoder) {
 		Assert.notNull(passwordEncoder, "passwordEncoder cannot be null");
 		this.passwordEncoder = passwordEncoder;
+		this.verifiedClientSecrets.clear();
+	}
+
+	/**
+	 * Sets the time-to-live of a successfully verified client secret.
+	 * Within this window, a request presenting the same client secret for the same
+	 * {@link RegisteredClient} is authenticated without invoking the {@link PasswordEncoder}.
+	 * A verified client secret is invalidated as soon as the
+	 * {@link RegisteredClient#getClientSecret() registered client secret} changes.
+	 * The presented client secret is never retained, only a keyed hash (HMAC-SHA256) of it.
+	 * The default is {@link Duration#ZERO}, which disables caching.
+	 *
+	 * @param verifiedClientSecretTimeToLive the time-to-live of a verified client secret
+	 * @since 0.2.0
+	 */
+	public void setVerifiedClientSecretTimeToLive(Duration verifiedClientSecretTimeToLive) {
+		Assert.notNull(verifiedClientSecretTimeToLive, "verifiedClientSecretTimeToLive cannot be null");
+		Assert.isTrue(!verifiedClientSecretTimeToLive.isNegative(), "verifiedClientSecretTimeToLive cannot be negative");
+		this.verifiedClientSecretTimeToLive = verifiedClientSecretTimeToLive;
+		this.verifiedClientSecrets.clear();
 	}
 
 	@Override
@@ -109,7 +141,7 @@ public final class OAuth2ClientAuthenticationProvider implements AuthenticationP
 
 		if (clientAuthentication.getCredentials() != null) {
 			String clientSecret = clientAuthentication.getCredentials().toString();
-			if (!this.passwordEncoder.matches(clientSecret, registeredClient.getClientSecret())) {
+			if (!clientSecretMatches(clientSecret, registeredClient)) {
 				throwInvalidClient();
 			}
 			authenticatedCredentials = true;
@@ -129,6 +161,45 @@ public final class OAuth2ClientAuthenticationProvider implements AuthenticationP
 		return OAuth2ClientAuthenticationToken.class.isAssignableFrom(authentication);
 	}
 
+	private boolean clientSecretMatches(String clientSecret, RegisteredClient registeredClient) {
+		String registeredClientSecret = registeredClient.getClientSecret();
+		if (this.verifiedClientSecretTimeToLive.isZero() || registeredClientSecret == null) {
+			return this.passwordEncoder.matches(clientSecret, registeredClientSecret);
+		}
+
+		Instant now = Instant.now();
+		byte[] clientSecretMac = computeClientSecretMac(registeredClient.getClientId(), clientSecret);
+		VerifiedClientSecret verifiedClientSecret = this.verifiedClientSecrets.get(registeredClient.getId());
+		if (verifiedClientSecret != null && verifiedClientSecret.matches(registeredClientSecret, clientSecretMac, now)) {
+			return true;
+		}
+
+		if (!this.passwordEncoder.matches(clientSecret, registeredClientSecret)) {
+			return false;
+		}
+		this.verifiedClientSecrets.put(registeredClient.getId(), new VerifiedClientSecret(
+				registeredClientSecret, clientSecretMac, now.plus(this.verifiedClientSecretTimeToLive)));
+		return true;
+	}
+
+	private byte[] computeClientSecretMac(String clientId, String clientSecret) {
+		try {
+			Mac mac = Mac.getInstance(VERIFIED_CLIENT_SECRET_MAC_ALGORITHM);
+			mac.init(this.verifiedClientSecretKey);
+			mac.update(clientId.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+			return mac.doFinal(clientSecret.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException ex) {
+			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.SERVER_ERROR), ex);
+		}
+	}
+
+	private static SecretKeySpec generateVerifiedClientSecretKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return new SecretKeySpec(key, VERIFIED_CLIENT_SECRET_MAC_ALGORITHM);
+	}
+
 	private boolean authenticatePkceIfAvailable(OAuth2ClientAuthenticationToken clientAuthentication,
 			RegisteredClient registeredClient) {
 
@@ -192,4 +263,22 @@ public final class OAuth2ClientAuthenticationProvider implements AuthenticationP
 	private static void throwInvalidClient() {
 		throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_CLIENT));
 	}
+
+	private static final class VerifiedClientSecret {
+		private final String registeredClientSecret;
+		private final byte[] clientSecretMac;
+		private final Instant expiresAt;
+
+		private VerifiedClientSecret(String registeredClientSecret, byte[] clientSecretMac, Instant expiresAt) {
+			this.registeredClientSecret = registeredClientSecret;
+			this.clientSecretMac = clientSecretMac;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean matches(String registeredClientSecret, byte[] clientSecretMac, Instant now) {
+			return now.isBefore(this.expiresAt) &&
+					this.registeredClientSecret.equals(registeredClientSecret) &&
+					MessageDigest.isEqual(this.clientSecretMac, clientSecretMac);
+		}
+	}
 }
@@ -15,22 +15,27 @@
  */
 package org.springframework.security.oauth2.server.authorization.authentication;
 
+import java.util.Base64;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.keygen.ConcurrentBase64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
 import org.springframework.security.oauth2.jwt.JoseHeader;
-import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtClaimsSet;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
@@ -39,10 +44,12 @@ import org.springframework.security.oauth2.server.authorization.client.Registere
 import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 import org.springframework.security.oauth2.server.authorization.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenCustomizer;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.IssuedAccessToken;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.getAuthenticatedClientElseThrowInvalidClient;
+import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.issueAccessToken;
 
 /**
  * An {@link AuthenticationProvider} implementation for the OAuth 2.0 Client Credentials Grant.
@@ -60,9 +67,12 @@ import static org.springframework.security.oauth2.server.authorization.authentic
  * @see <a target="_blank" href="https://tools.ietf.org/html/rfc6749#section-4.4.2">Section 4.4.2 Access Token Request</a>
  */
 public final class OAuth2ClientCredentialsAuthenticationProvider implements AuthenticationProvider {
+	private static final StringKeyGenerator DEFAULT_ACCESS_TOKEN_GENERATOR =
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 32);
 	private final OAuth2AuthorizationService authorizationService;
 	private final JwtEncoder jwtEncoder;
 	private OAuth2TokenCustomizer<JwtEncodingContext> jwtCustomizer = (context) -> {};
+	private Supplier<String> accessTokenGenerator = DEFAULT_ACCESS_TOKEN_GENERATOR::generateKey;
 	private ProviderSettings providerSettings;
 
 	/**
@@ -84,6 +94,18 @@ public final class OAuth2ClientCredentialsAuthenticationProvider implements Auth
 		this.jwtCustomizer = jwtCustomizer;
 	}
 
+	/**
+	 * Sets the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * when the access token format is {@link OAuth2TokenFormat#REFERENCE}.
+	 *
+	 * @param accessTokenGenerator the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * @since 0.2.0
+	 */
+	public void setAccessTokenGenerator(Supplier<String> accessTokenGenerator) {
+		Assert.notNull(accessTokenGenerator, "accessTokenGenerator cannot be null");
+		this.accessTokenGenerator = accessTokenGenerator;
+	}
+
 	@Autowired(required = false)
 	protected void setProviderSettings(ProviderSettings providerSettings) {
 		this.providerSettings = providerSettings;
@@ -115,7 +137,8 @@ public final class OAuth2ClientCredentialsAuthenticationProvider implements Auth
 
 		String issuer = this.providerSettings != null ? this.providerSettings.getIssuer() : null;
 
-		JoseHeader.Builder headersBuilder = JwtUtils.headers();
+		JoseHeader.Builder headersBuilder = JwtUtils.headers(
+				registeredClient.getTokenSettings().getAccessTokenSignatureAlgorithm());
 		JwtClaimsSet.Builder claimsBuilder = JwtUtils.accessTokenClaims(
 				registeredClient, issuer, clientPrincipal.getName(), authorizedScopes);
 
@@ -134,11 +157,11 @@ public final class OAuth2ClientCredentialsAuthenticationProvider implements Auth
 
 		JoseHeader headers = context.getHeaders().build();
 		JwtClaimsSet claims = context.getClaims().build();
-		Jwt jwtAccessToken = this.jwtEncoder.encode(headers, claims);
 
-		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
-				jwtAccessToken.getTokenValue(), jwtAccessToken.getIssuedAt(),
-				jwtAccessToken.getExpiresAt(), authorizedScopes);
+		IssuedAccessToken issuedAccessToken = issueAccessToken(registeredClient, this.jwtEncoder,
+				headers, claims, authorizedScopes, this.accessTokenGenerator, null).get();
+		OAuth2AccessToken accessToken = issuedAccessToken.getToken();
+		Map<String, Object> accessTokenClaims = issuedAccessToken.getClaims();
 
 		// @formatter:off
 		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(registeredClient)
@@ -146,7 +169,7 @@ public final class OAuth2ClientCredentialsAuthenticationProvider implements Auth
 				.authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
 				.token(accessToken,
 						(metadata) ->
-								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, jwtAccessToken.getClaims()))
+								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, accessTokenClaims))
 				.attribute(OAuth2Authorization.AUTHORIZED_SCOPE_ATTRIBUTE_NAME, authorizedScopes)
 				.build();
 		// @formatter:on
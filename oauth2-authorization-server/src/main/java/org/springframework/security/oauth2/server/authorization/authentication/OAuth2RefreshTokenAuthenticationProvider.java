@@ -23,13 +23,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.crypto.keygen.Base64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.ConcurrentBase64StringKeyGenerator;
 import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
@@ -37,6 +38,7 @@ import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.core.oidc.OidcScopes;
@@ -47,14 +49,17 @@ import org.springframework.security.oauth2.jwt.JwtClaimsSet;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConflictException;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenCustomizer;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.IssuedAccessToken;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 import org.springframework.security.oauth2.server.authorization.config.TokenSettings;
 import org.springframework.util.Assert;
 
 import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.getAuthenticatedClientElseThrowInvalidClient;
+import static org.springframework.security.oauth2.server.authorization.authentication.OAuth2AuthenticationProviderUtils.issueAccessToken;
 
 /**
  * An {@link AuthenticationProvider} implementation for the OAuth 2.0 Refresh Token Grant.
@@ -74,12 +79,16 @@ import static org.springframework.security.oauth2.server.authorization.authentic
  */
 public final class OAuth2RefreshTokenAuthenticationProvider implements AuthenticationProvider {
 	private static final OAuth2TokenType ID_TOKEN_TOKEN_TYPE = new OAuth2TokenType(OidcParameterNames.ID_TOKEN);
+	private static final StringKeyGenerator DEFAULT_ACCESS_TOKEN_GENERATOR =
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 32);
 	private static final StringKeyGenerator DEFAULT_REFRESH_TOKEN_GENERATOR =
-			new Base64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 96);
+			new ConcurrentBase64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 96);
 	private final OAuth2AuthorizationService authorizationService;
 	private final JwtEncoder jwtEncoder;
 	private OAuth2TokenCustomizer<JwtEncodingContext> jwtCustomizer = (context) -> {};
+	private Supplier<String> accessTokenGenerator = DEFAULT_ACCESS_TOKEN_GENERATOR::generateKey;
 	private Supplier<String> refreshTokenGenerator = DEFAULT_REFRESH_TOKEN_GENERATOR::generateKey;
+	private Executor tokenSigningExecutor;
 	private ProviderSettings providerSettings;
 
 	/**
@@ -101,6 +110,18 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 		this.jwtCustomizer = jwtCustomizer;
 	}
 
+	/**
+	 * Sets the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * when the access token format is {@link OAuth2TokenFormat#REFERENCE}.
+	 *
+	 * @param accessTokenGenerator the {@code Supplier<String>} that generates the value for the {@link OAuth2AccessToken}
+	 * @since 0.2.0
+	 */
+	public void setAccessTokenGenerator(Supplier<String> accessTokenGenerator) {
+		Assert.notNull(accessTokenGenerator, "accessTokenGenerator cannot be null");
+		this.accessTokenGenerator = accessTokenGenerator;
+	}
+
 	/**
 	 * Sets the {@code Supplier<String>} that generates the value for the {@link OAuth2RefreshToken}.
 	 *
@@ -111,6 +132,20 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 		this.refreshTokenGenerator = refreshTokenGenerator;
 	}
 
+	/**
+	 * Sets the {@code Executor} used to sign the access token concurrently with the ID Token,
+	 * which is signed on the calling thread, when the {@code openid} scope was authorized.
+	 * The {@code Executor} should be bounded, and if it rejects the task, the access token is signed
+	 * on the calling thread. By default, the access token and the ID Token are signed one after the other.
+	 *
+	 * @param tokenSigningExecutor the {@code Executor} used to sign the access token
+	 * @since 0.2.0
+	 */
+	public void setTokenSigningExecutor(Executor tokenSigningExecutor) {
+		Assert.notNull(tokenSigningExecutor, "tokenSigningExecutor cannot be null");
+		this.tokenSigningExecutor = tokenSigningExecutor;
+	}
+
 	@Autowired(required = false)
 	protected void setProviderSettings(ProviderSettings providerSettings) {
 		this.providerSettings = providerSettings;
@@ -161,7 +196,8 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 
 		String issuer = this.providerSettings != null ? this.providerSettings.getIssuer() : null;
 
-		JoseHeader.Builder headersBuilder = JwtUtils.headers();
+		JoseHeader.Builder headersBuilder = JwtUtils.headers(
+				registeredClient.getTokenSettings().getAccessTokenSignatureAlgorithm());
 		JwtClaimsSet.Builder claimsBuilder = JwtUtils.accessTokenClaims(
 				registeredClient, issuer, authorization.getPrincipalName(), scopes);
 
@@ -181,22 +217,13 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 
 		JoseHeader headers = context.getHeaders().build();
 		JwtClaimsSet claims = context.getClaims().build();
-		Jwt jwtAccessToken = this.jwtEncoder.encode(headers, claims);
-
-		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
-				jwtAccessToken.getTokenValue(), jwtAccessToken.getIssuedAt(),
-				jwtAccessToken.getExpiresAt(), scopes);
 
-		TokenSettings tokenSettings = registeredClient.getTokenSettings();
-
-		OAuth2RefreshToken currentRefreshToken = refreshToken.getToken();
-		if (!tokenSettings.isReuseRefreshTokens()) {
-			currentRefreshToken = generateRefreshToken(tokenSettings.getRefreshTokenTimeToLive());
-		}
-
-		Jwt jwtIdToken = null;
+		// Prepare the ID Token up front, so that it can be signed concurrently with the access token
+		JoseHeader idTokenHeaders = null;
+		JwtClaimsSet idTokenClaims = null;
 		if (authorizedScopes.contains(OidcScopes.OPENID)) {
-			headersBuilder = JwtUtils.headers();
+			headersBuilder = JwtUtils.headers(
+					JwtUtils.idTokenSignatureAlgorithm(registeredClient, this.providerSettings));
 			claimsBuilder = JwtUtils.idTokenClaims(
 					registeredClient, issuer, authorization.getPrincipalName(), null);
 
@@ -214,9 +241,23 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 
 			this.jwtCustomizer.customize(context);
 
-			headers = context.getHeaders().build();
-			claims = context.getClaims().build();
-			jwtIdToken = this.jwtEncoder.encode(headers, claims);
+			idTokenHeaders = context.getHeaders().build();
+			idTokenClaims = context.getClaims().build();
+		}
+
+		Supplier<IssuedAccessToken> accessTokenSupplier = issueAccessToken(registeredClient, this.jwtEncoder,
+				headers, claims, scopes, this.accessTokenGenerator,
+				idTokenClaims != null ? this.tokenSigningExecutor : null);
+		Jwt jwtIdToken = idTokenClaims != null ? this.jwtEncoder.encode(idTokenHeaders, idTokenClaims) : null;
+		IssuedAccessToken issuedAccessToken = accessTokenSupplier.get();
+		OAuth2AccessToken accessToken = issuedAccessToken.getToken();
+		Map<String, Object> accessTokenClaims = issuedAccessToken.getClaims();
+
+		TokenSettings tokenSettings = registeredClient.getTokenSettings();
+
+		OAuth2RefreshToken currentRefreshToken = refreshToken.getToken();
+		if (!tokenSettings.isReuseRefreshTokens()) {
+			currentRefreshToken = generateRefreshToken(tokenSettings.getRefreshTokenTimeToLive());
 		}
 
 		OidcIdToken idToken;
@@ -231,7 +272,7 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 		OAuth2Authorization.Builder authorizationBuilder = OAuth2Authorization.from(authorization)
 				.token(accessToken,
 						(metadata) ->
-								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, jwtAccessToken.getClaims()))
+								metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME, accessTokenClaims))
 				.refreshToken(currentRefreshToken);
 		if (idToken != null) {
 			authorizationBuilder
@@ -242,7 +283,12 @@ public final class OAuth2RefreshTokenAuthenticationProvider implements Authentic
 		authorization = authorizationBuilder.build();
 		// @formatter:on
 
-		this.authorizationService.save(authorization);
+		try {
+			this.authorizationService.save(authorization);
+		} catch (OAuth2AuthorizationConflictException ex) {
+			// The refresh token was concurrently used (or revoked)
+			throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_GRANT), ex);
+		}
 
 		Map<String, Object> additionalParameters = Collections.emptyMap();
 		if (idToken != null) {
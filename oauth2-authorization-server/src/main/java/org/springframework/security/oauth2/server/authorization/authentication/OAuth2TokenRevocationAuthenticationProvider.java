@@ -23,6 +23,7 @@ import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConflictException;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.util.Assert;
@@ -40,6 +41,7 @@ import static org.springframework.security.oauth2.server.authorization.authentic
  * @see <a target="_blank" href="https://tools.ietf.org/html/rfc7009#section-2.1">Section 2.1 Revocation Request</a>
  */
 public final class OAuth2TokenRevocationAuthenticationProvider implements AuthenticationProvider {
+	private static final int MAX_REVOCATION_ATTEMPTS = 5;
 	private final OAuth2AuthorizationService authorizationService;
 
 	/**
@@ -73,10 +75,24 @@ public final class OAuth2TokenRevocationAuthenticationProvider implements Authen
 		}
 
 		OAuth2Authorization.Token<AbstractOAuth2Token> token = authorization.getToken(tokenRevocationAuthentication.getToken());
-		authorization = OAuth2AuthenticationProviderUtils.invalidate(authorization, token.getToken());
-		this.authorizationService.save(authorization);
+		AbstractOAuth2Token revokedToken = token.getToken();
+		for (int attempt = 1; token != null && !token.isInvalidated(); attempt++) {
+			try {
+				this.authorizationService.save(OAuth2AuthenticationProviderUtils.invalidate(authorization, token.getToken()));
+				break;
+			} catch (OAuth2AuthorizationConflictException ex) {
+				if (attempt == MAX_REVOCATION_ATTEMPTS) {
+					// Never report a revocation that did not happen
+					throw new OAuth2AuthenticationException(new OAuth2Error(OAuth2ErrorCodes.SERVER_ERROR), ex);
+				}
+				// The authorization was concurrently modified (e.g. by a refresh), so retry against its current state,
+				// unless the token was concurrently revoked (or removed)
+				authorization = this.authorizationService.findByToken(tokenRevocationAuthentication.getToken(), null);
+				token = authorization != null ? authorization.getToken(tokenRevocationAuthentication.getToken()) : null;
+			}
+		}
 
-		return new OAuth2TokenRevocationAuthenticationToken(token.getToken(), clientPrincipal);
+		return new OAuth2TokenRevocationAuthenticationToken(revokedToken, clientPrincipal);
 	}
 
 	@Override
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.client;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link RegisteredClientRepository} that caches the {@link RegisteredClient}(s)
+ * loaded from a delegate {@link RegisteredClientRepository}, indexed by both
+ * {@link RegisteredClient#getId() id} and {@link RegisteredClient#getClientId() client id}.
+ *
+ * <p>
+ * A cached {@link RegisteredClient} is reloaded from the delegate once the {@link #setTimeToLive(Duration) time-to-live}
+ * has elapsed and is invalidated when {@link #save(RegisteredClient) saved} through this repository.
+ * A change applied to the underlying store by other means (e.g. another application instance)
+ * will be visible once the time-to-live has elapsed or after calling {@link #invalidate(String)}.
+ *
+ * @since 0.2.0
+ * @see RegisteredClientRepository
+ * @see RegisteredClient
+ */
+public final class CachingRegisteredClientRepository implements RegisteredClientRepository {
+	private final RegisteredClientRepository delegate;
+	private final Map<String, CachedRegisteredClient> idCache = new ConcurrentHashMap<>();
+	private final Map<String, String> clientIdIndex = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private Duration timeToLive = Duration.ofMinutes(5);
+	private int maxSize = 1000;
+	private Clock clock = Clock.systemUTC();
+
+	/**
+	 * Constructs a {@code CachingRegisteredClientRepository} using the provided parameters.
+	 *
+	 * @param delegate the {@link RegisteredClientRepository} to load the registered clients from
+	 */
+	public CachingRegisteredClientRepository(RegisteredClientRepository delegate) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void save(RegisteredClient registeredClient) {
+		Assert.notNull(registeredClient, "registeredClient cannot be null");
+		this.delegate.save(registeredClient);
+		invalidate(registeredClient.getId());
+	}
+
+	@Nullable
+	@Override
+	public RegisteredClient findById(String id) {
+		Assert.hasText(id, "id cannot be empty");
+		RegisteredClient registeredClient = getCached(id);
+		if (registeredClient != null) {
+			return registeredClient;
+		}
+		long generation = this.generation.get();
+		registeredClient = this.delegate.findById(id);
+		if (registeredClient != null) {
+			cache(registeredClient, generation);
+		}
+		return registeredClient;
+	}
+
+	@Nullable
+	@Override
+	public RegisteredClient findByClientId(String clientId) {
+		Assert.hasText(clientId, "clientId cannot be empty");
+		String id = this.clientIdIndex.get(clientId);
+		if (id != null) {
+			RegisteredClient registeredClient = getCached(id);
+			if (registeredClient != null && clientId.equals(registeredClient.getClientId())) {
+				return registeredClient;
+			}
+		}
+		long generation = this.generation.get();
+		RegisteredClient registeredClient = this.delegate.findByClientId(clientId);
+		if (registeredClient != null) {
+			cache(registeredClient, generation);
+		}
+		return registeredClient;
+	}
+
+	/**
+	 * Removes the {@link RegisteredClient} identified by the provided {@code id} from the cache.
+	 *
+	 * @param id the registration identifier
+	 */
+	public void invalidate(String id) {
+		Assert.hasText(id, "id cannot be empty");
+		this.generation.incrementAndGet();
+		CachedRegisteredClient cachedRegisteredClient = this.idCache.remove(id);
+		if (cachedRegisteredClient != null) {
+			this.clientIdIndex.remove(cachedRegisteredClient.registeredClient.getClientId(), id);
+		}
+	}
+
+	/**
+	 * Removes all {@link RegisteredClient}(s) from the cache.
+	 */
+	public void invalidateAll() {
+		this.generation.incrementAndGet();
+		this.idCache.clear();
+		this.clientIdIndex.clear();
+	}
+
+	/**
+	 * Sets the time-to-live of a cached {@link RegisteredClient}. The default is 5 minutes.
+	 *
+	 * @param timeToLive the time-to-live of a cached {@link RegisteredClient}
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		Assert.notNull(timeToLive, "timeToLive cannot be null");
+		Assert.isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive must be greater than 0");
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Sets the maximum number of cached {@link RegisteredClient}(s). The default is 1000.
+	 *
+	 * @param maxSize the maximum number of cached {@link RegisteredClient}(s)
+	 */
+	public void setMaxSize(int maxSize) {
+		Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Sets the {@link Clock} used when determining if a cached {@link RegisteredClient} has expired.
+	 *
+	 * @param clock the {@link Clock}
+	 */
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	@Nullable
+	private RegisteredClient getCached(String id) {
+		CachedRegisteredClient cachedRegisteredClient = this.idCache.get(id);
+		if (cachedRegisteredClient == null) {
+			return null;
+		}
+		if (cachedRegisteredClient.isExpired(this.clock.instant())) {
+			if (this.idCache.remove(id, cachedRegisteredClient)) {
+				this.clientIdIndex.remove(cachedRegisteredClient.registeredClient.getClientId(), id);
+			}
+			return null;
+		}
+		return cachedRegisteredClient.registeredClient;
+	}
+
+	/**
+	 * Caches the {@link RegisteredClient} loaded from the delegate, unless the cache was invalidated
+	 * since the load started, as the loaded {@link RegisteredClient} may then predate a {@link #save(RegisteredClient) save}.
+	 * The generation is shared by all entries, as the id is not known before loading by client id.
+	 */
+	private void cache(RegisteredClient registeredClient, long generation) {
+		if (this.generation.get() != generation) {
+			return;
+		}
+		Instant now = this.clock.instant();
+		if (this.idCache.size() >= this.maxSize && !this.idCache.containsKey(registeredClient.getId())) {
+			evict(now);
+		}
+		CachedRegisteredClient cachedRegisteredClient =
+				new CachedRegisteredClient(registeredClient, now.plus(this.timeToLive));
+		this.idCache.put(registeredClient.getId(), cachedRegisteredClient);
+		this.clientIdIndex.put(registeredClient.getClientId(), registeredClient.getId());
+		// The cache may have been invalidated before the entry was added, so check again
+		if (this.generation.get() != generation && this.idCache.remove(registeredClient.getId(), cachedRegisteredClient)) {
+			removeClientIdIndex(cachedRegisteredClient);
+		}
+	}
+
+	private synchronized void evict(Instant now) {
+		// Remove the expired entries, otherwise the entry closest to expiring
+		CachedRegisteredClient oldest = null;
+		Iterator<CachedRegisteredClient> iterator = this.idCache.values().iterator();
+		while (iterator.hasNext()) {
+			CachedRegisteredClient cachedRegisteredClient = iterator.next();
+			if (cachedRegisteredClient.isExpired(now)) {
+				iterator.remove();
+				removeClientIdIndex(cachedRegisteredClient);
+			} else if (oldest == null || cachedRegisteredClient.expiresAt.isBefore(oldest.expiresAt)) {
+				oldest = cachedRegisteredClient;
+			}
+		}
+		if (this.idCache.size() >= this.maxSize && oldest != null) {
+			if (this.idCache.remove(oldest.registeredClient.getId(), oldest)) {
+				removeClientIdIndex(oldest);
+			}
+		}
+	}
+
+	private void removeClientIdIndex(CachedRegisteredClient cachedRegisteredClient) {
+		RegisteredClient registeredClient = cachedRegisteredClient.registeredClient;
+		this.clientIdIndex.remove(registeredClient.getClientId(), registeredClient.getId());
+	}
+
+	private static final class CachedRegisteredClient {
+		private final RegisteredClient registeredClient;
+		private final Instant expiresAt;
+
+		private CachedRegisteredClient(RegisteredClient registeredClient, Instant expiresAt) {
+			this.registeredClient = registeredClient;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(Instant now) {
+			return !now.isBefore(this.expiresAt);
+		}
+	}
+
+}
@@ -39,6 +39,7 @@ import org.springframework.jdbc.core.SqlParameterValue;
 import org.springframework.security.jackson2.SecurityJackson2Modules;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.server.authorization.codec.AttributesCodec;
 import org.springframework.security.oauth2.server.authorization.config.ClientSettings;
 import org.springframework.security.oauth2.server.authorization.config.TokenSettings;
 import org.springframework.security.oauth2.server.authorization.jackson2.OAuth2AuthorizationServerJackson2Module;
@@ -178,6 +179,7 @@ public class JdbcRegisteredClientRepository implements RegisteredClientRepositor
 	 */
 	public static class RegisteredClientRowMapper implements RowMapper<RegisteredClient> {
 		private ObjectMapper objectMapper = new ObjectMapper();
+		private AttributesCodec attributesCodec;
 
 		public RegisteredClientRowMapper() {
 			ClassLoader classLoader = JdbcRegisteredClientRepository.class.getClassLoader();
@@ -226,11 +228,30 @@ public class JdbcRegisteredClientRepository implements RegisteredClientRepositor
 			this.objectMapper = objectMapper;
 		}
 
+		/**
+		 * Sets the {@link AttributesCodec} used to decode the client settings and token settings.
+		 * When not set, the {@link #setObjectMapper(ObjectMapper) ObjectMapper} is used.
+		 *
+		 * @param attributesCodec the {@link AttributesCodec}
+		 * @since 0.2.0
+		 */
+		public final void setAttributesCodec(AttributesCodec attributesCodec) {
+			Assert.notNull(attributesCodec, "attributesCodec cannot be null");
+			this.attributesCodec = attributesCodec;
+		}
+
 		protected final ObjectMapper getObjectMapper() {
 			return this.objectMapper;
 		}
 
+		protected final AttributesCodec getAttributesCodec() {
+			return this.attributesCodec;
+		}
+
 		private Map<String, Object> parseMap(String data) {
+			if (this.attributesCodec != null) {
+				return this.attributesCodec.decode(data);
+			}
 			try {
 				return this.objectMapper.readValue(data, new TypeReference<Map<String, Object>>() {});
 			} catch (Exception ex) {
@@ -268,6 +289,7 @@ public class JdbcRegisteredClientRepository implements RegisteredClientRepositor
 	 */
 	public static class RegisteredClientParametersMapper implements Function<RegisteredClient, List<SqlParameterValue>> {
 		private ObjectMapper objectMapper = new ObjectMapper();
+		private AttributesCodec attributesCodec;
 
 		public RegisteredClientParametersMapper() {
 			ClassLoader classLoader = JdbcRegisteredClientRepository.class.getClassLoader();
@@ -312,11 +334,30 @@ public class JdbcRegisteredClientRepository implements RegisteredClientRepositor
 			this.objectMapper = objectMapper;
 		}
 
+		/**
+		 * Sets the {@link AttributesCodec} used to encode the client settings and token settings.
+		 * When not set, the {@link #setObjectMapper(ObjectMapper) ObjectMapper} is used.
+		 *
+		 * @param attributesCodec the {@link AttributesCodec}
+		 * @since 0.2.0
+		 */
+		public final void setAttributesCodec(AttributesCodec attributesCodec) {
+			Assert.notNull(attributesCodec, "attributesCodec cannot be null");
+			this.attributesCodec = attributesCodec;
+		}
+
 		protected final ObjectMapper getObjectMapper() {
 			return this.objectMapper;
 		}
 
+		protected final AttributesCodec getAttributesCodec() {
+			return this.attributesCodec;
+		}
+
 		private String writeMap(Map<String, Object> data) {
+			if (this.attributesCodec != null) {
+				return this.attributesCodec.encode(data);
+			}
 			try {
 				return this.objectMapper.writeValueAsString(data);
 			} catch (Exception ex) {
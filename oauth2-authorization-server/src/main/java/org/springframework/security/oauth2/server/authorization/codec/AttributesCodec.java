@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.codec;
+
+import java.util.Map;
+
+/**
+ * Implementations of this interface are responsible for encoding a {@code Map} of attributes
+ * to a {@code String} suitable for storage, and decoding it back.
+ * It is used for the attributes and token metadata of an
+ * {@link org.springframework.security.oauth2.server.authorization.OAuth2Authorization}
+ * and the settings of a {@link org.springframework.security.oauth2.server.authorization.client.RegisteredClient}.
+ *
+ * @since 0.2.0
+ * @see JacksonAttributesCodec
+ * @see BinaryAttributesCodec
+ */
+public interface AttributesCodec {
+
+	/**
+	 * Encodes the attributes.
+	 *
+	 * @param attributes the attributes
+	 * @return the encoded attributes
+	 * @throws IllegalArgumentException if the attributes could not be encoded
+	 */
+	String encode(Map<String, Object> attributes);
+
+	/**
+	 * Decodes the attributes.
+	 *
+	 * @param data the encoded attributes
+	 * @return the attributes
+	 * @throws IllegalArgumentException if the attributes could not be decoded
+	 */
+	Map<String, Object> decode(String data);
+
+}
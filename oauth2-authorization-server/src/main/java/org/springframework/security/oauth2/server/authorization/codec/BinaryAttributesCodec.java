@@ -0,0 +1,393 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link AttributesCodec} that encodes the attributes in a compact binary format.
+ *
+ * <p>
+ * Values of the types commonly found in the attributes and token metadata of an
+ * {@link org.springframework.security.oauth2.server.authorization.OAuth2Authorization}
+ * and in the settings of a {@link org.springframework.security.oauth2.server.authorization.client.RegisteredClient},
+ * such as {@link OAuth2AuthorizationRequest}, {@link UsernamePasswordAuthenticationToken},
+ * claim maps, {@link Duration} and {@link SignatureAlgorithm}, are written with dedicated encoders.
+ * Any other value is delegated to the fallback {@link AttributesCodec}.
+ *
+ * <p>
+ * The encoded data is prefixed with {@code b1:}. Data without the prefix is decoded
+ * by the fallback {@link AttributesCodec}, which allows data previously written
+ * in JSON to be read and transparently rewritten in the binary format on the next save.
+ *
+ * @since 0.2.0
+ * @see AttributesCodec
+ * @see JacksonAttributesCodec
+ */
+public final class BinaryAttributesCodec implements AttributesCodec {
+	private static final String PREFIX = "b1:";
+	private static final String FALLBACK_VALUE_KEY = "value";
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int TRUE = 2;
+	private static final int FALSE = 3;
+	private static final int INTEGER = 4;
+	private static final int LONG = 5;
+	private static final int DOUBLE = 6;
+	private static final int INSTANT = 7;
+	private static final int DURATION = 8;
+	private static final int URL = 9;
+	private static final int LIST = 10;
+	private static final int SET = 11;
+	private static final int MAP = 12;
+	private static final int SIGNATURE_ALGORITHM = 13;
+	private static final int AUTHORIZATION_REQUEST = 14;
+	private static final int USERNAME_PASSWORD_AUTHENTICATION = 15;
+	private static final int FALLBACK = 127;
+
+	private final AttributesCodec fallbackCodec;
+
+	/**
+	 * Constructs a {@code BinaryAttributesCodec} using a {@link JacksonAttributesCodec} as the fallback.
+	 */
+	public BinaryAttributesCodec() {
+		this(new JacksonAttributesCodec());
+	}
+
+	/**
+	 * Constructs a {@code BinaryAttributesCodec} using the provided parameters.
+	 *
+	 * @param fallbackCodec the codec used for values without a dedicated encoder and for data not in the binary format
+	 */
+	public BinaryAttributesCodec(AttributesCodec fallbackCodec) {
+		Assert.notNull(fallbackCodec, "fallbackCodec cannot be null");
+		this.fallbackCodec = fallbackCodec;
+	}
+
+	@Override
+	public String encode(Map<String, Object> attributes) {
+		Assert.notNull(attributes, "attributes cannot be null");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeMap(out, attributes);
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+		return PREFIX + Base64.getEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	@Override
+	public Map<String, Object> decode(String data) {
+		Assert.notNull(data, "data cannot be null");
+		if (!data.startsWith(PREFIX)) {
+			return this.fallbackCodec.decode(data);
+		}
+		byte[] bytes = Base64.getDecoder().decode(data.substring(PREFIX.length()));
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			return readMap(in);
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	private void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Instant) {
+			out.writeByte(INSTANT);
+			out.writeLong(((Instant) value).getEpochSecond());
+			out.writeInt(((Instant) value).getNano());
+		} else if (value instanceof Duration) {
+			out.writeByte(DURATION);
+			out.writeLong(((Duration) value).getSeconds());
+			out.writeInt(((Duration) value).getNano());
+		} else if (value instanceof URL) {
+			out.writeByte(URL);
+			writeString(out, ((URL) value).toExternalForm());
+		} else if (value instanceof List) {
+			out.writeByte(LIST);
+			writeCollection(out, (List<?>) value);
+		} else if (value instanceof Set) {
+			out.writeByte(SET);
+			writeCollection(out, (Set<?>) value);
+		} else if (value instanceof Map && hasStringKeys((Map<?, ?>) value)) {
+			out.writeByte(MAP);
+			writeMap(out, (Map<?, ?>) value);
+		} else if (value instanceof SignatureAlgorithm) {
+			out.writeByte(SIGNATURE_ALGORITHM);
+			writeString(out, ((SignatureAlgorithm) value).name());
+		} else if (value instanceof OAuth2AuthorizationRequest && isSupported((OAuth2AuthorizationRequest) value)) {
+			out.writeByte(AUTHORIZATION_REQUEST);
+			writeAuthorizationRequest(out, (OAuth2AuthorizationRequest) value);
+		} else if (value.getClass() == UsernamePasswordAuthenticationToken.class &&
+				isSupported((UsernamePasswordAuthenticationToken) value)) {
+			out.writeByte(USERNAME_PASSWORD_AUTHENTICATION);
+			writeAuthentication(out, (UsernamePasswordAuthenticationToken) value);
+		} else {
+			out.writeByte(FALLBACK);
+			Map<String, Object> wrapper = new HashMap<>();
+			wrapper.put(FALLBACK_VALUE_KEY, value);
+			writeString(out, this.fallbackCodec.encode(wrapper));
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case INSTANT:
+				return Instant.ofEpochSecond(in.readLong(), in.readInt());
+			case DURATION:
+				return Duration.ofSeconds(in.readLong(), in.readInt());
+			case URL:
+				return new URL(readString(in));
+			case LIST:
+				return readCollection(in, new ArrayList<>());
+			case SET:
+				return readCollection(in, new LinkedHashSet<>());
+			case MAP:
+				return readMap(in);
+			case SIGNATURE_ALGORITHM:
+				return SignatureAlgorithm.valueOf(readString(in));
+			case AUTHORIZATION_REQUEST:
+				return readAuthorizationRequest(in);
+			case USERNAME_PASSWORD_AUTHENTICATION:
+				return readAuthentication(in);
+			case FALLBACK:
+				return this.fallbackCodec.decode(readString(in)).get(FALLBACK_VALUE_KEY);
+			default:
+				throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	private void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+		writeLength(out, map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			writeString(out, (String) entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+	}
+
+	private Map<String, Object> readMap(DataInputStream in) throws IOException {
+		int size = readLength(in);
+		Map<String, Object> map = new LinkedHashMap<>(capacity(size));
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			map.put(key, readValue(in));
+		}
+		return map;
+	}
+
+	private void writeCollection(DataOutputStream out, Collection<?> collection) throws IOException {
+		writeLength(out, collection.size());
+		for (Object value : collection) {
+			writeValue(out, value);
+		}
+	}
+
+	private <C extends Collection<Object>> C readCollection(DataInputStream in, C collection) throws IOException {
+		int size = readLength(in);
+		for (int i = 0; i < size; i++) {
+			collection.add(readValue(in));
+		}
+		return collection;
+	}
+
+	private void writeAuthorizationRequest(DataOutputStream out, OAuth2AuthorizationRequest authorizationRequest)
+			throws IOException {
+		writeString(out, authorizationRequest.getGrantType().getValue());
+		writeValue(out, authorizationRequest.getAuthorizationUri());
+		writeValue(out, authorizationRequest.getClientId());
+		writeValue(out, authorizationRequest.getRedirectUri());
+		writeCollection(out, authorizationRequest.getScopes());
+		writeValue(out, authorizationRequest.getState());
+		writeMap(out, authorizationRequest.getAdditionalParameters());
+		writeValue(out, authorizationRequest.getAuthorizationRequestUri());
+		writeMap(out, authorizationRequest.getAttributes());
+	}
+
+	@SuppressWarnings("unchecked")
+	private OAuth2AuthorizationRequest readAuthorizationRequest(DataInputStream in) throws IOException {
+		String grantType = readString(in);
+		OAuth2AuthorizationRequest.Builder builder;
+		if (AuthorizationGrantType.AUTHORIZATION_CODE.getValue().equals(grantType)) {
+			builder = OAuth2AuthorizationRequest.authorizationCode();
+		} else if (AuthorizationGrantType.IMPLICIT.getValue().equals(grantType)) {
+			builder = OAuth2AuthorizationRequest.implicit();
+		} else {
+			throw new IOException("Invalid authorizationGrantType " + grantType);
+		}
+		builder.authorizationUri((String) readValue(in));
+		builder.clientId((String) readValue(in));
+		builder.redirectUri((String) readValue(in));
+		Set<String> scopes = (Set<String>) (Set<?>) readCollection(in, new LinkedHashSet<>());
+		builder.scopes(scopes);
+		builder.state((String) readValue(in));
+		builder.additionalParameters(readMap(in));
+		builder.authorizationRequestUri((String) readValue(in));
+		builder.attributes(readMap(in));
+		return builder.build();
+	}
+
+	private void writeAuthentication(DataOutputStream out, UsernamePasswordAuthenticationToken authentication)
+			throws IOException {
+		out.writeBoolean(authentication.isAuthenticated());
+		writeValue(out, authentication.getPrincipal());
+		writeValue(out, authentication.getCredentials());
+		writeLength(out, authentication.getAuthorities().size());
+		for (GrantedAuthority authority : authentication.getAuthorities()) {
+			writeString(out, authority.getAuthority());
+		}
+		writeValue(out, authentication.getDetails());
+	}
+
+	private UsernamePasswordAuthenticationToken readAuthentication(DataInputStream in) throws IOException {
+		boolean authenticated = in.readBoolean();
+		Object principal = readValue(in);
+		Object credentials = readValue(in);
+		int size = readLength(in);
+		List<GrantedAuthority> authorities = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			authorities.add(new SimpleGrantedAuthority(readString(in)));
+		}
+		UsernamePasswordAuthenticationToken authentication = authenticated ?
+				new UsernamePasswordAuthenticationToken(principal, credentials, authorities) :
+				new UsernamePasswordAuthenticationToken(principal, credentials);
+		authentication.setDetails(readValue(in));
+		return authentication;
+	}
+
+	private static boolean isSupported(OAuth2AuthorizationRequest authorizationRequest) {
+		AuthorizationGrantType grantType = authorizationRequest.getGrantType();
+		return AuthorizationGrantType.AUTHORIZATION_CODE.equals(grantType) ||
+				AuthorizationGrantType.IMPLICIT.equals(grantType);
+	}
+
+	private static boolean isSupported(UsernamePasswordAuthenticationToken authentication) {
+		if (!authentication.isAuthenticated() && !authentication.getAuthorities().isEmpty()) {
+			return false;
+		}
+		for (GrantedAuthority authority : authentication.getAuthorities()) {
+			if (authority.getClass() != SimpleGrantedAuthority.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasStringKeys(Map<?, ?> map) {
+		for (Object key : map.keySet()) {
+			if (!(key instanceof String)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeLength(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeLength(DataOutputStream out, int length) throws IOException {
+		// Unsigned variable-length encoding, 7 bits per byte
+		while ((length & ~0x7F) != 0) {
+			out.writeByte((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (length < 0) {
+					throw new IOException("Invalid length");
+				}
+				return length;
+			}
+		}
+		throw new IOException("Invalid length");
+	}
+
+	private static int capacity(int size) {
+		return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.codec;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.security.jackson2.SecurityJackson2Modules;
+import org.springframework.security.oauth2.server.authorization.jackson2.OAuth2AuthorizationServerJackson2Module;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link AttributesCodec} that encodes the attributes as JSON using Jackson.
+ * This is the format used by default.
+ *
+ * @since 0.2.0
+ * @see AttributesCodec
+ * @see OAuth2AuthorizationServerJackson2Module
+ */
+public final class JacksonAttributesCodec implements AttributesCodec {
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * Constructs a {@code JacksonAttributesCodec} using an {@code ObjectMapper} configured with
+	 * the {@link SecurityJackson2Modules#getModules(ClassLoader) security modules} and
+	 * the {@link OAuth2AuthorizationServerJackson2Module}.
+	 */
+	public JacksonAttributesCodec() {
+		this.objectMapper = new ObjectMapper();
+		ClassLoader classLoader = JacksonAttributesCodec.class.getClassLoader();
+		List<Module> securityModules = SecurityJackson2Modules.getModules(classLoader);
+		this.objectMapper.registerModules(securityModules);
+		this.objectMapper.registerModule(new OAuth2AuthorizationServerJackson2Module());
+	}
+
+	/**
+	 * Constructs a {@code JacksonAttributesCodec} using the provided parameters.
+	 *
+	 * @param objectMapper the {@code ObjectMapper}
+	 */
+	public JacksonAttributesCodec(ObjectMapper objectMapper) {
+		Assert.notNull(objectMapper, "objectMapper cannot be null");
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public String encode(Map<String, Object> attributes) {
+		try {
+			return this.objectMapper.writeValueAsString(attributes);
+		} catch (Exception ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public Map<String, Object> decode(String data) {
+		try {
+			return this.objectMapper.readValue(data, new TypeReference<Map<String, Object>>() {});
+		} catch (Exception ex) {
+			throw new IllegalArgumentException(ex.getMessage(), ex);
+		}
+	}
+
+}
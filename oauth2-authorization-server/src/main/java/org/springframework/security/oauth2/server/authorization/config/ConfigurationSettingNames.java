@@ -15,6 +15,7 @@
  */
 package org.springframework.security.oauth2.server.authorization.config;
 
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 
@@ -94,6 +95,11 @@ public final class ConfigurationSettingNames {
 		 */
 		public static final String OIDC_CLIENT_REGISTRATION_ENDPOINT = PROVIDER_SETTINGS_NAMESPACE.concat("oidc-client-registration-endpoint");
 
+		/**
+		 * Set the {@link SignatureAlgorithm JWS} algorithms supported by the Provider for signing the {@link OidcIdToken ID Token}.
+		 */
+		public static final String ID_TOKEN_SIGNING_ALGORITHMS = PROVIDER_SETTINGS_NAMESPACE.concat("id-token-signing-algorithms");
+
 		private Provider() {
 		}
 
@@ -121,11 +127,21 @@ public final class ConfigurationSettingNames {
 		 */
 		public static final String REFRESH_TOKEN_TIME_TO_LIVE = TOKEN_SETTINGS_NAMESPACE.concat("refresh-token-time-to-live");
 
+		/**
+		 * Set the {@link SignatureAlgorithm JWS} algorithm for signing an access token.
+		 */
+		public static final String ACCESS_TOKEN_SIGNATURE_ALGORITHM = TOKEN_SETTINGS_NAMESPACE.concat("access-token-signature-algorithm");
+
 		/**
 		 * Set the {@link SignatureAlgorithm JWS} algorithm for signing the {@link OidcIdToken ID Token}.
 		 */
 		public static final String ID_TOKEN_SIGNATURE_ALGORITHM = TOKEN_SETTINGS_NAMESPACE.concat("id-token-signature-algorithm");
 
+		/**
+		 * Set the {@link OAuth2TokenFormat token format} for an access token.
+		 */
+		public static final String ACCESS_TOKEN_FORMAT = TOKEN_SETTINGS_NAMESPACE.concat("access-token-format");
+
 		private Token() {
 		}
 
@@ -15,8 +15,13 @@
  */
 package org.springframework.security.oauth2.server.authorization.config;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.util.Assert;
 
 /**
@@ -97,6 +102,17 @@ public final class ProviderSettings extends AbstractSettings {
 		return getSetting(ConfigurationSettingNames.Provider.OIDC_CLIENT_REGISTRATION_ENDPOINT);
 	}
 
+	/**
+	 * Returns the {@link SignatureAlgorithm JWS} algorithms supported for signing the {@link OidcIdToken ID Token},
+	 * which are advertised in the OpenID Provider Configuration. The default is {@link SignatureAlgorithm#RS256 RS256}.
+	 *
+	 * @return the {@link SignatureAlgorithm JWS} algorithms supported for signing the {@link OidcIdToken ID Token}
+	 * @since 0.2.0
+	 */
+	public List<SignatureAlgorithm> getIdTokenSigningAlgorithms() {
+		return getSetting(ConfigurationSettingNames.Provider.ID_TOKEN_SIGNING_ALGORITHMS);
+	}
+
 	/**
 	 * Constructs a new {@link Builder} with the default settings.
 	 *
@@ -109,7 +125,8 @@ public final class ProviderSettings extends AbstractSettings {
 				.jwkSetEndpoint("/oauth2/jwks")
 				.tokenRevocationEndpoint("/oauth2/revoke")
 				.tokenIntrospectionEndpoint("/oauth2/introspect")
-				.oidcClientRegistrationEndpoint("/connect/register");
+				.oidcClientRegistrationEndpoint("/connect/register")
+				.idTokenSigningAlgorithms(SignatureAlgorithm.RS256);
 	}
 
 	/**
@@ -202,6 +219,22 @@ public final class ProviderSettings extends AbstractSettings {
 			return setting(ConfigurationSettingNames.Provider.OIDC_CLIENT_REGISTRATION_ENDPOINT, oidcClientRegistrationEndpoint);
 		}
 
+		/**
+		 * Sets the {@link SignatureAlgorithm JWS} algorithms supported for signing the {@link OidcIdToken ID Token}.
+		 * The {@code JwtEncoder} must have a signing key for each algorithm, and the ID Token of a client
+		 * is only issued if its {@link TokenSettings#getIdTokenSignatureAlgorithm()} is one of them.
+		 *
+		 * @param idTokenSigningAlgorithms the {@link SignatureAlgorithm JWS} algorithms supported for signing the {@link OidcIdToken ID Token}
+		 * @return the {@link Builder} for further configuration
+		 * @since 0.2.0
+		 */
+		public Builder idTokenSigningAlgorithms(SignatureAlgorithm... idTokenSigningAlgorithms) {
+			Assert.notEmpty(idTokenSigningAlgorithms, "idTokenSigningAlgorithms cannot be empty");
+			Assert.noNullElements(idTokenSigningAlgorithms, "idTokenSigningAlgorithms cannot contain null elements");
+			return setting(ConfigurationSettingNames.Provider.ID_TOKEN_SIGNING_ALGORITHMS,
+					Collections.unmodifiableList(Arrays.asList(idTokenSigningAlgorithms)));
+		}
+
 		/**
 		 * Builds the {@link ProviderSettings}.
 		 *
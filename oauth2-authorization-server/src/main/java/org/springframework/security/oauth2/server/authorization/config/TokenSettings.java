@@ -18,6 +18,7 @@ package org.springframework.security.oauth2.server.authorization.config;
 import java.time.Duration;
 import java.util.Map;
 
+import org.springframework.security.oauth2.core.OAuth2TokenFormat;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.util.Assert;
@@ -45,6 +46,17 @@ public final class TokenSettings extends AbstractSettings {
 		return getSetting(ConfigurationSettingNames.Token.ACCESS_TOKEN_TIME_TO_LIVE);
 	}
 
+	/**
+	 * Returns the {@link OAuth2TokenFormat token format} for an access token.
+	 * The default is {@link OAuth2TokenFormat#SELF_CONTAINED}.
+	 *
+	 * @return the {@link OAuth2TokenFormat token format} for an access token
+	 * @since 0.2.0
+	 */
+	public OAuth2TokenFormat getAccessTokenFormat() {
+		return getSetting(ConfigurationSettingNames.Token.ACCESS_TOKEN_FORMAT);
+	}
+
 	/**
 	 * Returns {@code true} if refresh tokens are reused when returning the access token response,
 	 * or {@code false} if a new refresh token is issued. The default is {@code true}.
@@ -62,6 +74,17 @@ public final class TokenSettings extends AbstractSettings {
 		return getSetting(ConfigurationSettingNames.Token.REFRESH_TOKEN_TIME_TO_LIVE);
 	}
 
+	/**
+	 * Returns the {@link SignatureAlgorithm JWS} algorithm for signing a {@link OAuth2TokenFormat#SELF_CONTAINED self-contained}
+	 * access token. The default is {@link SignatureAlgorithm#RS256 RS256}.
+	 *
+	 * @return the {@link SignatureAlgorithm JWS} algorithm for signing an access token
+	 * @since 0.2.0
+	 */
+	public SignatureAlgorithm getAccessTokenSignatureAlgorithm() {
+		return getSetting(ConfigurationSettingNames.Token.ACCESS_TOKEN_SIGNATURE_ALGORITHM);
+	}
+
 	/**
 	 * Returns the {@link SignatureAlgorithm JWS} algorithm for signing the {@link OidcIdToken ID Token}.
 	 * The default is {@link SignatureAlgorithm#RS256 RS256}.
@@ -80,8 +103,10 @@ public final class TokenSettings extends AbstractSettings {
 	public static Builder builder() {
 		return new Builder()
 				.accessTokenTimeToLive(Duration.ofMinutes(5))
+				.accessTokenFormat(OAuth2TokenFormat.SELF_CONTAINED)
 				.reuseRefreshTokens(true)
 				.refreshTokenTimeToLive(Duration.ofMinutes(60))
+				.accessTokenSignatureAlgorithm(SignatureAlgorithm.RS256)
 				.idTokenSignatureAlgorithm(SignatureAlgorithm.RS256);
 	}
 
@@ -117,6 +142,20 @@ public final class TokenSettings extends AbstractSettings {
 			return setting(ConfigurationSettingNames.Token.ACCESS_TOKEN_TIME_TO_LIVE, accessTokenTimeToLive);
 		}
 
+		/**
+		 * Set the {@link OAuth2TokenFormat token format} for an access token.
+		 * A {@link OAuth2TokenFormat#REFERENCE reference} access token is not signed and its claims
+		 * are only available using Token Introspection.
+		 *
+		 * @param accessTokenFormat the {@link OAuth2TokenFormat token format} for an access token
+		 * @return the {@link Builder} for further configuration
+		 * @since 0.2.0
+		 */
+		public Builder accessTokenFormat(OAuth2TokenFormat accessTokenFormat) {
+			Assert.notNull(accessTokenFormat, "accessTokenFormat cannot be null");
+			return setting(ConfigurationSettingNames.Token.ACCESS_TOKEN_FORMAT, accessTokenFormat);
+		}
+
 		/**
 		 * Set to {@code true} if refresh tokens are reused when returning the access token response,
 		 * or {@code false} if a new refresh token is issued.
@@ -141,7 +180,21 @@ public final class TokenSettings extends AbstractSettings {
 		}
 
 		/**
-		 * Sets the {@link SignatureAlgorithm JWS} algorithm for signing the {@link OidcIdToken ID Token}.
+		 * Sets the {@link SignatureAlgorithm JWS} algorithm for signing a {@link OAuth2TokenFormat#SELF_CONTAINED self-contained}
+		 * access token. The {@code JwtEncoder} must have a signing key for the algorithm.
+		 *
+		 * @param accessTokenSignatureAlgorithm the {@link SignatureAlgorithm JWS} algorithm for signing an access token
+		 * @return the {@link Builder} for further configuration
+		 * @since 0.2.0
+		 */
+		public Builder accessTokenSignatureAlgorithm(SignatureAlgorithm accessTokenSignatureAlgorithm) {
+			Assert.notNull(accessTokenSignatureAlgorithm, "accessTokenSignatureAlgorithm cannot be null");
+			return setting(ConfigurationSettingNames.Token.ACCESS_TOKEN_SIGNATURE_ALGORITHM, accessTokenSignatureAlgorithm);
+		}
+
+		/**
+		 * Sets the {@link SignatureAlgorithm JWS} algorithm for signing the {@link OidcIdToken ID Token},
+		 * which must be one of the {@link ProviderSettings#getIdTokenSigningAlgorithms() supported algorithms}.
 		 *
 		 * @param idTokenSignatureAlgorithm the {@link SignatureAlgorithm JWS} algorithm for signing the {@link OidcIdToken ID Token}
 		 * @return the {@link Builder} for further configuration
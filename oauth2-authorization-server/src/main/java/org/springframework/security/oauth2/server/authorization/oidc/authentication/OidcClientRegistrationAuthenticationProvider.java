@@ -18,12 +18,15 @@ package org.springframework.security.oauth2.server.authorization.oidc.authentica
 import java.time.Instant;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.crypto.keygen.Base64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.ConcurrentBase64StringKeyGenerator;
 import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
@@ -41,6 +44,7 @@ import org.springframework.security.oauth2.server.authorization.OAuth2Authorizat
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.config.ClientSettings;
+import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 import org.springframework.security.oauth2.server.authorization.config.TokenSettings;
 import org.springframework.security.oauth2.server.resource.authentication.AbstractOAuth2TokenAuthenticationToken;
 import org.springframework.util.Assert;
@@ -57,13 +61,15 @@ import org.springframework.util.CollectionUtils;
  * @see <a href="https://openid.net/specs/openid-connect-registration-1_0.html#ClientRegistration">3. Client Registration Endpoint</a>
  */
 public final class OidcClientRegistrationAuthenticationProvider implements AuthenticationProvider {
-	private static final StringKeyGenerator CLIENT_ID_GENERATOR = new Base64StringKeyGenerator(
+	private static final StringKeyGenerator CLIENT_ID_GENERATOR = new ConcurrentBase64StringKeyGenerator(
 			Base64.getUrlEncoder().withoutPadding(), 32);
-	private static final StringKeyGenerator CLIENT_SECRET_GENERATOR = new Base64StringKeyGenerator(
+	private static final StringKeyGenerator CLIENT_SECRET_GENERATOR = new ConcurrentBase64StringKeyGenerator(
 			Base64.getUrlEncoder().withoutPadding(), 48);
 	private static final String DEFAULT_AUTHORIZED_SCOPE = "client.create";
+	private static final String INVALID_CLIENT_METADATA_ERROR_CODE = "invalid_client_metadata";
 	private final RegisteredClientRepository registeredClientRepository;
 	private final OAuth2AuthorizationService authorizationService;
+	private ProviderSettings providerSettings;
 
 	/**
 	 * Constructs an {@code OidcClientRegistrationAuthenticationProvider} using the provided parameters.
@@ -79,6 +85,11 @@ public final class OidcClientRegistrationAuthenticationProvider implements Authe
 		this.authorizationService = authorizationService;
 	}
 
+	@Autowired(required = false)
+	protected void setProviderSettings(ProviderSettings providerSettings) {
+		this.providerSettings = providerSettings;
+	}
+
 	@Override
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
 		OidcClientRegistrationAuthenticationToken clientRegistrationAuthentication =
@@ -135,7 +146,9 @@ public final class OidcClientRegistrationAuthenticationProvider implements Authe
 		return scope != null && ((Collection<String>) scope).contains(DEFAULT_AUTHORIZED_SCOPE);
 	}
 
-	private static RegisteredClient create(OidcClientRegistration clientRegistration) {
+	private RegisteredClient create(OidcClientRegistration clientRegistration) {
+		SignatureAlgorithm idTokenSignatureAlgorithm = resolveIdTokenSignatureAlgorithm(clientRegistration);
+
 		// @formatter:off
 		RegisteredClient.Builder builder = RegisteredClient.withId(UUID.randomUUID().toString())
 				.clientId(CLIENT_ID_GENERATOR.generateKey())
@@ -176,13 +189,32 @@ public final class OidcClientRegistrationAuthenticationProvider implements Authe
 						.requireAuthorizationConsent(true)
 						.build())
 				.tokenSettings(TokenSettings.builder()
-						.idTokenSignatureAlgorithm(SignatureAlgorithm.RS256)
+						.idTokenSignatureAlgorithm(idTokenSignatureAlgorithm)
 						.build());
 
 		return builder.build();
 		// @formatter:on
 	}
 
+	private SignatureAlgorithm resolveIdTokenSignatureAlgorithm(OidcClientRegistration clientRegistration) {
+		List<SignatureAlgorithm> supportedAlgorithms = this.providerSettings != null ?
+				this.providerSettings.getIdTokenSigningAlgorithms() : null;
+		if (CollectionUtils.isEmpty(supportedAlgorithms)) {
+			supportedAlgorithms = Collections.singletonList(SignatureAlgorithm.RS256);
+		}
+		String idTokenSignedResponseAlgorithm = clientRegistration.getIdTokenSignedResponseAlgorithm();
+		if (idTokenSignedResponseAlgorithm == null) {
+			return supportedAlgorithms.get(0);
+		}
+		// The requested algorithm must be advertised in the OpenID Provider Configuration
+		SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.from(idTokenSignedResponseAlgorithm);
+		if (signatureAlgorithm == null || !supportedAlgorithms.contains(signatureAlgorithm)) {
+			throw new OAuth2AuthenticationException(new OAuth2Error(INVALID_CLIENT_METADATA_ERROR_CODE,
+					"The ID Token signature algorithm " + idTokenSignedResponseAlgorithm + " is not supported.", null));
+		}
+		return signatureAlgorithm;
+	}
+
 	private static OidcClientRegistration convert(RegisteredClient registeredClient) {
 		// @formatter:off
 		OidcClientRegistration.Builder builder = OidcClientRegistration.builder()
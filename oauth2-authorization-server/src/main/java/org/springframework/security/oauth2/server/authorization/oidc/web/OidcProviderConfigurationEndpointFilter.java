@@ -15,9 +15,10 @@
  */
 package org.springframework.security.oauth2.server.authorization.oidc.web;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
-import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
 import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationResponseType;
@@ -26,9 +27,11 @@ import org.springframework.security.oauth2.core.oidc.OidcScopes;
 import org.springframework.security.oauth2.core.oidc.http.converter.OidcProviderConfigurationHttpMessageConverter;
 import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
+import org.springframework.security.oauth2.server.authorization.web.CachedResponseBody;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -36,7 +39,10 @@ import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
 
 /**
  * A {@code Filter} that processes OpenID Provider Configuration Requests.
@@ -54,10 +60,12 @@ public final class OidcProviderConfigurationEndpointFilter extends OncePerReques
 	 */
 	private static final String DEFAULT_OIDC_PROVIDER_CONFIGURATION_ENDPOINT_URI = "/.well-known/openid-configuration";
 
-	private final ProviderSettings providerSettings;
 	private final RequestMatcher requestMatcher;
 	private final OidcProviderConfigurationHttpMessageConverter providerConfigurationHttpMessageConverter =
 			new OidcProviderConfigurationHttpMessageConverter();
+	private volatile ProviderSettings providerSettings;
+	private volatile RenderedDocument renderedDocument;
+	private Duration cacheMaxAge = Duration.ofHours(1);
 
 	public OidcProviderConfigurationEndpointFilter(ProviderSettings providerSettings) {
 		Assert.notNull(providerSettings, "providerSettings cannot be null");
@@ -68,6 +76,31 @@ public final class OidcProviderConfigurationEndpointFilter extends OncePerReques
 		);
 	}
 
+	/**
+	 * Sets the {@link ProviderSettings} used to render the OpenID Provider Configuration.
+	 * The previously rendered document is discarded and re-rendered on the next request.
+	 *
+	 * @param providerSettings the provider settings
+	 * @since 0.2.0
+	 */
+	public void setProviderSettings(ProviderSettings providerSettings) {
+		Assert.notNull(providerSettings, "providerSettings cannot be null");
+		this.providerSettings = providerSettings;
+	}
+
+	/**
+	 * Sets the interval during which clients may reuse the OpenID Provider Configuration without revalidating it,
+	 * which is advertised via the {@code Cache-Control} {@code max-age} directive. The default is 1 hour.
+	 *
+	 * @param cacheMaxAge the interval during which clients may reuse the OpenID Provider Configuration without revalidating it
+	 * @since 0.2.0
+	 */
+	public void setCacheMaxAge(Duration cacheMaxAge) {
+		Assert.notNull(cacheMaxAge, "cacheMaxAge cannot be null");
+		Assert.isTrue(!cacheMaxAge.isNegative(), "cacheMaxAge cannot be negative");
+		this.cacheMaxAge = cacheMaxAge;
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
@@ -77,29 +110,71 @@ public final class OidcProviderConfigurationEndpointFilter extends OncePerReques
 			return;
 		}
 
+		// The document is rendered for a specific ProviderSettings, as a document rendered concurrently
+		// with setProviderSettings() may be stored after it
+		ProviderSettings providerSettings = this.providerSettings;
+		RenderedDocument renderedDocument = this.renderedDocument;
+		if (renderedDocument == null || renderedDocument.providerSettings != providerSettings) {
+			renderedDocument = new RenderedDocument(providerSettings, render(providerSettings));
+			this.renderedDocument = renderedDocument;
+		}
+		renderedDocument.body.write(request, response, this.cacheMaxAge);
+	}
+
+	private CachedResponseBody render(ProviderSettings providerSettings) throws IOException {
 		OidcProviderConfiguration providerConfiguration = OidcProviderConfiguration.builder()
-				.issuer(this.providerSettings.getIssuer())
-				.authorizationEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getAuthorizationEndpoint()))
-				.tokenEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getTokenEndpoint()))
+				.issuer(providerSettings.getIssuer())
+				.authorizationEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getAuthorizationEndpoint()))
+				.tokenEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getTokenEndpoint()))
 				.tokenEndpointAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC.getValue())
 				.tokenEndpointAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_POST.getValue())
-				.jwkSetUrl(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getJwkSetEndpoint()))
+				.jwkSetUrl(asUrl(providerSettings.getIssuer(), providerSettings.getJwkSetEndpoint()))
 				.responseType(OAuth2AuthorizationResponseType.CODE.getValue())
 				.grantType(AuthorizationGrantType.AUTHORIZATION_CODE.getValue())
 				.grantType(AuthorizationGrantType.CLIENT_CREDENTIALS.getValue())
 				.grantType(AuthorizationGrantType.REFRESH_TOKEN.getValue())
 				.subjectType("public")
-				.idTokenSigningAlgorithm(SignatureAlgorithm.RS256.getName())
-				.clientRegistrationEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getOidcClientRegistrationEndpoint()))
+				.idTokenSigningAlgorithms(idTokenSigningAlgorithms -> {
+					if (CollectionUtils.isEmpty(providerSettings.getIdTokenSigningAlgorithms())) {
+						idTokenSigningAlgorithms.add(SignatureAlgorithm.RS256.getName());
+					} else {
+						providerSettings.getIdTokenSigningAlgorithms().forEach(signatureAlgorithm ->
+								idTokenSigningAlgorithms.add(signatureAlgorithm.getName()));
+					}
+				})
+				.clientRegistrationEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getOidcClientRegistrationEndpoint()))
 				.scope(OidcScopes.OPENID)
 				.build();
 
-		ServletServerHttpResponse httpResponse = new ServletServerHttpResponse(response);
-		this.providerConfigurationHttpMessageConverter.write(
-				providerConfiguration, MediaType.APPLICATION_JSON, httpResponse);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		HttpHeaders headers = new HttpHeaders();
+		this.providerConfigurationHttpMessageConverter.write(providerConfiguration, MediaType.APPLICATION_JSON, new HttpOutputMessage() {
+			@Override
+			public OutputStream getBody() {
+				return body;
+			}
+
+			@Override
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+		});
+		String contentType = headers.getContentType() != null ?
+				headers.getContentType().toString() : MediaType.APPLICATION_JSON_VALUE;
+		return new CachedResponseBody(body.toByteArray(), contentType, System.currentTimeMillis());
 	}
 
 	private static String asUrl(String issuer, String endpoint) {
 		return UriComponentsBuilder.fromUriString(issuer).path(endpoint).build().toUriString();
 	}
+
+	private static final class RenderedDocument {
+		private final ProviderSettings providerSettings;
+		private final CachedResponseBody body;
+
+		private RenderedDocument(ProviderSettings providerSettings, CachedResponseBody body) {
+			this.providerSettings = providerSettings;
+			this.body = body;
+		}
+	}
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A pre-rendered response body of an endpoint serving a document which rarely changes,
+ * such as the JWK Set or the Authorization Server Metadata, which is written with a strong {@code ETag},
+ * allowing clients to issue conditional requests that are answered with {@code 304 Not Modified}.
+ *
+ * <p>
+ * <b>NOTE:</b> This class is intended for use by the endpoint filters of this project.
+ *
+ * @since 0.2.0
+ * @see NimbusJwkSetEndpointFilter
+ * @see OAuth2AuthorizationServerMetadataEndpointFilter
+ */
+public final class CachedResponseBody {
+	private final byte[] body;
+	private final String contentType;
+	private final String eTag;
+	private final long lastModified;
+
+	/**
+	 * Constructs a {@code CachedResponseBody} using the provided parameters.
+	 *
+	 * @param body the response body
+	 * @param contentType the content type of the response body
+	 * @param lastModified the time the response body was last modified, in milliseconds since the epoch,
+	 *                     or {@code -1} to not write a {@code Last-Modified} header
+	 */
+	public CachedResponseBody(byte[] body, String contentType, long lastModified) {
+		Assert.notNull(body, "body cannot be null");
+		Assert.hasText(contentType, "contentType cannot be empty");
+		this.body = body;
+		this.contentType = contentType;
+		this.eTag = createETag(body);
+		// HTTP dates have a resolution of one second
+		this.lastModified = lastModified >= 0 ? lastModified / 1000 * 1000 : -1;
+	}
+
+	/**
+	 * Returns the strong {@code ETag} of the response body.
+	 *
+	 * @return the {@code ETag} of the response body
+	 */
+	public String getETag() {
+		return this.eTag;
+	}
+
+	/**
+	 * Writes the response body, or {@code 304 Not Modified} if the request is conditional
+	 * and the response body is unchanged, along with the validators and the {@code Cache-Control} header.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param maxAge the {@code max-age} advertised to clients, where {@link Duration#ZERO} advertises {@code no-cache}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write(HttpServletRequest request, HttpServletResponse response, Duration maxAge) throws IOException {
+		response.setHeader(HttpHeaders.ETAG, this.eTag);
+		if (this.lastModified != -1) {
+			response.setDateHeader(HttpHeaders.LAST_MODIFIED, this.lastModified);
+		}
+		response.setHeader(HttpHeaders.CACHE_CONTROL, maxAge.isZero() ?
+				"no-cache" : "max-age=" + maxAge.getSeconds() + ", must-revalidate");
+		if (notModified(request)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setContentType(this.contentType);
+		response.setContentLength(this.body.length);
+		try (OutputStream outputStream = response.getOutputStream()) {
+			outputStream.write(this.body);
+		}
+	}
+
+	private boolean notModified(HttpServletRequest request) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (StringUtils.hasText(ifNoneMatch)) {
+			// If-Modified-Since is ignored when If-None-Match is present (RFC 7232 Section 3.3)
+			for (String eTag : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+				eTag = eTag.trim();
+				if (eTag.startsWith("W/")) {
+					eTag = eTag.substring(2);
+				}
+				if (eTag.equals("*") || eTag.equals(this.eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (this.lastModified == -1) {
+			return false;
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+		return ifModifiedSince != -1 && this.lastModified <= ifModifiedSince;
+	}
+
+	private static String createETag(byte[] content) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest(content)) + "\"";
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex.getMessage(), ex);
+		}
+	}
+
+}
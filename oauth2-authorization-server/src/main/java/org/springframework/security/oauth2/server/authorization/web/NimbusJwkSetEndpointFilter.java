@@ -16,13 +16,17 @@
 package org.springframework.security.oauth2.server.authorization.web;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKMatcher;
 import com.nimbusds.jose.jwk.JWKSelector;
 import com.nimbusds.jose.jwk.JWKSet;
@@ -39,6 +43,11 @@ import org.springframework.web.filter.OncePerRequestFilter;
 /**
  * A {@code Filter} that processes JWK Set requests.
  *
+ * <p>
+ * The serialized JWK Set is cached and only re-serialized when the JWK(s) provided by the
+ * {@code com.nimbusds.jose.jwk.source.JWKSource} change. The response includes a strong {@code ETag},
+ * allowing clients to issue conditional requests that are answered with {@code 304 Not Modified}.
+ *
  * @author Joe Grandja
  * @since 0.0.1
  * @see com.nimbusds.jose.jwk.source.JWKSource
@@ -54,6 +63,8 @@ public final class NimbusJwkSetEndpointFilter extends OncePerRequestFilter {
 	private final JWKSource<SecurityContext> jwkSource;
 	private final JWKSelector jwkSelector;
 	private final RequestMatcher requestMatcher;
+	private Duration refreshInterval = Duration.ZERO;
+	private volatile CachedJwkSet cachedJwkSet;
 
 	/**
 	 * Constructs a {@code NimbusJwkSetEndpointFilter} using the provided parameters.
@@ -77,6 +88,22 @@ public final class NimbusJwkSetEndpointFilter extends OncePerRequestFilter {
 		this.requestMatcher = new AntPathRequestMatcher(jwkSetEndpointUri, HttpMethod.GET.name());
 	}
 
+	/**
+	 * Sets the interval during which the cached JWK Set is served without consulting
+	 * the {@code com.nimbusds.jose.jwk.source.JWKSource}. The interval is also advertised
+	 * to clients via the {@code Cache-Control} {@code max-age} directive.
+	 * The default is {@link Duration#ZERO}, which consults the {@code JWKSource} on every request,
+	 * so newly added keys are published immediately.
+	 *
+	 * @param refreshInterval the interval during which the cached JWK Set is served without consulting the {@code JWKSource}
+	 * @since 0.2.0
+	 */
+	public void setRefreshInterval(Duration refreshInterval) {
+		Assert.notNull(refreshInterval, "refreshInterval cannot be null");
+		Assert.isTrue(!refreshInterval.isNegative(), "refreshInterval cannot be negative");
+		this.refreshInterval = refreshInterval;
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
@@ -86,17 +113,43 @@ public final class NimbusJwkSetEndpointFilter extends OncePerRequestFilter {
 			return;
 		}
 
-		JWKSet jwkSet;
+		getJwkSet().jwkSet.write(request, response, this.refreshInterval);
+	}
+
+	private CachedJwkSet getJwkSet() {
+		CachedJwkSet cachedJwkSet = this.cachedJwkSet;
+		Instant now = Instant.now();
+		if (cachedJwkSet != null && now.isBefore(cachedJwkSet.refreshedAt.plus(this.refreshInterval))) {
+			return cachedJwkSet;
+		}
+
+		List<JWK> jwks;
 		try {
-			jwkSet = new JWKSet(this.jwkSource.get(this.jwkSelector, null));
+			jwks = this.jwkSource.get(this.jwkSelector, null);
 		}
 		catch (Exception ex) {
 			throw new IllegalStateException("Failed to select the JWK(s) -> " + ex.getMessage(), ex);
 		}
 
-		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-		try (Writer writer = response.getWriter()) {
-			writer.write(jwkSet.toString());	// toString() excludes private keys
+		if (cachedJwkSet != null && cachedJwkSet.jwks.equals(jwks)) {
+			cachedJwkSet = new CachedJwkSet(cachedJwkSet.jwks, cachedJwkSet.jwkSet, now);
+		} else {
+			byte[] jwkSet = new JWKSet(jwks).toString().getBytes(StandardCharsets.UTF_8);	// toString() excludes private keys
+			cachedJwkSet = new CachedJwkSet(jwks, new CachedResponseBody(jwkSet, MediaType.APPLICATION_JSON_VALUE, -1), now);
+		}
+		this.cachedJwkSet = cachedJwkSet;
+		return cachedJwkSet;
+	}
+
+	private static final class CachedJwkSet {
+		private final List<JWK> jwks;
+		private final CachedResponseBody jwkSet;
+		private final Instant refreshedAt;
+
+		private CachedJwkSet(List<JWK> jwks, CachedResponseBody jwkSet, Instant refreshedAt) {
+			this.jwks = jwks;
+			this.jwkSet = jwkSet;
+			this.refreshedAt = refreshedAt;
 		}
 	}
 }
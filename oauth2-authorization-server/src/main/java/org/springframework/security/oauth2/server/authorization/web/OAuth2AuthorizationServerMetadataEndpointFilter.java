@@ -15,7 +15,10 @@
  */
 package org.springframework.security.oauth2.server.authorization.web;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -24,9 +27,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
-import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
 import org.springframework.security.oauth2.core.OAuth2AuthorizationServerMetadata;
@@ -54,10 +58,12 @@ public final class OAuth2AuthorizationServerMetadataEndpointFilter extends OnceP
 	 */
 	private static final String DEFAULT_OAUTH2_AUTHORIZATION_SERVER_METADATA_ENDPOINT_URI = "/.well-known/oauth-authorization-server";
 
-	private final ProviderSettings providerSettings;
 	private final RequestMatcher requestMatcher;
 	private final OAuth2AuthorizationServerMetadataHttpMessageConverter authorizationServerMetadataHttpMessageConverter =
 			new OAuth2AuthorizationServerMetadataHttpMessageConverter();
+	private volatile ProviderSettings providerSettings;
+	private volatile RenderedDocument renderedDocument;
+	private Duration cacheMaxAge = Duration.ofHours(1);
 
 	public OAuth2AuthorizationServerMetadataEndpointFilter(ProviderSettings providerSettings) {
 		Assert.notNull(providerSettings, "providerSettings cannot be null");
@@ -68,6 +74,31 @@ public final class OAuth2AuthorizationServerMetadataEndpointFilter extends OnceP
 		);
 	}
 
+	/**
+	 * Sets the {@link ProviderSettings} used to render the OAuth 2.0 Authorization Server Metadata.
+	 * The previously rendered document is discarded and re-rendered on the next request.
+	 *
+	 * @param providerSettings the provider settings
+	 * @since 0.2.0
+	 */
+	public void setProviderSettings(ProviderSettings providerSettings) {
+		Assert.notNull(providerSettings, "providerSettings cannot be null");
+		this.providerSettings = providerSettings;
+	}
+
+	/**
+	 * Sets the interval during which clients may reuse the OAuth 2.0 Authorization Server Metadata without revalidating it,
+	 * which is advertised via the {@code Cache-Control} {@code max-age} directive. The default is 1 hour.
+	 *
+	 * @param cacheMaxAge the interval during which clients may reuse the OAuth 2.0 Authorization Server Metadata without revalidating it
+	 * @since 0.2.0
+	 */
+	public void setCacheMaxAge(Duration cacheMaxAge) {
+		Assert.notNull(cacheMaxAge, "cacheMaxAge cannot be null");
+		Assert.isTrue(!cacheMaxAge.isNegative(), "cacheMaxAge cannot be negative");
+		this.cacheMaxAge = cacheMaxAge;
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
@@ -77,27 +108,52 @@ public final class OAuth2AuthorizationServerMetadataEndpointFilter extends OnceP
 			return;
 		}
 
+		// The document is rendered for a specific ProviderSettings, as a document rendered concurrently
+		// with setProviderSettings() may be stored after it
+		ProviderSettings providerSettings = this.providerSettings;
+		RenderedDocument renderedDocument = this.renderedDocument;
+		if (renderedDocument == null || renderedDocument.providerSettings != providerSettings) {
+			renderedDocument = new RenderedDocument(providerSettings, render(providerSettings));
+			this.renderedDocument = renderedDocument;
+		}
+		renderedDocument.body.write(request, response, this.cacheMaxAge);
+	}
+
+	private CachedResponseBody render(ProviderSettings providerSettings) throws IOException {
 		OAuth2AuthorizationServerMetadata authorizationServerMetadata = OAuth2AuthorizationServerMetadata.builder()
-				.issuer(this.providerSettings.getIssuer())
-				.authorizationEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getAuthorizationEndpoint()))
-				.tokenEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getTokenEndpoint()))
+				.issuer(providerSettings.getIssuer())
+				.authorizationEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getAuthorizationEndpoint()))
+				.tokenEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getTokenEndpoint()))
 				.tokenEndpointAuthenticationMethods(clientAuthenticationMethods())
-				.jwkSetUrl(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getJwkSetEndpoint()))
+				.jwkSetUrl(asUrl(providerSettings.getIssuer(), providerSettings.getJwkSetEndpoint()))
 				.responseType(OAuth2AuthorizationResponseType.CODE.getValue())
 				.grantType(AuthorizationGrantType.AUTHORIZATION_CODE.getValue())
 				.grantType(AuthorizationGrantType.CLIENT_CREDENTIALS.getValue())
 				.grantType(AuthorizationGrantType.REFRESH_TOKEN.getValue())
-				.tokenRevocationEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getTokenRevocationEndpoint()))
+				.tokenRevocationEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getTokenRevocationEndpoint()))
 				.tokenRevocationEndpointAuthenticationMethods(clientAuthenticationMethods())
-				.tokenIntrospectionEndpoint(asUrl(this.providerSettings.getIssuer(), this.providerSettings.getTokenIntrospectionEndpoint()))
+				.tokenIntrospectionEndpoint(asUrl(providerSettings.getIssuer(), providerSettings.getTokenIntrospectionEndpoint()))
 				.tokenIntrospectionEndpointAuthenticationMethods(clientAuthenticationMethods())
 				.codeChallengeMethod("plain")
 				.codeChallengeMethod("S256")
 				.build();
 
-		ServletServerHttpResponse httpResponse = new ServletServerHttpResponse(response);
-		this.authorizationServerMetadataHttpMessageConverter.write(
-				authorizationServerMetadata, MediaType.APPLICATION_JSON, httpResponse);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		HttpHeaders headers = new HttpHeaders();
+		this.authorizationServerMetadataHttpMessageConverter.write(authorizationServerMetadata, MediaType.APPLICATION_JSON, new HttpOutputMessage() {
+			@Override
+			public OutputStream getBody() {
+				return body;
+			}
+
+			@Override
+			public HttpHeaders getHeaders() {
+				return headers;
+			}
+		});
+		String contentType = headers.getContentType() != null ?
+				headers.getContentType().toString() : MediaType.APPLICATION_JSON_VALUE;
+		return new CachedResponseBody(body.toByteArray(), contentType, System.currentTimeMillis());
 	}
 
 	private static Consumer<List<String>> clientAuthenticationMethods() {
@@ -111,4 +167,14 @@ public final class OAuth2AuthorizationServerMetadataEndpointFilter extends OnceP
 		return UriComponentsBuilder.fromUriString(issuer).path(endpoint).toUriString();
 	}
 
+	private static final class RenderedDocument {
+		private final ProviderSettings providerSettings;
+		private final CachedResponseBody body;
+
+		private RenderedDocument(ProviderSettings providerSettings, CachedResponseBody body) {
+			this.providerSettings = providerSettings;
+			this.body = body;
+		}
+	}
+
 }
@@ -0,0 +1 @@
+ALTER TABLE oauth2_authorization ADD COLUMN authorization_code_consumed_at timestamp DEFAULT NULL;
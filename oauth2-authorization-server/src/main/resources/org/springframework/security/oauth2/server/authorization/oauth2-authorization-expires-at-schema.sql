@@ -0,0 +1,8 @@
+ALTER TABLE oauth2_authorization ADD COLUMN expires_at timestamp DEFAULT NULL;
+CREATE INDEX oauth2_authorization_expires_at_idx ON oauth2_authorization (expires_at);
+UPDATE oauth2_authorization SET expires_at = authorization_code_expires_at WHERE authorization_code_value IS NOT NULL AND authorization_code_expires_at IS NOT NULL AND (expires_at IS NULL OR expires_at < authorization_code_expires_at);
+UPDATE oauth2_authorization SET expires_at = access_token_expires_at WHERE access_token_value IS NOT NULL AND access_token_expires_at IS NOT NULL AND (expires_at IS NULL OR expires_at < access_token_expires_at);
+UPDATE oauth2_authorization SET expires_at = oidc_id_token_expires_at WHERE oidc_id_token_value IS NOT NULL AND oidc_id_token_expires_at IS NOT NULL AND (expires_at IS NULL OR expires_at < oidc_id_token_expires_at);
+UPDATE oauth2_authorization SET expires_at = refresh_token_expires_at WHERE refresh_token_value IS NOT NULL AND refresh_token_expires_at IS NOT NULL AND (expires_at IS NULL OR expires_at < refresh_token_expires_at);
+UPDATE oauth2_authorization SET expires_at = NULL WHERE (authorization_code_value IS NOT NULL AND authorization_code_expires_at IS NULL) OR (access_token_value IS NOT NULL AND access_token_expires_at IS NULL) OR (oidc_id_token_value IS NOT NULL AND oidc_id_token_expires_at IS NULL) OR (refresh_token_value IS NOT NULL AND refresh_token_expires_at IS NULL);
+UPDATE oauth2_authorization SET expires_at = CURRENT_TIMESTAMP WHERE authorization_code_value IS NULL AND access_token_value IS NULL AND oidc_id_token_value IS NULL AND refresh_token_value IS NULL;
@@ -0,0 +1,28 @@
+CREATE TABLE oauth2_authorization_entry (
+    id varchar(100) NOT NULL,
+    registered_client_id varchar(100) NOT NULL,
+    principal_name varchar(200) NOT NULL,
+    authorization_grant_type varchar(100) NOT NULL,
+    attributes varchar(4000) DEFAULT NULL,
+    state varchar(500) DEFAULT NULL,
+    content_digest varchar(64) NOT NULL,
+    version bigint DEFAULT 0 NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE INDEX oauth2_authorization_entry_state_idx ON oauth2_authorization_entry (state);
+CREATE TABLE oauth2_authorization_token (
+    authorization_id varchar(100) NOT NULL,
+    token_type varchar(100) NOT NULL,
+    token_value blob NOT NULL,
+    token_value_digest varchar(64) NOT NULL,
+    issued_at timestamp DEFAULT NULL,
+    expires_at timestamp DEFAULT NULL,
+    metadata varchar(2000) DEFAULT NULL,
+    access_token_type varchar(100) DEFAULT NULL,
+    access_token_scopes varchar(1000) DEFAULT NULL,
+    content_digest varchar(64) NOT NULL,
+    version bigint DEFAULT 0 NOT NULL,
+    PRIMARY KEY (authorization_id, token_type),
+    FOREIGN KEY (authorization_id) REFERENCES oauth2_authorization_entry (id)
+);
+CREATE INDEX oauth2_authorization_token_value_digest_idx ON oauth2_authorization_token (token_value_digest);
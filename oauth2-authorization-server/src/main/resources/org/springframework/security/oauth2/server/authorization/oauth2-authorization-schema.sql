@@ -25,3 +25,5 @@ CREATE TABLE oauth2_authorization (
     refresh_token_metadata varchar(2000) DEFAULT NULL,
     PRIMARY KEY (id)
 );
+CREATE INDEX oauth2_authorization_principal_name_idx ON oauth2_authorization (principal_name);
+CREATE INDEX oauth2_authorization_registered_client_id_idx ON oauth2_authorization (registered_client_id);
@@ -0,0 +1,7 @@
+ALTER TABLE oauth2_authorization ADD COLUMN authorization_code_value_digest varchar(64) DEFAULT NULL;
+ALTER TABLE oauth2_authorization ADD COLUMN access_token_value_digest varchar(64) DEFAULT NULL;
+ALTER TABLE oauth2_authorization ADD COLUMN refresh_token_value_digest varchar(64) DEFAULT NULL;
+CREATE INDEX oauth2_authorization_state_idx ON oauth2_authorization (state);
+CREATE INDEX oauth2_authorization_code_digest_idx ON oauth2_authorization (authorization_code_value_digest);
+CREATE INDEX oauth2_authorization_access_token_digest_idx ON oauth2_authorization (access_token_value_digest);
+CREATE INDEX oauth2_authorization_refresh_token_digest_idx ON oauth2_authorization (refresh_token_value_digest);
@@ -0,0 +1 @@
+ALTER TABLE oauth2_authorization ADD COLUMN version bigint DEFAULT 0 NOT NULL;
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.crypto.keygen;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Tests for {@link ConcurrentBase64StringKeyGenerator}.
+ */
+public class ConcurrentBase64StringKeyGeneratorTests {
+
+	@Test
+	public void constructorWhenEncoderNullThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new ConcurrentBase64StringKeyGenerator(null))
+				.withMessage("encoder cannot be null");
+	}
+
+	@Test
+	public void constructorWhenKeyLengthLessThan32ThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new ConcurrentBase64StringKeyGenerator(Base64.getEncoder(), 31))
+				.withMessage("keyLength must be greater than or equal to 32");
+	}
+
+	@Test
+	public void setReseedIntervalWhenNullThenThrowIllegalArgumentException() {
+		ConcurrentBase64StringKeyGenerator keyGenerator = new ConcurrentBase64StringKeyGenerator(Base64.getEncoder());
+		assertThatIllegalArgumentException().isThrownBy(() -> keyGenerator.setReseedInterval(null))
+				.withMessage("reseedInterval cannot be null");
+	}
+
+	@Test
+	public void setReseedIntervalWhenZeroThenThrowIllegalArgumentException() {
+		ConcurrentBase64StringKeyGenerator keyGenerator = new ConcurrentBase64StringKeyGenerator(Base64.getEncoder());
+		assertThatIllegalArgumentException().isThrownBy(() -> keyGenerator.setReseedInterval(Duration.ZERO))
+				.withMessage("reseedInterval must be greater than Duration.ZERO");
+	}
+
+	@Test
+	public void generateKeyWhenKeyLengthThenDecodedKeyOfKeyLength() {
+		ConcurrentBase64StringKeyGenerator keyGenerator = new ConcurrentBase64StringKeyGenerator(
+				Base64.getUrlEncoder().withoutPadding(), 96);
+		String key = keyGenerator.generateKey();
+		assertThat(Base64.getUrlDecoder().decode(key)).hasSize(96);
+	}
+
+	@Test
+	public void generateKeyWhenReseededThenKeysUnique() {
+		ConcurrentBase64StringKeyGenerator keyGenerator = new ConcurrentBase64StringKeyGenerator(Base64.getEncoder());
+		keyGenerator.setReseedInterval(Duration.ofNanos(1));
+		String key = keyGenerator.generateKey();
+		assertThat(keyGenerator.generateKey()).isNotEqualTo(key);
+	}
+
+	@Test
+	public void generateKeyWhenConcurrentThenKeysUnique() throws Exception {
+		ConcurrentBase64StringKeyGenerator keyGenerator = new ConcurrentBase64StringKeyGenerator(Base64.getEncoder());
+		Set<String> keys = ConcurrentHashMap.newKeySet();
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				tasks.add(() -> {
+					for (int j = 0; j < 1000; j++) {
+						keys.add(keyGenerator.generateKey());
+					}
+					return null;
+				});
+			}
+			for (Future<Void> future : executorService.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		finally {
+			executorService.shutdown();
+		}
+		assertThat(keys).hasSize(4000);
+	}
+
+}
@@ -17,12 +17,21 @@ package org.springframework.security.oauth2.jwt;
 
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.ECKey;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSelector;
@@ -32,6 +41,7 @@ import com.nimbusds.jose.jwk.OctetSequenceKey;
 import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.SignedJWT;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -39,6 +49,7 @@ import org.mockito.stubbing.Answer;
 
 import org.springframework.security.oauth2.jose.TestJwks;
 import org.springframework.security.oauth2.jose.TestKeys;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -48,6 +59,8 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * Tests for {@link NimbusJwsEncoder}.
@@ -75,6 +88,25 @@ public class NimbusJwsEncoderTests {
 				.withMessage("jwkSource cannot be null");
 	}
 
+	@Test
+	public void setJwkSelectionRefreshIntervalWhenNullThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> this.jwsEncoder.setJwkSelectionRefreshInterval(null))
+				.withMessage("jwkSelectionRefreshInterval cannot be null");
+	}
+
+	@Test
+	public void setJwkSelectionRefreshIntervalWhenNegativeThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> this.jwsEncoder.setJwkSelectionRefreshInterval(Duration.ofSeconds(-1)))
+				.withMessage("jwkSelectionRefreshInterval cannot be negative");
+	}
+
+	@Test
+	public void setJwtIdGeneratorWhenNullThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException().isThrownBy(() -> this.jwsEncoder.setJwtIdGenerator(null))
+				.withMessage("jwtIdGenerator cannot be null");
+	}
+
 	@Test
 	public void encodeWhenHeadersNullThenThrowIllegalArgumentException() {
 		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet().build();
@@ -186,6 +218,89 @@ public class NimbusJwsEncoderTests {
 		jwtDecoder.decode(encodedJws.getTokenValue());
 	}
 
+	@Test
+	public void encodeWhenJwtIdGeneratorSetThenUsed() throws Exception {
+		this.jwkList.add(TestJwks.DEFAULT_RSA_JWK);
+		this.jwsEncoder.setJwtIdGenerator(() -> "jti-1");
+
+		JoseHeader joseHeader = TestJoseHeaders.joseHeader().build();
+		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet().build();
+
+		assertThat(this.jwsEncoder.encode(joseHeader, jwtClaimsSet).getId()).isEqualTo("jti-1");
+		this.jwsEncoder.setDirectSerializationEnabled(true);
+		assertThat(this.jwsEncoder.encode(joseHeader, jwtClaimsSet).getId()).isEqualTo("jti-1");
+	}
+
+	@Test
+	public void encodeWhenKeysOfDifferentTypesThenKeySelectedByAlgorithm() throws Exception {
+		RSAKey rsaJwk = TestJwks.DEFAULT_RSA_JWK;
+		ECKey ecJwk = TestJwks.DEFAULT_EC_JWK;
+		this.jwkList.add(rsaJwk);
+		this.jwkList.add(ecJwk);
+
+		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet().build();
+
+		Jwt rsaEncodedJws = this.jwsEncoder.encode(TestJoseHeaders.joseHeader(SignatureAlgorithm.RS256).build(), jwtClaimsSet);
+		assertThat(rsaEncodedJws.getHeaders().get(JoseHeaderNames.KID)).isEqualTo(rsaJwk.getKeyID());
+		assertThat(SignedJWT.parse(rsaEncodedJws.getTokenValue()).verify(new RSASSAVerifier(rsaJwk))).isTrue();
+
+		Jwt ecEncodedJws = this.jwsEncoder.encode(TestJoseHeaders.joseHeader(SignatureAlgorithm.ES256).build(), jwtClaimsSet);
+		assertThat(ecEncodedJws.getHeaders().get(JoseHeaderNames.KID)).isEqualTo(ecJwk.getKeyID());
+		assertThat(SignedJWT.parse(ecEncodedJws.getTokenValue()).verify(new ECDSAVerifier(ecJwk))).isTrue();
+	}
+
+	@Test
+	public void encodeWhenDirectSerializationEnabledThenSameAsNimbusSerialization() throws Exception {
+		RSAKey rsaJwk = TestJwks.DEFAULT_RSA_JWK;
+		this.jwkList.add(rsaJwk);
+
+		JoseHeader joseHeader = JoseHeader.withAlgorithm(SignatureAlgorithm.RS256).build();
+		Map<String, Object> address = new LinkedHashMap<>();
+		address.put("street_address", "\"Main\" St\\ 1\n");
+		address.put("locality", "M\u00fcnchen \u20ac \ud83d\ude00");
+		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet()
+				.claim("scope", new LinkedHashSet<>(Arrays.asList("scope1", "scope2")))
+				.claim("address", address)
+				.claim("auth_time", Date.from(Instant.now()))
+				.claim("count", 42L)
+				.claim("verified", true)
+				.build();
+
+		Jwt nimbusEncodedJws = this.jwsEncoder.encode(joseHeader, jwtClaimsSet);
+		this.jwsEncoder.setDirectSerializationEnabled(true);
+		Jwt encodedJws = this.jwsEncoder.encode(joseHeader, jwtClaimsSet);
+		Jwt cachedHeaderEncodedJws = this.jwsEncoder.encode(joseHeader, jwtClaimsSet);
+
+		SignedJWT nimbusSignedJwt = SignedJWT.parse(nimbusEncodedJws.getTokenValue());
+		SignedJWT signedJwt = SignedJWT.parse(encodedJws.getTokenValue());
+		assertThat(signedJwt.verify(new RSASSAVerifier(rsaJwk))).isTrue();
+		assertThat(signedJwt.getHeader().toJSONObject()).isEqualTo(nimbusSignedJwt.getHeader().toJSONObject());
+		Map<String, Object> claims = new HashMap<>(signedJwt.getJWTClaimsSet().toJSONObject());
+		Map<String, Object> nimbusClaims = new HashMap<>(nimbusSignedJwt.getJWTClaimsSet().toJSONObject());
+		assertThat(claims.remove(JwtClaimNames.JTI)).isEqualTo(encodedJws.getId());
+		assertThat(nimbusClaims.remove(JwtClaimNames.JTI)).isEqualTo(nimbusEncodedJws.getId());
+		assertThat(claims).isEqualTo(nimbusClaims);
+		assertThat(encodedJws.getHeaders()).isEqualTo(nimbusEncodedJws.getHeaders());
+		assertThat(encodedJws.getId()).isNotEqualTo(cachedHeaderEncodedJws.getId());
+		assertThat(SignedJWT.parse(cachedHeaderEncodedJws.getTokenValue()).verify(new RSASSAVerifier(rsaJwk))).isTrue();
+	}
+
+	@Test
+	public void encodeWhenDirectSerializationEnabledAndCustomHeadersThenNimbusSerialization() throws Exception {
+		RSAKey rsaJwk = TestJwks.DEFAULT_RSA_JWK;
+		this.jwkList.add(rsaJwk);
+		this.jwsEncoder.setDirectSerializationEnabled(true);
+
+		JoseHeader joseHeader = TestJoseHeaders.joseHeader().build();
+		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet().build();
+
+		Jwt encodedJws = this.jwsEncoder.encode(joseHeader, jwtClaimsSet);
+
+		SignedJWT signedJwt = SignedJWT.parse(encodedJws.getTokenValue());
+		assertThat(signedJwt.verify(new RSASSAVerifier(rsaJwk))).isTrue();
+		assertThat(signedJwt.getHeader().getCustomParam("custom-header-name")).isEqualTo("custom-header-value");
+	}
+
 	@Test
 	public void encodeWhenKeysRotatedThenNewKeyUsed() throws Exception {
 		TestJWKSource jwkSource = new TestJWKSource();
@@ -220,6 +335,29 @@ public class NimbusJwsEncoderTests {
 		assertThat(jwk1.getKeyID()).isNotEqualTo(jwk2.getKeyID());
 	}
 
+	@Test
+	public void encodeWhenJwkSelectionRefreshIntervalNotElapsedThenSelectedJwkReused() throws Exception {
+		TestJWKSource jwkSource = new TestJWKSource();
+		JWKSource<SecurityContext> jwkSourceDelegate = spy(new JWKSource<SecurityContext>() {
+			@Override
+			public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) {
+				return jwkSource.get(jwkSelector, context);
+			}
+		});
+		NimbusJwsEncoder jwsEncoder = new NimbusJwsEncoder(jwkSourceDelegate);
+		jwsEncoder.setJwkSelectionRefreshInterval(Duration.ofMinutes(5));
+
+		JoseHeader joseHeader = TestJoseHeaders.joseHeader().build();
+		JwtClaimsSet jwtClaimsSet = TestJwtClaimsSets.jwtClaimsSet().build();
+
+		Jwt encodedJws1 = jwsEncoder.encode(joseHeader, jwtClaimsSet);
+		Jwt encodedJws2 = jwsEncoder.encode(joseHeader, jwtClaimsSet);
+
+		verify(jwkSourceDelegate, times(1)).get(any(), any());
+		assertThat(encodedJws2.getHeaders().get(JoseHeaderNames.KID))
+				.isEqualTo(encodedJws1.getHeaders().get(JoseHeaderNames.KID));
+	}
+
 	private static final class JwkListResultCaptor implements Answer<List<JWK>> {
 
 		private List<JWK> result;
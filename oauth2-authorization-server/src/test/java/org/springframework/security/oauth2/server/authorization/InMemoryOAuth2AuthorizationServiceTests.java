@@ -15,8 +15,13 @@
  */
 package org.springframework.security.oauth2.server.authorization;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Before;
@@ -131,6 +136,240 @@ public class InMemoryOAuth2AuthorizationServiceTests {
 		assertThat(authorization).isNotEqualTo(originalAuthorization);
 	}
 
+	@Test
+	public void saveWhenTokenReplacedThenPreviousTokenNotFound() {
+		OAuth2AccessToken accessToken1 = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token-1", Instant.now(), Instant.now().plus(5, ChronoUnit.MINUTES));
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.accessToken(accessToken1)
+				.build();
+		this.authorizationService.save(originalAuthorization);
+
+		OAuth2AccessToken accessToken2 = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token-2", Instant.now(), Instant.now().plus(5, ChronoUnit.MINUTES));
+		OAuth2Authorization updatedAuthorization = OAuth2Authorization.from(originalAuthorization)
+				.accessToken(accessToken2)
+				.build();
+		this.authorizationService.save(updatedAuthorization);
+
+		assertThat(this.authorizationService.findByToken(
+				accessToken1.getTokenValue(), OAuth2TokenType.ACCESS_TOKEN)).isNull();
+		assertThat(this.authorizationService.findByToken(accessToken1.getTokenValue(), null)).isNull();
+		assertThat(this.authorizationService.findByToken(
+				accessToken2.getTokenValue(), OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(updatedAuthorization);
+	}
+
+	@Test
+	public void setMaxAuthorizationsWhenNotPositiveThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authorizationService.setMaxAuthorizations(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("maxAuthorizations must be greater than 0");
+	}
+
+	@Test
+	public void setInitializedAuthorizationTimeToLiveWhenNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authorizationService.setInitializedAuthorizationTimeToLive(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("initializedAuthorizationTimeToLive cannot be null");
+	}
+
+	@Test
+	public void setClockWhenNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authorizationService.setClock(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("clock cannot be null");
+	}
+
+	@Test
+	public void saveWhenAuthorizationExpiredThenRemoved() {
+		Instant now = Instant.now();
+		OAuth2Authorization expiredAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-1", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.save(expiredAuthorization);
+
+		this.authorizationService.setClock(Clock.fixed(now.plus(10, ChronoUnit.MINUTES), ZoneOffset.UTC));
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-2", now, now.plus(15, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.save(authorization);
+
+		assertThat(this.authorizationService.findById(expiredAuthorization.getId())).isNull();
+		assertThat(this.authorizationService.findByToken("code-1", AUTHORIZATION_CODE_TOKEN_TYPE)).isNull();
+		assertThat(this.authorizationService.findById(authorization.getId())).isEqualTo(authorization);
+	}
+
+	@Test
+	public void saveWhenInitializedAuthorizationTimeToLiveElapsedThenRemoved() {
+		Instant now = Instant.now();
+		this.authorizationService.setClock(Clock.fixed(now, ZoneOffset.UTC));
+		this.authorizationService.setInitializedAuthorizationTimeToLive(Duration.ofMinutes(1));
+		OAuth2Authorization initializedAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attribute(OAuth2ParameterNames.STATE, "state")
+				.build();
+		this.authorizationService.save(initializedAuthorization);
+
+		this.authorizationService.setClock(Clock.fixed(now.plus(2, ChronoUnit.MINUTES), ZoneOffset.UTC));
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(authorization);
+
+		assertThat(this.authorizationService.findByToken("state", STATE_TOKEN_TYPE)).isNull();
+		assertThat(this.authorizationService.findById(authorization.getId())).isEqualTo(authorization);
+	}
+
+	@Test
+	public void saveWhenMaxAuthorizationsExceededThenEarliestExpiringEvicted() {
+		this.authorizationService.setMaxAuthorizations(2);
+		Instant now = Instant.now();
+		OAuth2Authorization authorization1 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-1", now, now.plus(10, ChronoUnit.MINUTES)))
+				.build();
+		OAuth2Authorization authorization2 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-2", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		OAuth2Authorization authorization3 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-3")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-3", now, now.plus(15, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.save(authorization1);
+		this.authorizationService.save(authorization2);
+		this.authorizationService.save(authorization3);
+
+		assertThat(this.authorizationService.findById(authorization1.getId())).isEqualTo(authorization1);
+		assertThat(this.authorizationService.findById(authorization2.getId())).isNull();
+		assertThat(this.authorizationService.findByToken("code-2", null)).isNull();
+		assertThat(this.authorizationService.findById(authorization3.getId())).isEqualTo(authorization3);
+	}
+
+	@Test
+	public void saveAllWhenAuthorizationsProvidedThenSavedAndRemoveAllThenRemoved() {
+		Instant now = Instant.now();
+		OAuth2Authorization authorization1 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-1", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		OAuth2Authorization authorization2 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-2", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.saveAll(Arrays.asList(authorization1, authorization2));
+
+		assertThat(this.authorizationService.findByToken("code-1", AUTHORIZATION_CODE_TOKEN_TYPE)).isEqualTo(authorization1);
+		assertThat(this.authorizationService.findByToken("code-2", AUTHORIZATION_CODE_TOKEN_TYPE)).isEqualTo(authorization2);
+
+		this.authorizationService.removeAll(Arrays.asList(authorization1, authorization2));
+		assertThat(this.authorizationService.findById(authorization1.getId())).isNull();
+		assertThat(this.authorizationService.findByToken("code-2", AUTHORIZATION_CODE_TOKEN_TYPE)).isNull();
+	}
+
+	@Test
+	public void saveAllWhenAuthorizationNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authorizationService.saveAll(Collections.singletonList(null)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("authorizations cannot contain null elements");
+	}
+
+	@Test
+	public void invalidateByPrincipalNameWhenAuthorizationsExistThenTokensInvalidatedAndRemoveByRegisteredClientIdThenRemoved() {
+		OAuth2Authorization authorization1 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		OAuth2Authorization authorization2 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName("other")
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-2", Instant.now(), Instant.now().plus(5, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.saveAll(Arrays.asList(authorization1, authorization2));
+
+		assertThat(this.authorizationService.invalidateByPrincipalName(PRINCIPAL_NAME)).isEqualTo(1);
+		assertThat(this.authorizationService.findByToken(AUTHORIZATION_CODE.getTokenValue(), AUTHORIZATION_CODE_TOKEN_TYPE)
+				.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById("id-2")
+				.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isFalse();
+		assertThat(this.authorizationService.invalidateByPrincipalName(PRINCIPAL_NAME)).isZero();
+
+		assertThat(this.authorizationService.removeByRegisteredClientId(REGISTERED_CLIENT.getId())).isEqualTo(2);
+		assertThat(this.authorizationService.findById("id-1")).isNull();
+		assertThat(this.authorizationService.findByToken("code-2", AUTHORIZATION_CODE_TOKEN_TYPE)).isNull();
+	}
+
+	@Test
+	public void findAllWhenQueryThenMatchingAuthorizationsFoundAndImportAllThenImported() {
+		Instant now = Instant.now();
+		OAuth2Authorization authorization1 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-1")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-1", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		OAuth2Authorization authorization2 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-2")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-2", now, now.plus(1, ChronoUnit.HOURS)))
+				.build();
+		OAuth2Authorization authorization3 = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("id-3")
+				.principalName("other")
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(new OAuth2AuthorizationCode("code-3", now, now.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		this.authorizationService.saveAll(Arrays.asList(authorization1, authorization2, authorization3));
+
+		assertThat(this.authorizationService.findAll(OAuth2AuthorizationQuery.builder()
+				.principalName(PRINCIPAL_NAME)
+				.expiresBefore(now.plus(30, ChronoUnit.MINUTES))
+				.build())).containsExactly(authorization1);
+		assertThat(this.authorizationService.findAll(OAuth2AuthorizationQuery.builder()
+				.registeredClientId(REGISTERED_CLIENT.getId())
+				.expiresAfter(now.plus(30, ChronoUnit.MINUTES))
+				.build())).containsExactly(authorization2);
+
+		OAuth2Authorization storedAuthorization3 = this.authorizationService.findById("id-3");
+		InMemoryOAuth2AuthorizationService targetAuthorizationService = new InMemoryOAuth2AuthorizationService();
+		targetAuthorizationService.importAll(this.authorizationService.findAll(OAuth2AuthorizationQuery.builder().build()));
+		assertThat(targetAuthorizationService.findByToken("code-3", AUTHORIZATION_CODE_TOKEN_TYPE)).isEqualTo(authorization3);
+
+		// The stored authorizations of the source are not modified by the import
+		assertThat(storedAuthorization3.getVersion()).isEqualTo(1L);
+		this.authorizationService.save(OAuth2Authorization.from(storedAuthorization3).attribute("name", "value").build());
+		assertThatThrownBy(() -> this.authorizationService.save(storedAuthorization3))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class);
+	}
+
 	@Test
 	public void removeWhenAuthorizationNullThenThrowIllegalArgumentException() {
 		assertThatThrownBy(() -> this.authorizationService.remove(null))
@@ -267,4 +506,60 @@ public class InMemoryOAuth2AuthorizationServiceTests {
 				"access-token", OAuth2TokenType.ACCESS_TOKEN);
 		assertThat(result).isNull();
 	}
+
+	@Test
+	public void saveWhenStoredAuthorizationConcurrentlyModifiedThenThrowOAuth2AuthorizationConflictException() {
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(originalAuthorization);
+
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		OAuth2Authorization updatedAuthorization1 = OAuth2Authorization.from(authorization)
+				.attribute("name", "value1")
+				.build();
+		OAuth2Authorization updatedAuthorization2 = OAuth2Authorization.from(authorization)
+				.attribute("name", "value2")
+				.build();
+		this.authorizationService.save(updatedAuthorization1);
+
+		assertThatThrownBy(() -> this.authorizationService.save(updatedAuthorization2))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class)
+				.extracting("authorizationId")
+				.isEqualTo(ID);
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(updatedAuthorization1);
+		// The saved authorization is not modified
+		assertThat(updatedAuthorization1.getVersion()).isEqualTo(1L);
+
+		// A new authorization replaces the stored authorization unconditionally
+		OAuth2Authorization newAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.build();
+		this.authorizationService.save(newAuthorization);
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(newAuthorization);
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenNotConsumedThenConsumedOnce() {
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(authorization);
+
+		OAuth2Authorization consumedAuthorization = this.authorizationService.consumeAuthorizationCode(
+				AUTHORIZATION_CODE.getTokenValue());
+		assertThat(consumedAuthorization).isNotNull();
+		assertThat(consumedAuthorization.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(consumedAuthorization);
+		assertThat(this.authorizationService.consumeAuthorizationCode(AUTHORIZATION_CODE.getTokenValue())).isNull();
+		assertThat(this.authorizationService.consumeAuthorizationCode("other-code")).isNull();
+	}
 }
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2TokenType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.client.TestRegisteredClients;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link JdbcNormalizedOAuth2AuthorizationService}.
+ */
+public class JdbcNormalizedOAuth2AuthorizationServiceTests {
+	private static final String OAUTH2_AUTHORIZATION_NORMALIZED_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-normalized-schema.sql";
+	private static final OAuth2TokenType AUTHORIZATION_CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.CODE);
+	private static final OAuth2TokenType STATE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.STATE);
+	private static final RegisteredClient REGISTERED_CLIENT = TestRegisteredClients.registeredClient().build();
+	private static final String ID = "id";
+	private EmbeddedDatabase db;
+	private JdbcOperations jdbcOperations;
+	private TransactionOperations transactionOperations;
+	private JdbcNormalizedOAuth2AuthorizationService authorizationService;
+
+	@Before
+	public void setUp() {
+		// @formatter:off
+		this.db = new EmbeddedDatabaseBuilder()
+				.generateUniqueName(true)
+				.setType(EmbeddedDatabaseType.HSQL)
+				.setScriptEncoding("UTF-8")
+				.addScript(OAUTH2_AUTHORIZATION_NORMALIZED_SCHEMA_SQL_RESOURCE)
+				.build();
+		// @formatter:on
+		this.jdbcOperations = spy(new JdbcTemplate(this.db));
+		this.transactionOperations = new TransactionTemplate(new DataSourceTransactionManager(this.db));
+		RegisteredClientRepository registeredClientRepository = mock(RegisteredClientRepository.class);
+		when(registeredClientRepository.findById(REGISTERED_CLIENT.getId())).thenReturn(REGISTERED_CLIENT);
+		this.authorizationService = new JdbcNormalizedOAuth2AuthorizationService(this.jdbcOperations,
+				registeredClientRepository, this.transactionOperations);
+	}
+
+	@After
+	public void tearDown() {
+		this.db.shutdown();
+	}
+
+	@Test
+	public void constructorWhenJdbcOperationsIsNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> new JdbcNormalizedOAuth2AuthorizationService(null,
+				mock(RegisteredClientRepository.class), this.transactionOperations))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("jdbcOperations cannot be null");
+	}
+
+	@Test
+	public void constructorWhenTransactionOperationsIsNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> new JdbcNormalizedOAuth2AuthorizationService(this.jdbcOperations,
+				mock(RegisteredClientRepository.class), null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("transactionOperations cannot be null");
+	}
+
+	@Test
+	public void saveWhenAuthorizationNewThenSaved() {
+		OAuth2Authorization authorization = authorization().build();
+		this.authorizationService.save(authorization);
+
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(authorization);
+		assertThat(this.jdbcOperations.queryForObject(
+				"SELECT COUNT(*) FROM oauth2_authorization_token WHERE authorization_id = ?", Integer.class, ID))
+				.isEqualTo(3);
+	}
+
+	@Test
+	public void findByTokenWhenTokenExistsThenFound() {
+		OAuth2Authorization authorization = authorization()
+				.attribute(OAuth2ParameterNames.STATE, "state")
+				.build();
+		this.authorizationService.save(authorization);
+
+		String authorizationCode = authorization.getToken(OAuth2AuthorizationCode.class).getToken().getTokenValue();
+		String accessToken = authorization.getAccessToken().getToken().getTokenValue();
+		String refreshToken = authorization.getRefreshToken().getToken().getTokenValue();
+		assertThat(this.authorizationService.findByToken("state", STATE_TOKEN_TYPE)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(authorizationCode, AUTHORIZATION_CODE_TOKEN_TYPE)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(accessToken, OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(refreshToken, OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(refreshToken, null)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(refreshToken, OAuth2TokenType.ACCESS_TOKEN)).isNull();
+	}
+
+	@Test
+	public void saveWhenAccessTokenRefreshedThenOnlyAccessTokenRowWritten() {
+		OAuth2Authorization authorization = authorization().build();
+		this.authorizationService.save(authorization);
+		clearInvocations(this.jdbcOperations);
+
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		OAuth2AccessToken refreshedAccessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"refreshed-access-token", issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES));
+		OAuth2Authorization refreshedAuthorization = OAuth2Authorization.from(authorization)
+				.accessToken(refreshedAccessToken)
+				.build();
+		this.authorizationService.save(refreshedAuthorization);
+
+		verify(this.jdbcOperations, times(1)).update(startsWith("UPDATE oauth2_authorization_token"),
+				any(PreparedStatementSetter.class));
+		verify(this.jdbcOperations, never()).update(startsWith("UPDATE oauth2_authorization_entry"),
+				any(PreparedStatementSetter.class));
+		verify(this.jdbcOperations, never()).update(startsWith("INSERT"), any(PreparedStatementSetter.class));
+		assertThat(this.authorizationService.findByToken(refreshedAccessToken.getTokenValue(), OAuth2TokenType.ACCESS_TOKEN))
+				.isEqualTo(refreshedAuthorization);
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationChangedThenContentDigestsNotLoaded() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		clearInvocations(this.jdbcOperations);
+
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		OAuth2AccessToken refreshedAccessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"refreshed-access-token", issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES));
+		OAuth2Authorization refreshedAuthorization = OAuth2Authorization.from(authorization)
+				.accessToken(refreshedAccessToken)
+				.build();
+		this.authorizationService.save(refreshedAuthorization);
+
+		verify(this.jdbcOperations, never()).query(startsWith("SELECT a.content_digest"),
+				any(PreparedStatementSetter.class), any(RowCallbackHandler.class));
+		verify(this.jdbcOperations, times(1)).update(startsWith("UPDATE oauth2_authorization_token"),
+				any(PreparedStatementSetter.class));
+		verify(this.jdbcOperations, never()).update(startsWith("UPDATE oauth2_authorization_entry"),
+				any(PreparedStatementSetter.class));
+		OAuth2Authorization savedAuthorization = this.authorizationService.findById(ID);
+		assertThat(savedAuthorization).isEqualTo(refreshedAuthorization);
+		assertThat(savedAuthorization.getVersion()).isEqualTo(authorization.getVersion() + 1);
+		assertThat(refreshedAuthorization.getVersion()).isEqualTo(authorization.getVersion());
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationAttributesChangedThenSaved() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+
+		OAuth2Authorization updatedAuthorization = OAuth2Authorization.from(authorization)
+				.attribute("name", "updated-value")
+				.build();
+		this.authorizationService.save(updatedAuthorization);
+
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(updatedAuthorization);
+		// The content digest is updated along with the attributes
+		OAuth2Authorization unrelatedAuthorization = authorization().attribute("name", "updated-value").build();
+		clearInvocations(this.jdbcOperations);
+		this.authorizationService.save(unrelatedAuthorization);
+		verify(this.jdbcOperations, never()).update(startsWith("UPDATE oauth2_authorization_entry"),
+				any(PreparedStatementSetter.class));
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationConcurrentlyModifiedThenThrowOAuth2AuthorizationConflictException() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization1 = this.authorizationService.findById(ID);
+		OAuth2Authorization authorization2 = this.authorizationService.findById(ID);
+
+		OAuth2Authorization updatedAuthorization1 = OAuth2Authorization.from(authorization1)
+				.attribute("name", "value1")
+				.build();
+		this.authorizationService.save(updatedAuthorization1);
+
+		OAuth2Authorization updatedAuthorization2 = OAuth2Authorization.from(authorization2)
+				.attribute("name", "value2")
+				.build();
+		assertThatThrownBy(() -> this.authorizationService.save(updatedAuthorization2))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class);
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(updatedAuthorization1);
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationTokenConcurrentlyModifiedThenThrowOAuth2AuthorizationConflictException() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization1 = this.authorizationService.findById(ID);
+		OAuth2Authorization authorization2 = this.authorizationService.findById(ID);
+
+		OAuth2Authorization refreshedAuthorization1 = OAuth2Authorization.from(authorization1)
+				.accessToken(accessToken("access-token1"))
+				.build();
+		this.authorizationService.save(refreshedAuthorization1);
+
+		OAuth2Authorization refreshedAuthorization2 = OAuth2Authorization.from(authorization2)
+				.accessToken(accessToken("access-token2"))
+				.build();
+		assertThatThrownBy(() -> this.authorizationService.save(refreshedAuthorization2))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class);
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(refreshedAuthorization1);
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationOtherTokenConcurrentlyModifiedThenSaved() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization1 = this.authorizationService.findById(ID);
+		OAuth2Authorization authorization2 = this.authorizationService.findById(ID);
+
+		this.authorizationService.save(OAuth2Authorization.from(authorization1)
+				.accessToken(accessToken("access-token1"))
+				.build());
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("refresh-token2", issuedAt, issuedAt.plus(1, ChronoUnit.HOURS));
+		this.authorizationService.save(OAuth2Authorization.from(authorization2)
+				.refreshToken(refreshToken)
+				.build());
+
+		OAuth2Authorization savedAuthorization = this.authorizationService.findById(ID);
+		assertThat(savedAuthorization.getAccessToken().getToken().getTokenValue()).isEqualTo("access-token1");
+		assertThat(savedAuthorization.getRefreshToken().getToken()).isEqualTo(refreshToken);
+		assertThat(savedAuthorization.getVersion()).isEqualTo(2);
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationConcurrentlyRemovedThenThrowOAuth2AuthorizationConflictException() {
+		this.authorizationService.save(authorization().build());
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		this.authorizationService.remove(authorization);
+
+		assertThatThrownBy(() -> this.authorizationService.save(authorization))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class);
+		assertThat(this.authorizationService.findById(ID)).isNull();
+	}
+
+	@Test
+	public void saveWhenTokenNotSavedThenRolledBack() {
+		doThrow(new DataIntegrityViolationException("token")).when(this.jdbcOperations)
+				.update(startsWith("INSERT INTO oauth2_authorization_token"), any(PreparedStatementSetter.class));
+
+		assertThatThrownBy(() -> this.authorizationService.save(authorization().build()))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class);
+		assertThat(this.authorizationService.findById(ID)).isNull();
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenValidThenInvalidated() {
+		OAuth2Authorization authorization = authorization().build();
+		this.authorizationService.save(authorization);
+
+		OAuth2Authorization consumedAuthorization = this.authorizationService.consumeAuthorizationCode("code");
+		assertThat(consumedAuthorization).isNotNull();
+		assertThat(consumedAuthorization.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+		OAuth2Authorization storedAuthorization = this.authorizationService.findById(ID);
+		assertThat(storedAuthorization).isEqualTo(consumedAuthorization);
+		assertThat(storedAuthorization.getVersion()).isEqualTo(2);
+		assertThat(consumedAuthorization.getVersion()).isEqualTo(2);
+		assertThat(this.authorizationService.consumeAuthorizationCode("code")).isNull();
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenConcurrentlyConsumedThenNull() {
+		OAuth2Authorization authorization = authorization().build();
+		this.authorizationService.save(authorization);
+
+		RegisteredClientRepository registeredClientRepository = mock(RegisteredClientRepository.class);
+		when(registeredClientRepository.findById(REGISTERED_CLIENT.getId())).thenReturn(REGISTERED_CLIENT);
+		JdbcNormalizedOAuth2AuthorizationService concurrentAuthorizationService =
+				new JdbcNormalizedOAuth2AuthorizationService(new JdbcTemplate(this.db), registeredClientRepository,
+						TransactionOperations.withoutTransaction());
+		doAnswer((invocation) -> {
+			// Another request consumes the authorization code after it was loaded
+			assertThat(concurrentAuthorizationService.consumeAuthorizationCode("code")).isNotNull();
+			return invocation.callRealMethod();
+		}).when(this.jdbcOperations).update(startsWith("UPDATE oauth2_authorization_token"), any(PreparedStatementSetter.class));
+
+		assertThat(this.authorizationService.consumeAuthorizationCode("code")).isNull();
+	}
+
+	@Test
+	public void removeWhenAuthorizationProvidedThenRemoved() {
+		OAuth2Authorization authorization = authorization().build();
+		this.authorizationService.save(authorization);
+
+		this.authorizationService.remove(authorization);
+		assertThat(this.authorizationService.findById(ID)).isNull();
+		assertThat(this.jdbcOperations.queryForObject(
+				"SELECT COUNT(*) FROM oauth2_authorization_token", Integer.class)).isZero();
+	}
+
+	private static OAuth2Authorization.Builder authorization() {
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		OAuth2AuthorizationCode authorizationCode = new OAuth2AuthorizationCode(
+				"code", issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES));
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token", issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES), Collections.singleton("scope1"));
+		OAuth2RefreshToken refreshToken = new OAuth2RefreshToken(
+				"refresh-token", issuedAt, issuedAt.plus(1, ChronoUnit.HOURS));
+		return OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName("principal")
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.attribute("name", "value")
+				.token(authorizationCode)
+				.accessToken(accessToken)
+				.refreshToken(refreshToken);
+	}
+
+	private static OAuth2AccessToken accessToken(String tokenValue) {
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		return new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				tokenValue, issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES));
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.client.TestRegisteredClients;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link JdbcOAuth2AuthorizationPurger}.
+ */
+public class JdbcOAuth2AuthorizationPurgerTests {
+	private static final String OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-schema.sql";
+	private static final String OAUTH2_AUTHORIZATION_EXPIRES_AT_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-expires-at-schema.sql";
+	private static final RegisteredClient REGISTERED_CLIENT = TestRegisteredClients.registeredClient().build();
+	private EmbeddedDatabase db;
+	private JdbcOperations jdbcOperations;
+	private JdbcOAuth2AuthorizationService authorizationService;
+	private JdbcOAuth2AuthorizationPurger purger;
+
+	@Before
+	public void setUp() {
+		// @formatter:off
+		this.db = new EmbeddedDatabaseBuilder()
+				.generateUniqueName(true)
+				.setType(EmbeddedDatabaseType.HSQL)
+				.setScriptEncoding("UTF-8")
+				.addScripts(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE, OAUTH2_AUTHORIZATION_EXPIRES_AT_SCHEMA_SQL_RESOURCE)
+				.build();
+		// @formatter:on
+		this.jdbcOperations = new JdbcTemplate(this.db);
+		RegisteredClientRepository registeredClientRepository = mock(RegisteredClientRepository.class);
+		when(registeredClientRepository.findById(REGISTERED_CLIENT.getId())).thenReturn(REGISTERED_CLIENT);
+		this.authorizationService = new JdbcOAuth2AuthorizationService(this.jdbcOperations, registeredClientRepository);
+		this.authorizationService.setExpiresAtEnabled(true);
+		this.purger = new JdbcOAuth2AuthorizationPurger(this.jdbcOperations);
+	}
+
+	@After
+	public void tearDown() {
+		this.db.shutdown();
+	}
+
+	@Test
+	public void constructorWhenJdbcOperationsNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> new JdbcOAuth2AuthorizationPurger(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("jdbcOperations cannot be null");
+	}
+
+	@Test
+	public void setBatchSizeWhenZeroThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.purger.setBatchSize(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("batchSize must be greater than 0");
+	}
+
+	@Test
+	public void setPauseBetweenBatchesWhenNegativeThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.purger.setPauseBetweenBatches(Duration.ofSeconds(-1)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("pauseBetweenBatches cannot be negative");
+	}
+
+	@Test
+	public void purgeWhenTokensExpiredThenDeletedInBatches() {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		for (int i = 0; i < 5; i++) {
+			this.authorizationService.save(authorization("expired-" + i, now.minus(1, ChronoUnit.HOURS), now.minusSeconds(i + 1)));
+		}
+		this.authorizationService.save(authorization("active", now.minus(1, ChronoUnit.HOURS), now.plusSeconds(60)));
+		OAuth2Authorization neverExpires = OAuth2Authorization.from(authorization("never-expires", now.minus(1, ChronoUnit.HOURS), now.minusSeconds(1)))
+				.refreshToken(new OAuth2RefreshToken("refresh-token", now.minus(1, ChronoUnit.HOURS)))
+				.build();
+		this.authorizationService.save(neverExpires);
+
+		this.purger.setBatchSize(2);
+		JdbcOAuth2AuthorizationPurger.PurgeResult purgeResult = this.purger.purge();
+
+		assertThat(purgeResult.getExpiredAuthorizationCount()).isEqualTo(5);
+		assertThat(purgeResult.getAbandonedAuthorizationCount()).isZero();
+		assertThat(purgeResult.getDuration().isNegative()).isFalse();
+		assertThat(this.purger.getLastPurgeResult()).isSameAs(purgeResult);
+		assertThat(this.authorizationService.findById("expired-0")).isNull();
+		assertThat(this.authorizationService.findById("active")).isNotNull();
+		assertThat(this.authorizationService.findById("never-expires")).isNotNull();
+	}
+
+	@Test
+	public void purgeWhenSavedBeforeExpiresAtColumnAddedThenDeleted() {
+		EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+				.generateUniqueName(true)
+				.setType(EmbeddedDatabaseType.HSQL)
+				.setScriptEncoding("UTF-8")
+				.addScript(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE)
+				.build();
+		JdbcOperations jdbcOperations = new JdbcTemplate(db);
+		RegisteredClientRepository registeredClientRepository = mock(RegisteredClientRepository.class);
+		when(registeredClientRepository.findById(REGISTERED_CLIENT.getId())).thenReturn(REGISTERED_CLIENT);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, registeredClientRepository);
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		authorizationService.save(authorization("expired", now.minus(1, ChronoUnit.HOURS), now.minusSeconds(1)));
+		authorizationService.save(authorization("active", now.minus(1, ChronoUnit.HOURS), now.plusSeconds(60)));
+		authorizationService.save(OAuth2Authorization.from(authorization("never-expires", now.minus(1, ChronoUnit.HOURS), now.minusSeconds(1)))
+				.refreshToken(new OAuth2RefreshToken("refresh-token", now.minus(1, ChronoUnit.HOURS)))
+				.build());
+
+		// The expires_at column of the existing authorizations is populated when added
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+				new ClassPathResource(OAUTH2_AUTHORIZATION_EXPIRES_AT_SCHEMA_SQL_RESOURCE));
+		populator.execute(db);
+
+		JdbcOAuth2AuthorizationPurger purger = new JdbcOAuth2AuthorizationPurger(jdbcOperations);
+		assertThat(purger.purge().getExpiredAuthorizationCount()).isEqualTo(1);
+		assertThat(authorizationService.findById("expired")).isNull();
+		assertThat(authorizationService.findById("active")).isNotNull();
+		assertThat(authorizationService.findById("never-expires")).isNotNull();
+		db.shutdown();
+	}
+
+	@Test
+	public void purgeWhenAwaitingConsentPastGracePeriodThenDeleted() {
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("awaiting-consent")
+				.principalName("principal")
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.attribute(OAuth2ParameterNames.STATE, "state")
+				.build();
+		this.authorizationService.save(authorization);
+
+		this.purger.setAbandonedAuthorizationGracePeriod(Duration.ofMinutes(10));
+		assertThat(this.purger.purge().getPurgedAuthorizationCount()).isZero();
+		assertThat(this.authorizationService.findById("awaiting-consent")).isNotNull();
+
+		this.purger.setClock(Clock.fixed(Instant.now().plus(11, ChronoUnit.MINUTES), ZoneOffset.UTC));
+		JdbcOAuth2AuthorizationPurger.PurgeResult purgeResult = this.purger.purge();
+		assertThat(purgeResult.getAbandonedAuthorizationCount()).isEqualTo(1);
+		assertThat(purgeResult.getExpiredAuthorizationCount()).isZero();
+		assertThat(this.authorizationService.findById("awaiting-consent")).isNull();
+	}
+
+	private static OAuth2Authorization authorization(String id, Instant issuedAt, Instant expiresAt) {
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token-" + id, issuedAt, expiresAt);
+		return OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(id)
+				.principalName("principal")
+				.authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+				.accessToken(accessToken)
+				.build();
+	}
+
+}
@@ -15,6 +15,7 @@
  */
 package org.springframework.security.oauth2.server.authorization;
 
+import java.security.Principal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -22,6 +23,8 @@ import java.sql.Types;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -32,27 +35,38 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.crypto.keygen.Base64StringKeyGenerator;
+import org.springframework.security.crypto.keygen.StringKeyGenerator;
 import org.springframework.security.oauth2.core.AbstractOAuth2Token;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
 import org.springframework.security.oauth2.core.OAuth2TokenType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
 import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
 import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.client.TestRegisteredClients;
+import org.springframework.security.oauth2.server.authorization.codec.BinaryAttributesCodec;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
@@ -60,9 +74,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -73,6 +92,9 @@ import static org.mockito.Mockito.when;
  */
 public class JdbcOAuth2AuthorizationServiceTests {
 	private static final String OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-schema.sql";
+	private static final String OAUTH2_AUTHORIZATION_TOKEN_VALUE_DIGEST_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-token-value-digest-schema.sql";
+	private static final String OAUTH2_AUTHORIZATION_VERSION_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-version-schema.sql";
+	private static final String OAUTH2_AUTHORIZATION_CODE_CONSUMED_AT_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/oauth2-authorization-code-consumed-at-schema.sql";
 	private static final String CUSTOM_OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE = "org/springframework/security/oauth2/server/authorization/custom-oauth2-authorization-schema.sql";
 	private static final OAuth2TokenType AUTHORIZATION_CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.CODE);
 	private static final OAuth2TokenType STATE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.STATE);
@@ -171,6 +193,44 @@ public class JdbcOAuth2AuthorizationServiceTests {
 		assertThat(authorization).isEqualTo(expectedAuthorization);
 	}
 
+	@Test
+	public void saveWhenAuthorizationNewThenInsertedFirst() {
+		JdbcOperations jdbcOperations = spy(this.jdbcOperations);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		authorizationService.save(authorization);
+
+		verify(jdbcOperations).update(startsWith("INSERT"), any(PreparedStatementSetter.class));
+		verify(jdbcOperations, never()).update(startsWith("UPDATE"), any(PreparedStatementSetter.class));
+	}
+
+	@Test
+	public void saveWhenAuthorizationNotLoadedAndExistsInTransactionThenThrowOAuth2AuthorizationConflictException() {
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(authorization);
+
+		// The failed insert may abort the transaction, so the authorization is not updated instead
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(this.db));
+		assertThatThrownBy(() -> transactionTemplate.executeWithoutResult((status) ->
+				this.authorizationService.save(OAuth2Authorization.from(authorization)
+						.attribute("name", "value")
+						.build())))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class)
+				.extracting("authorizationId")
+				.isEqualTo(ID);
+	}
+
 	@Test
 	public void saveWhenAuthorizationExistsThenUpdated() {
 		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
@@ -198,6 +258,31 @@ public class JdbcOAuth2AuthorizationServiceTests {
 		assertThat(authorization).isNotEqualTo(originalAuthorization);
 	}
 
+	@Test
+	public void saveWhenAuthorizationExistsThenNotLoaded() throws Exception {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		RowMapper<OAuth2Authorization> authorizationRowMapper = spy(
+				new JdbcOAuth2AuthorizationService.OAuth2AuthorizationRowMapper(
+						this.registeredClientRepository));
+		this.authorizationService.setAuthorizationRowMapper(authorizationRowMapper);
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(originalAuthorization);
+		OAuth2Authorization updatedAuthorization = OAuth2Authorization.from(originalAuthorization)
+				.attribute("custom-name-1", "custom-value-1")
+				.build();
+		this.authorizationService.save(updatedAuthorization);
+		verify(authorizationRowMapper, never()).mapRow(any(), anyInt());
+
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		assertThat(authorization).isEqualTo(updatedAuthorization);
+	}
+
 	@Test
 	public void saveLoadAuthorizationWhenCustomStrategiesSetThenCalled() throws Exception {
 		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
@@ -225,6 +310,416 @@ public class JdbcOAuth2AuthorizationServiceTests {
 		verify(authorizationParametersMapper).apply(any());
 	}
 
+	@Test
+	public void saveLoadAuthorizationWhenBinaryAttributesCodecSetThenAttributesEncodedInBinaryFormat() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		OAuth2AuthorizationRequest authorizationRequest = OAuth2AuthorizationRequest.authorizationCode()
+				.authorizationUri("https://provider.com/oauth2/authorize")
+				.clientId(REGISTERED_CLIENT.getClientId())
+				.redirectUri("https://example.com")
+				.scopes(REGISTERED_CLIENT.getScopes())
+				.state("state")
+				.build();
+		UsernamePasswordAuthenticationToken principal = new UsernamePasswordAuthenticationToken(
+				PRINCIPAL_NAME, null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attribute(OAuth2AuthorizationRequest.class.getName(), authorizationRequest)
+				.attribute(Principal.class.getName(), principal)
+				.token(AUTHORIZATION_CODE)
+				.build();
+
+		JdbcOAuth2AuthorizationService.OAuth2AuthorizationRowMapper authorizationRowMapper =
+				new JdbcOAuth2AuthorizationService.OAuth2AuthorizationRowMapper(this.registeredClientRepository);
+		authorizationRowMapper.setAttributesCodec(new BinaryAttributesCodec());
+		this.authorizationService.setAuthorizationRowMapper(authorizationRowMapper);
+		JdbcOAuth2AuthorizationService.OAuth2AuthorizationParametersMapper authorizationParametersMapper =
+				new JdbcOAuth2AuthorizationService.OAuth2AuthorizationParametersMapper();
+		authorizationParametersMapper.setAttributesCodec(new BinaryAttributesCodec());
+		this.authorizationService.setAuthorizationParametersMapper(authorizationParametersMapper);
+
+		this.authorizationService.save(originalAuthorization);
+		String attributes = this.jdbcOperations.queryForObject(
+				"SELECT attributes FROM oauth2_authorization WHERE id = ?", String.class, ID);
+		assertThat(attributes).startsWith("b1:");
+
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		assertThat(authorization.getAuthorizationCode()).isEqualTo(originalAuthorization.getAuthorizationCode());
+		assertThat(authorization.<Principal>getAttribute(Principal.class.getName())).isEqualTo(principal);
+		OAuth2AuthorizationRequest result = authorization.getAttribute(OAuth2AuthorizationRequest.class.getName());
+		assertThat(result).usingRecursiveComparison().isEqualTo(authorizationRequest);
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationChangedThenOnlyChangedColumnsUpdated() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token", Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attribute("name", "value")
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(originalAuthorization);
+
+		JdbcOperations jdbcOperations = spy(this.jdbcOperations);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		OAuth2Authorization authorization = authorizationService.findById(ID);
+		authorizationService.save(authorization);
+		verify(jdbcOperations, never()).update(any(String.class), any(PreparedStatementSetter.class));
+
+		authorization = OAuth2Authorization.from(authorization)
+				.token(AUTHORIZATION_CODE, (metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.accessToken(accessToken)
+				.build();
+		authorizationService.save(authorization);
+
+		ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+		verify(jdbcOperations).update(sqlCaptor.capture(), any(PreparedStatementSetter.class));
+		assertThat(sqlCaptor.getValue())
+				.startsWith("UPDATE oauth2_authorization SET ")
+				.contains("authorization_code_metadata = ?", "access_token_value = ?", "access_token_scopes = ?")
+				.doesNotContain("attributes", "refresh_token", "oidc_id_token");
+		OAuth2Authorization updatedAuthorization = this.authorizationService.findById(ID);
+		assertThat(updatedAuthorization).isEqualTo(authorization);
+		assertThat(updatedAuthorization.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+	}
+
+	@Test
+	public void saveWhenLoadedAuthorizationUnchangedAndConcurrentlyRemovedThenSaved() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attribute("name", "value")
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(originalAuthorization);
+		OAuth2Authorization authorization = this.authorizationService.findById(ID);
+		this.authorizationService.remove(originalAuthorization);
+
+		this.authorizationService.save(authorization);
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(originalAuthorization);
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenNotConsumedThenConsumedOnce() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		this.authorizationService.save(authorization);
+
+		OAuth2Authorization consumedAuthorization = this.authorizationService.consumeAuthorizationCode(
+				AUTHORIZATION_CODE.getTokenValue());
+		assertThat(consumedAuthorization).isNotNull();
+		assertThat(consumedAuthorization.getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById(ID)).isEqualTo(consumedAuthorization);
+		assertThat(this.authorizationService.consumeAuthorizationCode(AUTHORIZATION_CODE.getTokenValue())).isNull();
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenConcurrentlyConsumedThenNotConsumed() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_CODE_CONSUMED_AT_SCHEMA_SQL_RESOURCE);
+		JdbcOAuth2AuthorizationService authorizationService1 =
+				new JdbcOAuth2AuthorizationService(new JdbcTemplate(db), this.registeredClientRepository);
+		authorizationService1.setAuthorizationCodeConsumedAtEnabled(true);
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		authorizationService1.save(authorization);
+
+		// Simulate a concurrent consume before the conditional update
+		JdbcOperations jdbcOperations = spy(new JdbcTemplate(db));
+		JdbcOAuth2AuthorizationService authorizationService2 =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService2.setAuthorizationCodeConsumedAtEnabled(true);
+		doAnswer((invocation) -> {
+			assertThat(authorizationService1.consumeAuthorizationCode(AUTHORIZATION_CODE.getTokenValue())).isNotNull();
+			return invocation.callRealMethod();
+		}).when(jdbcOperations).update(startsWith("UPDATE"), any(PreparedStatementSetter.class));
+
+		assertThat(authorizationService2.consumeAuthorizationCode(AUTHORIZATION_CODE.getTokenValue())).isNull();
+		assertThat(authorizationService1.findById(ID).getToken(OAuth2AuthorizationCode.class).isInvalidated()).isTrue();
+		db.shutdown();
+	}
+
+	@Test
+	public void consumeAuthorizationCodeWhenConsumedAtEnabledAndInvalidatedThenNotConsumed() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_CODE_CONSUMED_AT_SCHEMA_SQL_RESOURCE);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(new JdbcTemplate(db), this.registeredClientRepository);
+		authorizationService.setAuthorizationCodeConsumedAtEnabled(true);
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE,
+						(metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.build();
+		authorizationService.save(authorization);
+
+		assertThat(authorizationService.consumeAuthorizationCode(AUTHORIZATION_CODE.getTokenValue())).isNull();
+		db.shutdown();
+	}
+
+	@Test
+	public void setBatchSizeWhenZeroThenThrowIllegalArgumentException() {
+		// @formatter:off
+		assertThatThrownBy(() -> this.authorizationService.setBatchSize(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("batchSize must be greater than 0");
+		// @formatter:on
+	}
+
+	@Test
+	public void saveAllWhenAuthorizationsNewOrExistThenSavedInBatches() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		JdbcOperations jdbcOperations = spy(this.jdbcOperations);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService.setBatchSize(2);
+		List<OAuth2Authorization> authorizations = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			authorizations.add(OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+					.id(ID + i)
+					.principalName(PRINCIPAL_NAME)
+					.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+					.accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-token-" + i,
+							Instant.now().truncatedTo(ChronoUnit.MILLIS),
+							Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS)))
+					.build());
+		}
+		authorizationService.saveAll(authorizations.subList(0, 3));
+
+		List<OAuth2Authorization> updatedAuthorizations = new ArrayList<>();
+		for (OAuth2Authorization authorization : authorizations.subList(0, 3)) {
+			updatedAuthorizations.add(OAuth2Authorization.from(authorization)
+					.attribute("name", "value")
+					.build());
+		}
+		updatedAuthorizations.addAll(authorizations.subList(3, 5));
+		authorizationService.saveAll(updatedAuthorizations);
+
+		verify(jdbcOperations, times(5)).batchUpdate(startsWith("UPDATE"), any(BatchPreparedStatementSetter.class));
+		verify(jdbcOperations, times(4)).batchUpdate(startsWith("INSERT"), any(BatchPreparedStatementSetter.class));
+		verify(jdbcOperations, never()).update(anyString(), any(PreparedStatementSetter.class));
+		for (OAuth2Authorization authorization : updatedAuthorizations) {
+			assertThat(authorizationService.findById(authorization.getId())).isEqualTo(authorization);
+		}
+	}
+
+	@Test
+	public void saveAllWhenOptimisticLockingEnabledAndConcurrentlyModifiedThenConflictDetected() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_VERSION_SCHEMA_SQL_RESOURCE);
+		JdbcOperations jdbcOperations = spy(new JdbcTemplate(db));
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService.setOptimisticLockingEnabled(true);
+		authorizationService.saveAll(Arrays.asList(
+				authorization("id-1", PRINCIPAL_NAME), authorization("id-2", PRINCIPAL_NAME)));
+		OAuth2Authorization updatedAuthorization1 = OAuth2Authorization.from(authorizationService.findById("id-1"))
+				.attribute("name", "value")
+				.build();
+		OAuth2Authorization updatedAuthorization2 = OAuth2Authorization.from(authorizationService.findById("id-2"))
+				.attribute("name", "value")
+				.build();
+		authorizationService.save(OAuth2Authorization.from(authorizationService.findById("id-2"))
+				.attribute("name", "concurrent-value")
+				.build());
+
+
+		assertThatThrownBy(() -> authorizationService.saveAll(Arrays.asList(updatedAuthorization1, updatedAuthorization2)))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class)
+				.extracting("authorizationId")
+				.isEqualTo("id-2");
+		// The versioned updates are not batched, as the driver may not report the updated counts
+		verify(jdbcOperations, never()).batchUpdate(startsWith("UPDATE"), any(BatchPreparedStatementSetter.class));
+		assertThat(authorizationService.findById("id-1")).isEqualTo(updatedAuthorization1);
+		assertThat(authorizationService.findById("id-2").<String>getAttribute("name")).isEqualTo("concurrent-value");
+		db.shutdown();
+	}
+
+	@Test
+	public void removeAllWhenAuthorizationsProvidedThenRemovedInBatches() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		List<OAuth2Authorization> authorizations = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			authorizations.add(OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+					.id(ID + i)
+					.principalName(PRINCIPAL_NAME)
+					.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+					.build());
+		}
+		this.authorizationService.saveAll(authorizations);
+		this.authorizationService.setBatchSize(2);
+
+		this.authorizationService.removeAll(authorizations.subList(0, 2));
+		assertThat(this.authorizationService.findById(ID + 0)).isNull();
+		assertThat(this.authorizationService.findById(ID + 1)).isNull();
+		assertThat(this.authorizationService.findById(ID + 2)).isNotNull();
+	}
+
+	@Test
+	public void invalidateByPrincipalNameWhenAuthorizationsExistThenTokensInvalidated() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		this.authorizationService.saveAll(Arrays.asList(
+				authorization("id-1", PRINCIPAL_NAME), authorization("id-2", PRINCIPAL_NAME), authorization("id-3", "other")));
+
+		assertThat(this.authorizationService.invalidateByPrincipalName(PRINCIPAL_NAME)).isEqualTo(2);
+		assertThat(this.authorizationService.findById("id-1").getAccessToken().isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById("id-2").getRefreshToken().isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById("id-3").getAccessToken().isInvalidated()).isFalse();
+		assertThat(this.authorizationService.invalidateByPrincipalName(PRINCIPAL_NAME)).isZero();
+	}
+
+	@Test
+	public void invalidateByRegisteredClientIdWhenBinaryAttributesCodecSetThenTokensInvalidated() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		JdbcOAuth2AuthorizationService.OAuth2AuthorizationRowMapper authorizationRowMapper =
+				new JdbcOAuth2AuthorizationService.OAuth2AuthorizationRowMapper(this.registeredClientRepository);
+		authorizationRowMapper.setAttributesCodec(new BinaryAttributesCodec());
+		this.authorizationService.setAuthorizationRowMapper(authorizationRowMapper);
+		JdbcOAuth2AuthorizationService.OAuth2AuthorizationParametersMapper authorizationParametersMapper =
+				new JdbcOAuth2AuthorizationService.OAuth2AuthorizationParametersMapper();
+		authorizationParametersMapper.setAttributesCodec(new BinaryAttributesCodec());
+		this.authorizationService.setAuthorizationParametersMapper(authorizationParametersMapper);
+		this.authorizationService.saveAll(Arrays.asList(authorization("id-1", PRINCIPAL_NAME), authorization("id-2", "other")));
+
+		assertThat(this.authorizationService.invalidateByRegisteredClientId(REGISTERED_CLIENT.getId())).isEqualTo(2);
+		assertThat(this.authorizationService.findById("id-1").getAccessToken().isInvalidated()).isTrue();
+		assertThat(this.authorizationService.findById("id-2").getRefreshToken().isInvalidated()).isTrue();
+	}
+
+	@Test
+	public void removeByRegisteredClientIdWhenAuthorizationsExistThenRemoved() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		this.authorizationService.saveAll(Arrays.asList(authorization("id-1", PRINCIPAL_NAME), authorization("id-2", "other")));
+
+		assertThat(this.authorizationService.removeByPrincipalName("other")).isEqualTo(1);
+		assertThat(this.authorizationService.findById("id-2")).isNull();
+		assertThat(this.authorizationService.removeByRegisteredClientId(REGISTERED_CLIENT.getId())).isEqualTo(1);
+		assertThat(this.authorizationService.findById("id-1")).isNull();
+	}
+
+	@Test
+	public void findAllWhenQueryByPrincipalNameThenMatchingAuthorizationsFoundInPages() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		List<OAuth2Authorization> authorizations = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			authorizations.add(authorization("id-" + i, PRINCIPAL_NAME));
+		}
+		authorizations.add(authorization("id-5", "other"));
+		this.authorizationService.saveAll(authorizations);
+		JdbcOperations jdbcOperations = spy(this.jdbcOperations);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService.setPageSize(2);
+
+		OAuth2AuthorizationQuery query = OAuth2AuthorizationQuery.builder()
+				.principalName(PRINCIPAL_NAME)
+				.build();
+		assertThat(authorizationService.findAll(query)).containsExactlyElementsOf(authorizations.subList(0, 5));
+		verify(jdbcOperations, times(3)).query(any(PreparedStatementCreator.class), any(RowMapper.class));
+		assertThat(authorizationService.findAll(OAuth2AuthorizationQuery.builder().build())).hasSize(6);
+	}
+
+	@Test
+	public void findAllWhenQueryByExpiryThenMatchingAuthorizationsFound() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				"org/springframework/security/oauth2/server/authorization/oauth2-authorization-expires-at-schema.sql");
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(new JdbcTemplate(db), this.registeredClientRepository);
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		OAuth2Authorization expiringAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id("expiring")
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+				.accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-token",
+						issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES)))
+				.build();
+		OAuth2Authorization authorization = authorization("id", PRINCIPAL_NAME);
+		OAuth2AuthorizationQuery query = OAuth2AuthorizationQuery.builder()
+				.expiresBefore(issuedAt.plus(30, ChronoUnit.MINUTES))
+				.build();
+		assertThatThrownBy(() -> authorizationService.findAll(query))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("expiresAtEnabled must be true to find authorizations by expiry");
+
+		authorizationService.setExpiresAtEnabled(true);
+		authorizationService.saveAll(Arrays.asList(expiringAuthorization, authorization));
+		assertThat(authorizationService.findAll(query)).containsExactly(expiringAuthorization);
+		assertThat(authorizationService.findAll(OAuth2AuthorizationQuery.builder()
+				.expiresAfter(issuedAt.plus(30, ChronoUnit.MINUTES))
+				.build())).containsExactly(authorization);
+		db.shutdown();
+	}
+
+	@Test
+	public void importAllWhenAuthorizationsExportedThenImported() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		EmbeddedDatabase sourceDb = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_VERSION_SCHEMA_SQL_RESOURCE);
+		JdbcOAuth2AuthorizationService sourceAuthorizationService =
+				new JdbcOAuth2AuthorizationService(new JdbcTemplate(sourceDb), this.registeredClientRepository);
+		sourceAuthorizationService.setOptimisticLockingEnabled(true);
+		List<OAuth2Authorization> authorizations = Arrays.asList(
+				authorization("id-1", PRINCIPAL_NAME), authorization("id-2", PRINCIPAL_NAME));
+		sourceAuthorizationService.saveAll(authorizations);
+		sourceAuthorizationService.saveAll(authorizations);
+
+		// The version of the exported authorizations does not apply to the target database
+		EmbeddedDatabase targetDb = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_VERSION_SCHEMA_SQL_RESOURCE);
+		JdbcOAuth2AuthorizationService targetAuthorizationService =
+				new JdbcOAuth2AuthorizationService(new JdbcTemplate(targetDb), this.registeredClientRepository);
+		targetAuthorizationService.setOptimisticLockingEnabled(true);
+		targetAuthorizationService.setBatchSize(1);
+		// An existing authorization is overwritten in full
+		targetAuthorizationService.save(authorization("id-1", "other-principal"));
+		targetAuthorizationService.importAll(sourceAuthorizationService.findAll(OAuth2AuthorizationQuery.builder().build()));
+
+		assertThat(targetAuthorizationService.findById("id-1")).isEqualTo(authorizations.get(0));
+		assertThat(targetAuthorizationService.findById("id-2")).isEqualTo(authorizations.get(1));
+		sourceDb.shutdown();
+		targetDb.shutdown();
+	}
+
 	@Test
 	public void removeWhenAuthorizationNullThenThrowIllegalArgumentException() {
 		// @formatter:off
@@ -389,6 +884,172 @@ public class JdbcOAuth2AuthorizationServiceTests {
 		assertThat(result).isNull();
 	}
 
+	@Test
+	public void setTokenTypeResolverWhenNullThenThrowIllegalArgumentException() {
+		// @formatter:off
+		assertThatThrownBy(() -> this.authorizationService.setTokenTypeResolver(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("tokenTypeResolver cannot be null");
+		// @formatter:on
+	}
+
+	@Test
+	public void findByTokenWhenTokenTypeNullThenProbeResolvedTokenTypeFirst() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"header.payload.signature", Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("refresh-token",
+				Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.accessToken(accessToken)
+				.refreshToken(refreshToken)
+				.build();
+		this.authorizationService.save(authorization);
+
+		assertThat(this.authorizationService.findByToken(accessToken.getTokenValue(), null)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(refreshToken.getTokenValue(), null)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(AUTHORIZATION_CODE.getTokenValue(), null)).isEqualTo(authorization);
+
+		JdbcOAuth2AuthorizationService.TokenTypeProbeStatistics statistics =
+				this.authorizationService.getTokenTypeProbeStatistics();
+		assertThat(statistics.getProbeCount(OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getHitCount(OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getProbeCount(OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(2);
+		assertThat(statistics.getHitCount(OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getHitRate(OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(0.5);
+		assertThat(statistics.getHitRate(STATE_TOKEN_TYPE)).isEqualTo(0);
+	}
+
+	@Test
+	public void findByTokenWhenTokenTypeNullAndReferenceAccessTokenThenProbeAccessTokenFirst() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+		StringKeyGenerator accessTokenGenerator = new Base64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 32);
+		StringKeyGenerator refreshTokenGenerator = new Base64StringKeyGenerator(Base64.getUrlEncoder().withoutPadding(), 96);
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				accessTokenGenerator.generateKey(), Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2RefreshToken refreshToken = new OAuth2RefreshToken(refreshTokenGenerator.generateKey(),
+				Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.accessToken(accessToken)
+				.refreshToken(refreshToken)
+				.build();
+		this.authorizationService.save(authorization);
+
+		assertThat(this.authorizationService.findByToken(accessToken.getTokenValue(), null)).isEqualTo(authorization);
+		assertThat(this.authorizationService.findByToken(refreshToken.getTokenValue(), null)).isEqualTo(authorization);
+
+		JdbcOAuth2AuthorizationService.TokenTypeProbeStatistics statistics =
+				this.authorizationService.getTokenTypeProbeStatistics();
+		assertThat(statistics.getProbeCount(OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getHitCount(OAuth2TokenType.ACCESS_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getProbeCount(OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(1);
+		assertThat(statistics.getHitCount(OAuth2TokenType.REFRESH_TOKEN)).isEqualTo(1);
+	}
+
+	@Test
+	public void findByTokenWhenTokenValueDigestEnabledThenFound() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_TOKEN_VALUE_DIGEST_SCHEMA_SQL_RESOURCE);
+		JdbcOperations jdbcOperations = new JdbcTemplate(db);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService.setTokenValueDigestEnabled(true);
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"access-token", Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2RefreshToken refreshToken = new OAuth2RefreshToken("refresh-token",
+				Instant.now().truncatedTo(ChronoUnit.MILLIS),
+				Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS));
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.accessToken(accessToken)
+				.refreshToken(refreshToken)
+				.build();
+		authorizationService.save(authorization);
+		authorizationService.save(authorization);
+
+		String accessTokenValueDigest = jdbcOperations.queryForObject(
+				"SELECT access_token_value_digest FROM oauth2_authorization WHERE id = ?", String.class, ID);
+		assertThat(accessTokenValueDigest).hasSize(43).isNotEqualTo(accessToken.getTokenValue());
+
+		assertThat(authorizationService.findByToken(AUTHORIZATION_CODE.getTokenValue(), AUTHORIZATION_CODE_TOKEN_TYPE))
+				.isEqualTo(authorization);
+		assertThat(authorizationService.findByToken(accessToken.getTokenValue(), OAuth2TokenType.ACCESS_TOKEN))
+				.isEqualTo(authorization);
+		assertThat(authorizationService.findByToken(refreshToken.getTokenValue(), OAuth2TokenType.REFRESH_TOKEN))
+				.isEqualTo(authorization);
+		assertThat(authorizationService.findByToken(accessToken.getTokenValue(), null))
+				.isEqualTo(authorization);
+		assertThat(authorizationService.findByToken(refreshToken.getTokenValue(), OAuth2TokenType.ACCESS_TOKEN))
+				.isNull();
+		db.shutdown();
+	}
+
+	@Test
+	public void saveWhenOptimisticLockingEnabledAndConcurrentlyModifiedThenThrowOAuth2AuthorizationConflictException() {
+		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
+				.thenReturn(REGISTERED_CLIENT);
+
+		EmbeddedDatabase db = createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE,
+				OAUTH2_AUTHORIZATION_VERSION_SCHEMA_SQL_RESOURCE);
+		JdbcOperations jdbcOperations = new JdbcTemplate(db);
+		JdbcOAuth2AuthorizationService authorizationService =
+				new JdbcOAuth2AuthorizationService(jdbcOperations, this.registeredClientRepository);
+		authorizationService.setOptimisticLockingEnabled(true);
+		OAuth2Authorization originalAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		authorizationService.save(originalAuthorization);
+
+		OAuth2Authorization authorization = authorizationService.findById(ID);
+		OAuth2Authorization updatedAuthorization1 = OAuth2Authorization.from(authorization)
+				.attribute("name", "value1")
+				.build();
+		OAuth2Authorization updatedAuthorization2 = OAuth2Authorization.from(authorization)
+				.token(AUTHORIZATION_CODE, (metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.build();
+		authorizationService.save(updatedAuthorization1);
+		assertThat(jdbcOperations.queryForObject(
+				"SELECT version FROM oauth2_authorization WHERE id = ?", Long.class, ID)).isEqualTo(2L);
+
+		assertThatThrownBy(() -> authorizationService.save(updatedAuthorization2))
+				.isInstanceOf(OAuth2AuthorizationConflictException.class)
+				.extracting("authorizationId")
+				.isEqualTo(ID);
+		assertThat(authorizationService.findById(ID)).isEqualTo(updatedAuthorization1);
+
+		// The saved authorization is not modified, so it is loaded again to be updated again
+		assertThat(updatedAuthorization1.getVersion()).isEqualTo(1L);
+		OAuth2Authorization updatedAuthorization3 = OAuth2Authorization.from(authorizationService.findById(ID))
+				.token(AUTHORIZATION_CODE, (metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.build();
+		authorizationService.save(updatedAuthorization3);
+		assertThat(authorizationService.findById(ID)).isEqualTo(updatedAuthorization3);
+		db.shutdown();
+	}
+
 	@Test
 	public void tableDefinitionWhenCustomThenAbleToOverride() {
 		when(this.registeredClientRepository.findById(eq(REGISTERED_CLIENT.getId())))
@@ -413,17 +1074,29 @@ public class JdbcOAuth2AuthorizationServiceTests {
 		db.shutdown();
 	}
 
+	private static OAuth2Authorization authorization(String id, String principalName) {
+		Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		return OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(id)
+				.principalName(principalName)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-token-" + id,
+						issuedAt, issuedAt.plus(5, ChronoUnit.MINUTES)))
+				.refreshToken(new OAuth2RefreshToken("refresh-token-" + id, issuedAt, issuedAt.plus(1, ChronoUnit.HOURS)))
+				.build();
+	}
+
 	private static EmbeddedDatabase createDb() {
 		return createDb(OAUTH2_AUTHORIZATION_SCHEMA_SQL_RESOURCE);
 	}
 
-	private static EmbeddedDatabase createDb(String schema) {
+	private static EmbeddedDatabase createDb(String... schemas) {
 		// @formatter:off
 		return new EmbeddedDatabaseBuilder()
 				.generateUniqueName(true)
 				.setType(EmbeddedDatabaseType.HSQL)
 				.setScriptEncoding("UTF-8")
-				.addScript(schema)
+				.addScripts(schemas)
 				.build();
 		// @formatter:on
 	}
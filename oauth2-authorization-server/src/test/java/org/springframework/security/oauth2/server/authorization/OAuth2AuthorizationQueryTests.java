@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization;
+
+import java.time.Instant;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link OAuth2AuthorizationQuery}.
+ */
+public class OAuth2AuthorizationQueryTests {
+
+	@Test
+	public void buildWhenNoCriteriaThenMatchesAny() {
+		OAuth2AuthorizationQuery query = OAuth2AuthorizationQuery.builder().build();
+
+		assertThat(query.getPrincipalName()).isNull();
+		assertThat(query.getRegisteredClientId()).isNull();
+		assertThat(query.getExpiresAfter()).isNull();
+		assertThat(query.getExpiresBefore()).isNull();
+	}
+
+	@Test
+	public void buildWhenExpiresAfterNotBeforeExpiresBeforeThenThrowIllegalArgumentException() {
+		Instant now = Instant.now();
+		assertThatThrownBy(() -> OAuth2AuthorizationQuery.builder()
+				.expiresAfter(now)
+				.expiresBefore(now)
+				.build())
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("expiresAfter must be before expiresBefore");
+	}
+
+	@Test
+	public void principalNameWhenEmptyThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> OAuth2AuthorizationQuery.builder().principalName(""))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("principalName cannot be empty");
+	}
+
+}
@@ -17,6 +17,8 @@ package org.springframework.security.oauth2.server.authorization;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -132,4 +134,111 @@ public class OAuth2AuthorizationTests {
 		assertThat(authorization.getAccessToken().getToken()).isEqualTo(ACCESS_TOKEN);
 		assertThat(authorization.getRefreshToken().getToken()).isEqualTo(REFRESH_TOKEN);
 	}
+
+	@Test
+	public void buildWhenAttributesAndMetadataSuppliedThenResolvedOnFirstAccess() {
+		AtomicInteger resolved = new AtomicInteger();
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attributes(() -> {
+					resolved.incrementAndGet();
+					return Collections.singletonMap("name", "supplied-value");
+				})
+				.attribute("eager-name", "eager-value")
+				.token(ACCESS_TOKEN, () -> {
+					resolved.incrementAndGet();
+					return Collections.singletonMap("metadata-name", "metadata-value");
+				})
+				.build();
+		assertThat(resolved.get()).isZero();
+
+		assertThat(authorization.<String>getAttribute("name")).isEqualTo("supplied-value");
+		assertThat(authorization.<String>getAttribute("eager-name")).isEqualTo("eager-value");
+		assertThat(authorization.getAccessToken().<String>getMetadata("metadata-name")).isEqualTo("metadata-value");
+		assertThat(authorization.getAccessToken().isInvalidated()).isFalse();
+		assertThat(resolved.get()).isEqualTo(2);
+		assertThatThrownBy(() -> authorization.getAttributes().put("name", "value"))
+				.isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	@Test
+	public void fromWhenAttributesSuppliedThenNotResolved() {
+		AtomicInteger resolved = new AtomicInteger();
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attributes(() -> {
+					resolved.incrementAndGet();
+					return Collections.singletonMap("name", "supplied-value");
+				})
+				.token(AUTHORIZATION_CODE)
+				.persisted()
+				.build();
+
+		OAuth2Authorization derivedAuthorization = OAuth2Authorization.from(authorization)
+				.accessToken(ACCESS_TOKEN)
+				.build();
+		assertThat(derivedAuthorization.getChanges().isAttributesChanged()).isFalse();
+		OAuth2Authorization updatedAuthorization = OAuth2Authorization.from(derivedAuthorization)
+				.attribute("other-name", "other-value")
+				.build();
+		assertThat(resolved.get()).isZero();
+
+		assertThat(derivedAuthorization.<String>getAttribute("name")).isEqualTo("supplied-value");
+		assertThat(updatedAuthorization.getAttributes())
+				.containsEntry("name", "supplied-value")
+				.containsEntry("other-name", "other-value");
+		assertThat(resolved.get()).isEqualTo(1);
+
+		OAuth2Authorization removedAuthorization = OAuth2Authorization.from(updatedAuthorization)
+				.attributes((attrs) -> attrs.remove("name"))
+				.build();
+		assertThat(removedAuthorization.getAttributes()).containsOnlyKeys("other-name");
+	}
+
+	@Test
+	public void buildWhenDerivedFromPersistedAuthorizationThenChangesTracked() {
+		OAuth2Authorization persistedAuthorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.attribute("name", "value")
+				.token(AUTHORIZATION_CODE)
+				.persisted()
+				.build();
+		assertThat(persistedAuthorization.getChanges().isEmpty()).isTrue();
+		assertThat(OAuth2Authorization.from(persistedAuthorization).build().getChanges().isEmpty()).isTrue();
+
+		OAuth2Authorization authorization = OAuth2Authorization.from(persistedAuthorization)
+				.token(AUTHORIZATION_CODE, (metadata) -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+				.accessToken(ACCESS_TOKEN)
+				.build();
+		assertThat(authorization.getChanges().getTokenTypes())
+				.containsOnly(OAuth2AuthorizationCode.class, OAuth2AccessToken.class);
+		assertThat(authorization.getChanges().isAttributesChanged()).isFalse();
+
+		authorization = OAuth2Authorization.from(authorization)
+				.attribute("name", "other-value")
+				.build();
+		assertThat(authorization.getChanges().getTokenTypes())
+				.containsOnly(OAuth2AuthorizationCode.class, OAuth2AccessToken.class);
+		assertThat(authorization.getChanges().isAttributesChanged()).isTrue();
+
+		assertThat(OAuth2Authorization.from(authorization).principalName("other-principal").build().getChanges()).isNull();
+	}
+
+	@Test
+	public void buildWhenNotDerivedFromPersistedAuthorizationThenChangesUnknown() {
+		OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(REGISTERED_CLIENT)
+				.id(ID)
+				.principalName(PRINCIPAL_NAME)
+				.authorizationGrantType(AUTHORIZATION_GRANT_TYPE)
+				.token(AUTHORIZATION_CODE)
+				.build();
+		assertThat(authorization.getChanges()).isNull();
+		assertThat(OAuth2Authorization.from(authorization).build().getChanges()).isNull();
+	}
 }
@@ -15,6 +15,7 @@
  */
 package org.springframework.security.oauth2.server.authorization.authentication;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -44,6 +45,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -113,6 +115,20 @@ public class OAuth2ClientAuthenticationProviderTests {
 				.hasMessage("passwordEncoder cannot be null");
 	}
 
+	@Test
+	public void setVerifiedClientSecretTimeToLiveWhenNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authenticationProvider.setVerifiedClientSecretTimeToLive(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("verifiedClientSecretTimeToLive cannot be null");
+	}
+
+	@Test
+	public void setVerifiedClientSecretTimeToLiveWhenNegativeThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.authenticationProvider.setVerifiedClientSecretTimeToLive(Duration.ofSeconds(-1)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("verifiedClientSecretTimeToLive cannot be negative");
+	}
+
 	@Test
 	public void supportsWhenTypeOAuth2ClientAuthenticationTokenThenReturnTrue() {
 		assertThat(this.authenticationProvider.supports(OAuth2ClientAuthenticationToken.class)).isTrue();
@@ -149,6 +165,62 @@ public class OAuth2ClientAuthenticationProviderTests {
 		verify(this.passwordEncoder).matches(any(), any());
 	}
 
+	@Test
+	public void authenticateWhenVerifiedClientSecretCachedThenPasswordEncoderNotInvokedAgain() {
+		RegisteredClient registeredClient = TestRegisteredClients.registeredClient().build();
+		when(this.registeredClientRepository.findByClientId(eq(registeredClient.getClientId())))
+				.thenReturn(registeredClient);
+		this.authenticationProvider.setVerifiedClientSecretTimeToLive(Duration.ofMinutes(1));
+
+		OAuth2ClientAuthenticationToken authentication = new OAuth2ClientAuthenticationToken(
+				registeredClient.getClientId(), registeredClient.getClientSecret(), ClientAuthenticationMethod.CLIENT_SECRET_BASIC, null);
+		assertThat(this.authenticationProvider.authenticate(authentication).isAuthenticated()).isTrue();
+		assertThat(this.authenticationProvider.authenticate(authentication).isAuthenticated()).isTrue();
+		verify(this.passwordEncoder, times(1)).matches(any(), any());
+	}
+
+	@Test
+	public void authenticateWhenVerifiedClientSecretCachedAndInvalidClientSecretThenThrowOAuth2AuthenticationException() {
+		RegisteredClient registeredClient = TestRegisteredClients.registeredClient().build();
+		when(this.registeredClientRepository.findByClientId(eq(registeredClient.getClientId())))
+				.thenReturn(registeredClient);
+		this.authenticationProvider.setVerifiedClientSecretTimeToLive(Duration.ofMinutes(1));
+		this.authenticationProvider.authenticate(new OAuth2ClientAuthenticationToken(
+				registeredClient.getClientId(), registeredClient.getClientSecret(), ClientAuthenticationMethod.CLIENT_SECRET_BASIC, null));
+
+		OAuth2ClientAuthenticationToken authentication = new OAuth2ClientAuthenticationToken(
+				registeredClient.getClientId(), registeredClient.getClientSecret() + "-invalid", ClientAuthenticationMethod.CLIENT_SECRET_BASIC, null);
+		assertThatThrownBy(() -> this.authenticationProvider.authenticate(authentication))
+				.isInstanceOf(OAuth2AuthenticationException.class)
+				.extracting(ex -> ((OAuth2AuthenticationException) ex).getError())
+				.extracting("errorCode")
+				.isEqualTo(OAuth2ErrorCodes.INVALID_CLIENT);
+		verify(this.passwordEncoder, times(2)).matches(any(), any());
+	}
+
+	@Test
+	public void authenticateWhenVerifiedClientSecretCachedAndRegisteredClientSecretChangedThenThrowOAuth2AuthenticationException() {
+		RegisteredClient registeredClient = TestRegisteredClients.registeredClient().build();
+		when(this.registeredClientRepository.findByClientId(eq(registeredClient.getClientId())))
+				.thenReturn(registeredClient);
+		this.authenticationProvider.setVerifiedClientSecretTimeToLive(Duration.ofMinutes(1));
+		OAuth2ClientAuthenticationToken authentication = new OAuth2ClientAuthenticationToken(
+				registeredClient.getClientId(), registeredClient.getClientSecret(), ClientAuthenticationMethod.CLIENT_SECRET_BASIC, null);
+		this.authenticationProvider.authenticate(authentication);
+
+		RegisteredClient updatedRegisteredClient = RegisteredClient.from(registeredClient)
+				.clientSecret(registeredClient.getClientSecret() + "-rotated")
+				.build();
+		when(this.registeredClientRepository.findByClientId(eq(registeredClient.getClientId())))
+				.thenReturn(updatedRegisteredClient);
+		assertThatThrownBy(() -> this.authenticationProvider.authenticate(authentication))
+				.isInstanceOf(OAuth2AuthenticationException.class)
+				.extracting(ex -> ((OAuth2AuthenticationException) ex).getError())
+				.extracting("errorCode")
+				.isEqualTo(OAuth2ErrorCodes.INVALID_CLIENT);
+		verify(this.passwordEncoder, times(2)).matches(any(), any());
+	}
+
 	@Test
 	public void authenticateWhenClientSecretNotProvidedThenThrowOAuth2AuthenticationException() {
 		RegisteredClient registeredClient = TestRegisteredClients.registeredClient().build();
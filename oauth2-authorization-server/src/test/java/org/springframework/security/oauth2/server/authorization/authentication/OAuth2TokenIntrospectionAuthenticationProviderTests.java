@@ -245,6 +245,36 @@ public class OAuth2TokenIntrospectionAuthenticationProviderTests {
 		assertThat(tokenClaims.getId()).isEqualTo(jwtClaims.getId());
 	}
 
+	@Test
+	public void authenticateWhenValidAccessTokenWithoutIssuerThenActive() {
+		RegisteredClient authorizedClient = TestRegisteredClients.registeredClient().build();
+		Instant issuedAt = Instant.now();
+		Instant expiresAt = issuedAt.plus(Duration.ofHours(1));
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(
+				OAuth2AccessToken.TokenType.BEARER, "reference-access-token", issuedAt, expiresAt);
+		JwtClaimsSet jwtClaims = TestJwtClaimsSets.jwtClaimsSet()
+				.claims((claims) -> claims.remove(JwtClaimNames.ISS))
+				.build();
+		OAuth2Authorization authorization = TestOAuth2Authorizations
+				.authorization(authorizedClient, accessToken, jwtClaims.getClaims())
+				.build();
+		when(this.authorizationService.findByToken(eq(accessToken.getTokenValue()), isNull()))
+				.thenReturn(authorization);
+		when(this.registeredClientRepository.findById(eq(authorizedClient.getId()))).thenReturn(authorizedClient);
+		OAuth2ClientAuthenticationToken clientPrincipal = new OAuth2ClientAuthenticationToken(
+				TestRegisteredClients.registeredClient2().build());
+
+		OAuth2TokenIntrospectionAuthenticationToken authentication = new OAuth2TokenIntrospectionAuthenticationToken(
+				accessToken.getTokenValue(), clientPrincipal, null, null);
+		OAuth2TokenIntrospectionAuthenticationToken authenticationResult =
+				(OAuth2TokenIntrospectionAuthenticationToken) this.authenticationProvider.authenticate(authentication);
+
+		OAuth2TokenIntrospection tokenClaims = authenticationResult.getTokenClaims();
+		assertThat(tokenClaims.isActive()).isTrue();
+		assertThat(tokenClaims.getSubject()).isEqualTo(jwtClaims.getSubject());
+		assertThat(tokenClaims.getIssuer()).isNull();
+	}
+
 	@Test
 	public void authenticateWhenValidRefreshTokenThenActive() {
 		RegisteredClient authorizedClient = TestRegisteredClients.registeredClient().build();
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.client;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CachingRegisteredClientRepository}.
+ */
+public class CachingRegisteredClientRepositoryTests {
+	private RegisteredClient registeredClient = TestRegisteredClients.registeredClient().build();
+	private RegisteredClientRepository delegate;
+	private CachingRegisteredClientRepository registeredClientRepository;
+
+	@Before
+	public void setUp() {
+		this.delegate = mock(RegisteredClientRepository.class);
+		when(this.delegate.findById(this.registeredClient.getId())).thenReturn(this.registeredClient);
+		when(this.delegate.findByClientId(this.registeredClient.getClientId())).thenReturn(this.registeredClient);
+		this.registeredClientRepository = new CachingRegisteredClientRepository(this.delegate);
+	}
+
+	@Test
+	public void constructorWhenDelegateNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> new CachingRegisteredClientRepository(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("delegate cannot be null");
+	}
+
+	@Test
+	public void setTimeToLiveWhenNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.registeredClientRepository.setTimeToLive(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("timeToLive cannot be null");
+	}
+
+	@Test
+	public void setMaxSizeWhenNotPositiveThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.registeredClientRepository.setMaxSize(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("maxSize must be greater than 0");
+	}
+
+	@Test
+	public void findByIdWhenCachedThenDelegateNotCalledAgain() {
+		assertThat(this.registeredClientRepository.findById(this.registeredClient.getId())).isEqualTo(this.registeredClient);
+		assertThat(this.registeredClientRepository.findById(this.registeredClient.getId())).isEqualTo(this.registeredClient);
+		verify(this.delegate, times(1)).findById(this.registeredClient.getId());
+	}
+
+	@Test
+	public void findByClientIdWhenCachedByIdThenDelegateNotCalled() {
+		this.registeredClientRepository.findById(this.registeredClient.getId());
+		assertThat(this.registeredClientRepository.findByClientId(this.registeredClient.getClientId()))
+				.isEqualTo(this.registeredClient);
+		verify(this.delegate, times(0)).findByClientId(this.registeredClient.getClientId());
+	}
+
+	@Test
+	public void findByClientIdWhenNotFoundThenNotCached() {
+		assertThat(this.registeredClientRepository.findByClientId("unknown")).isNull();
+		assertThat(this.registeredClientRepository.findByClientId("unknown")).isNull();
+		verify(this.delegate, times(2)).findByClientId("unknown");
+	}
+
+	@Test
+	public void findByIdWhenTimeToLiveElapsedThenReloaded() {
+		Instant now = Instant.now();
+		this.registeredClientRepository.setClock(Clock.fixed(now, ZoneOffset.UTC));
+		this.registeredClientRepository.setTimeToLive(Duration.ofMinutes(1));
+		this.registeredClientRepository.findById(this.registeredClient.getId());
+
+		this.registeredClientRepository.setClock(Clock.fixed(now.plus(Duration.ofMinutes(2)), ZoneOffset.UTC));
+		this.registeredClientRepository.findById(this.registeredClient.getId());
+		verify(this.delegate, times(2)).findById(this.registeredClient.getId());
+	}
+
+	@Test
+	public void saveWhenCachedThenInvalidated() {
+		this.registeredClientRepository.findByClientId(this.registeredClient.getClientId());
+		RegisteredClient updatedRegisteredClient = RegisteredClient.from(this.registeredClient)
+				.clientName("updated-client-name")
+				.build();
+		this.registeredClientRepository.save(updatedRegisteredClient);
+		verify(this.delegate).save(updatedRegisteredClient);
+
+		when(this.delegate.findByClientId(this.registeredClient.getClientId())).thenReturn(updatedRegisteredClient);
+		assertThat(this.registeredClientRepository.findByClientId(this.registeredClient.getClientId()))
+				.isEqualTo(updatedRegisteredClient);
+	}
+
+	@Test
+	public void findByIdWhenSavedWhileLoadingThenLoadedNotCached() {
+		RegisteredClient updatedRegisteredClient = RegisteredClient.from(this.registeredClient)
+				.clientName("updated-client-name")
+				.build();
+		when(this.delegate.findById(this.registeredClient.getId()))
+				.thenAnswer((invocation) -> {
+					// Saved concurrently, after the previous version was loaded
+					this.registeredClientRepository.save(updatedRegisteredClient);
+					return this.registeredClient;
+				})
+				.thenReturn(updatedRegisteredClient);
+
+		assertThat(this.registeredClientRepository.findById(this.registeredClient.getId())).isEqualTo(this.registeredClient);
+		assertThat(this.registeredClientRepository.findById(this.registeredClient.getId())).isEqualTo(updatedRegisteredClient);
+		assertThat(this.registeredClientRepository.findById(this.registeredClient.getId())).isEqualTo(updatedRegisteredClient);
+		verify(this.delegate, times(2)).findById(this.registeredClient.getId());
+	}
+
+	@Test
+	public void findByIdWhenMaxSizeExceededThenEvicted() {
+		RegisteredClient registeredClient2 = TestRegisteredClients.registeredClient2().build();
+		when(this.delegate.findById(registeredClient2.getId())).thenReturn(registeredClient2);
+		this.registeredClientRepository.setMaxSize(1);
+
+		this.registeredClientRepository.findById(this.registeredClient.getId());
+		this.registeredClientRepository.findById(registeredClient2.getId());
+		this.registeredClientRepository.findById(this.registeredClient.getId());
+		verify(this.delegate, times(2)).findById(this.registeredClient.getId());
+	}
+
+}
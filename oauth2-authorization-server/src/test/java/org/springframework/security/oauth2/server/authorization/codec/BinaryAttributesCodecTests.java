@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.security.oauth2.server.authorization.codec;
+
+import java.net.URL;
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link BinaryAttributesCodec}.
+ */
+public class BinaryAttributesCodecTests {
+	private final BinaryAttributesCodec codec = new BinaryAttributesCodec();
+
+	@Test
+	public void constructorWhenFallbackCodecNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> new BinaryAttributesCodec(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("fallbackCodec cannot be null");
+	}
+
+	@Test
+	public void encodeDecodeWhenSupportedTypesThenRoundTrip() throws Exception {
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("sub", "user");
+		claims.put("aud", Collections.singletonList("client"));
+		claims.put("iat", Instant.ofEpochSecond(1600000000L, 123));
+
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("null", null);
+		attributes.put("string", "v\u00e4lue");
+		attributes.put("true", true);
+		attributes.put("false", false);
+		attributes.put("integer", 42);
+		attributes.put("long", Long.MAX_VALUE);
+		attributes.put("double", 0.5d);
+		attributes.put("instant", Instant.now());
+		attributes.put("duration", Duration.ofMinutes(5).plusNanos(1));
+		attributes.put("url", new URL("https://example.com"));
+		attributes.put("list", Arrays.asList("a", 1, null));
+		attributes.put("set", new LinkedHashSet<>(Arrays.asList("read", "write")));
+		attributes.put("claims", claims);
+		attributes.put("signatureAlgorithm", SignatureAlgorithm.ES256);
+
+		String encoded = this.codec.encode(attributes);
+		assertThat(encoded).startsWith("b1:");
+		assertThat(this.codec.decode(encoded)).isEqualTo(attributes);
+	}
+
+	@Test
+	public void encodeDecodeWhenAuthorizationRequestAndPrincipalThenRoundTrip() {
+		OAuth2AuthorizationRequest authorizationRequest = OAuth2AuthorizationRequest.authorizationCode()
+				.authorizationUri("https://provider.com/oauth2/authorize")
+				.clientId("client-1")
+				.redirectUri("https://example.com")
+				.scopes(new LinkedHashSet<>(Arrays.asList("openid", "profile")))
+				.state("state")
+				.additionalParameters(Collections.singletonMap("nonce", "nonce"))
+				.attributes(Collections.singletonMap("registration_id", "client-1"))
+				.build();
+		UsernamePasswordAuthenticationToken principal = new UsernamePasswordAuthenticationToken(
+				"user", null, AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B"));
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(OAuth2AuthorizationRequest.class.getName(), authorizationRequest);
+		attributes.put(Principal.class.getName(), principal);
+
+		Map<String, Object> result = this.codec.decode(this.codec.encode(attributes));
+		assertThat(result.get(OAuth2AuthorizationRequest.class.getName()))
+				.usingRecursiveComparison().isEqualTo(authorizationRequest);
+		UsernamePasswordAuthenticationToken resultPrincipal =
+				(UsernamePasswordAuthenticationToken) result.get(Principal.class.getName());
+		assertThat(resultPrincipal).isEqualTo(principal);
+		assertThat(resultPrincipal.isAuthenticated()).isTrue();
+	}
+
+	@Test
+	public void encodeDecodeWhenUnsupportedTypeThenFallbackCodecUsed() {
+		Map<String, Object> attributes = Collections.singletonMap("authority", new SimpleGrantedAuthority("ROLE_A"));
+
+		Map<String, Object> result = this.codec.decode(this.codec.encode(attributes));
+		assertThat(result).isEqualTo(attributes);
+	}
+
+	@Test
+	public void decodeWhenJsonThenDecodedWithFallbackCodec() {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("string", "value");
+		attributes.put("duration", Duration.ofMinutes(5));
+		String json = new JacksonAttributesCodec().encode(attributes);
+
+		assertThat(this.codec.decode(json)).isEqualTo(attributes);
+	}
+
+	@Test
+	public void encodeWhenAuthorizationRequestThenSmallerThanJson() {
+		OAuth2AuthorizationRequest authorizationRequest = OAuth2AuthorizationRequest.authorizationCode()
+				.authorizationUri("https://provider.com/oauth2/authorize")
+				.clientId("client-1")
+				.redirectUri("https://example.com")
+				.scopes(new LinkedHashSet<>(Arrays.asList("openid", "profile")))
+				.state("state")
+				.build();
+		Map<String, Object> attributes = Collections.singletonMap(
+				OAuth2AuthorizationRequest.class.getName(), authorizationRequest);
+
+		String json = new JacksonAttributesCodec().encode(attributes);
+		assertThat(this.codec.encode(attributes).length()).isLessThan(json.length());
+	}
+
+}
@@ -17,6 +17,8 @@ package org.springframework.security.oauth2.server.authorization.config;
 
 import org.junit.Test;
 
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
@@ -38,6 +40,24 @@ public class ProviderSettingsTests {
 		assertThat(providerSettings.getTokenRevocationEndpoint()).isEqualTo("/oauth2/revoke");
 		assertThat(providerSettings.getTokenIntrospectionEndpoint()).isEqualTo("/oauth2/introspect");
 		assertThat(providerSettings.getOidcClientRegistrationEndpoint()).isEqualTo("/connect/register");
+		assertThat(providerSettings.getIdTokenSigningAlgorithms()).containsExactly(SignatureAlgorithm.RS256);
+	}
+
+	@Test
+	public void idTokenSigningAlgorithmsWhenProvidedThenSet() {
+		ProviderSettings providerSettings = ProviderSettings.builder()
+				.idTokenSigningAlgorithms(SignatureAlgorithm.RS256, SignatureAlgorithm.ES256)
+				.build();
+
+		assertThat(providerSettings.getIdTokenSigningAlgorithms())
+				.containsExactly(SignatureAlgorithm.RS256, SignatureAlgorithm.ES256);
+	}
+
+	@Test
+	public void idTokenSigningAlgorithmsWhenEmptyThenThrowIllegalArgumentException() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> ProviderSettings.builder().idTokenSigningAlgorithms())
+				.withMessage("idTokenSigningAlgorithms cannot be empty");
 	}
 
 	@Test
@@ -77,7 +97,7 @@ public class ProviderSettingsTests {
 				.settings(settings -> settings.put("name2", "value2"))
 				.build();
 
-		assertThat(providerSettings.getSettings()).hasSize(8);
+		assertThat(providerSettings.getSettings()).hasSize(9);
 		assertThat(providerSettings.<String>getSetting("name1")).isEqualTo("value1");
 		assertThat(providerSettings.<String>getSetting("name2")).isEqualTo("value2");
 	}
@@ -15,15 +15,20 @@
  */
 package org.springframework.security.oauth2.server.authorization.oidc.web;
 
+import java.time.Duration;
+
 import javax.servlet.FilterChain;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Test;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.server.authorization.config.ProviderSettings;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -121,6 +126,25 @@ public class OidcProviderConfigurationEndpointFilterTests {
 		assertThat(providerConfigurationResponse).contains("\"registration_endpoint\":\"https://example.com/issuer1/connect/register\"");
 	}
 
+	@Test
+	public void doFilterWhenIdTokenSigningAlgorithmsConfiguredThenAdvertised() throws Exception {
+		ProviderSettings providerSettings = ProviderSettings.builder()
+				.issuer("https://example.com/issuer1")
+				.idTokenSigningAlgorithms(SignatureAlgorithm.RS256, SignatureAlgorithm.ES256)
+				.build();
+		OidcProviderConfigurationEndpointFilter filter = new OidcProviderConfigurationEndpointFilter(providerSettings);
+
+		String requestUri = DEFAULT_OIDC_PROVIDER_CONFIGURATION_ENDPOINT_URI;
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+		request.setServletPath(requestUri);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain filterChain = mock(FilterChain.class);
+
+		filter.doFilter(request, response, filterChain);
+
+		assertThat(response.getContentAsString()).contains("\"id_token_signing_alg_values_supported\":[\"RS256\",\"ES256\"]");
+	}
+
 	@Test
 	public void doFilterWhenProviderSettingsWithInvalidIssuerThenThrowIllegalArgumentException() {
 		ProviderSettings providerSettings = ProviderSettings.builder()
@@ -139,4 +163,70 @@ public class OidcProviderConfigurationEndpointFilterTests {
 				.isThrownBy(() -> filter.doFilter(request, response, filterChain))
 				.withMessage("issuer must be a valid URL");
 	}
+
+	@Test
+	public void doFilterWhenIfNoneMatchETagThenNotModified() throws Exception {
+		OidcProviderConfigurationEndpointFilter filter = new OidcProviderConfigurationEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+
+		MockHttpServletResponse response = doRequest(filter, null);
+		String eTag = response.getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).isNotNull();
+		assertThat(response.getHeader(HttpHeaders.LAST_MODIFIED)).isNotNull();
+		assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("max-age=3600, must-revalidate");
+
+		response = doRequest(filter, eTag);
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		assertThat(response.getContentAsByteArray()).isEmpty();
+	}
+
+	@Test
+	public void doFilterWhenProviderSettingsChangedThenRerendered() throws Exception {
+		OidcProviderConfigurationEndpointFilter filter = new OidcProviderConfigurationEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		String eTag = doRequest(filter, null).getHeader(HttpHeaders.ETAG);
+
+		filter.setProviderSettings(ProviderSettings.builder().issuer("https://example.com/issuer2").build());
+		MockHttpServletResponse response = doRequest(filter, eTag);
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag);
+		assertThat(response.getContentAsString()).contains("\"issuer\":\"https://example.com/issuer2\"");
+	}
+
+	@Test
+	public void setCacheMaxAgeWhenNegativeThenThrowIllegalArgumentException() {
+		OidcProviderConfigurationEndpointFilter filter = new OidcProviderConfigurationEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> filter.setCacheMaxAge(Duration.ofSeconds(-1)))
+				.withMessage("cacheMaxAge cannot be negative");
+	}
+
+	@Test
+	public void doFilterWhenCacheMaxAgeSetThenAdvertised() throws Exception {
+		OidcProviderConfigurationEndpointFilter filter = new OidcProviderConfigurationEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		filter.setCacheMaxAge(Duration.ofMinutes(5));
+		assertThat(doRequest(filter, null).getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("max-age=300, must-revalidate");
+
+		filter.setCacheMaxAge(Duration.ZERO);
+		assertThat(doRequest(filter, null).getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("no-cache");
+	}
+
+	private static MockHttpServletResponse doRequest(OidcProviderConfigurationEndpointFilter filter, String ifNoneMatch) throws Exception {
+		String requestUri = DEFAULT_OIDC_PROVIDER_CONFIGURATION_ENDPOINT_URI;
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+		request.setServletPath(requestUri);
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain filterChain = mock(FilterChain.class);
+
+		filter.doFilter(request, response, filterChain);
+
+		verifyNoInteractions(filterChain);
+		return response;
+	}
 }
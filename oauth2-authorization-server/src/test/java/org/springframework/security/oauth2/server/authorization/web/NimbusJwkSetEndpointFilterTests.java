@@ -15,6 +15,7 @@
  */
 package org.springframework.security.oauth2.server.authorization.web;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,6 +34,8 @@ import com.nimbusds.jose.proc.SecurityContext;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -42,8 +45,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link NimbusJwkSetEndpointFilter}.
@@ -77,6 +82,20 @@ public class NimbusJwkSetEndpointFilterTests {
 				.hasMessage("jwkSetEndpointUri cannot be empty");
 	}
 
+	@Test
+	public void setRefreshIntervalWhenNullThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.filter.setRefreshInterval(null))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("refreshInterval cannot be null");
+	}
+
+	@Test
+	public void setRefreshIntervalWhenNegativeThenThrowIllegalArgumentException() {
+		assertThatThrownBy(() -> this.filter.setRefreshInterval(Duration.ofSeconds(-1)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("refreshInterval cannot be negative");
+	}
+
 	@Test
 	public void doFilterWhenNotJwkSetRequestThenNotProcessed() throws Exception {
 		String requestUri = "/path";
@@ -158,4 +177,66 @@ public class NimbusJwkSetEndpointFilterTests {
 		JWKSet jwkSet = JWKSet.parse(response.getContentAsString());
 		assertThat(jwkSet.getKeys()).isEmpty();
 	}
+
+	@Test
+	public void doFilterWhenIfNoneMatchETagThenNotModified() throws Exception {
+		this.jwkList.add(TestJwks.DEFAULT_RSA_JWK);
+
+		MockHttpServletResponse response = doJwkSetRequest(null);
+		String eTag = response.getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).startsWith("\"").endsWith("\"");
+		assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("no-cache");
+
+		response = doJwkSetRequest(eTag);
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(eTag);
+		assertThat(response.getContentAsByteArray()).isEmpty();
+	}
+
+	@Test
+	public void doFilterWhenJwkSetChangedThenETagChanged() throws Exception {
+		this.jwkList.add(TestJwks.DEFAULT_RSA_JWK);
+		String eTag = doJwkSetRequest(null).getHeader(HttpHeaders.ETAG);
+
+		this.jwkList.add(TestJwks.DEFAULT_EC_JWK);
+		MockHttpServletResponse response = doJwkSetRequest(eTag);
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag);
+		assertThat(JWKSet.parse(response.getContentAsString()).getKeys()).hasSize(2);
+	}
+
+	@Test
+	public void doFilterWhenWithinRefreshIntervalThenJwkSourceNotConsulted() throws Exception {
+		this.jwkList.add(TestJwks.DEFAULT_RSA_JWK);
+		JWKSource<SecurityContext> delegate = this.jwkSource;
+		this.jwkSource = mock(JWKSource.class);
+		when(this.jwkSource.get(any(), any())).thenAnswer((invocation) ->
+				delegate.get(invocation.getArgument(0), invocation.getArgument(1)));
+		this.filter = new NimbusJwkSetEndpointFilter(this.jwkSource);
+		this.filter.setRefreshInterval(Duration.ofMinutes(5));
+
+		MockHttpServletResponse response = doJwkSetRequest(null);
+		assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("max-age=300, must-revalidate");
+		response = doJwkSetRequest(response.getHeader(HttpHeaders.ETAG));
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		verify(this.jwkSource, times(1)).get(any(), any());
+	}
+
+	private MockHttpServletResponse doJwkSetRequest(String ifNoneMatch) throws Exception {
+		String requestUri = DEFAULT_JWK_SET_ENDPOINT_URI;
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+		request.setServletPath(requestUri);
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain filterChain = mock(FilterChain.class);
+
+		this.filter.doFilter(request, response, filterChain);
+
+		verifyNoInteractions(filterChain);
+		return response;
+	}
 }
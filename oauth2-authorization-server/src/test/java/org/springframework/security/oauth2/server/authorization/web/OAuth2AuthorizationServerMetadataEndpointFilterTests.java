@@ -15,6 +15,7 @@
  */
 package org.springframework.security.oauth2.server.authorization.web;
 
+import java.time.Duration;
 
 import javax.servlet.FilterChain;
 import javax.servlet.http.HttpServletRequest;
@@ -22,6 +23,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Test;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -146,4 +149,70 @@ public class OAuth2AuthorizationServerMetadataEndpointFilterTests {
 				.withMessage("issuer must be a valid URL");
 	}
 
+	@Test
+	public void doFilterWhenIfNoneMatchETagThenNotModified() throws Exception {
+		OAuth2AuthorizationServerMetadataEndpointFilter filter = new OAuth2AuthorizationServerMetadataEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+
+		MockHttpServletResponse response = doRequest(filter, null);
+		String eTag = response.getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).isNotNull();
+		assertThat(response.getHeader(HttpHeaders.LAST_MODIFIED)).isNotNull();
+		assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("max-age=3600, must-revalidate");
+
+		response = doRequest(filter, eTag);
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		assertThat(response.getContentAsByteArray()).isEmpty();
+	}
+
+	@Test
+	public void doFilterWhenProviderSettingsChangedThenRerendered() throws Exception {
+		OAuth2AuthorizationServerMetadataEndpointFilter filter = new OAuth2AuthorizationServerMetadataEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		String eTag = doRequest(filter, null).getHeader(HttpHeaders.ETAG);
+
+		filter.setProviderSettings(ProviderSettings.builder().issuer("https://example.com/issuer2").build());
+		MockHttpServletResponse response = doRequest(filter, eTag);
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag);
+		assertThat(response.getContentAsString()).contains("\"issuer\":\"https://example.com/issuer2\"");
+	}
+
+	@Test
+	public void setCacheMaxAgeWhenNegativeThenThrowIllegalArgumentException() {
+		OAuth2AuthorizationServerMetadataEndpointFilter filter = new OAuth2AuthorizationServerMetadataEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> filter.setCacheMaxAge(Duration.ofSeconds(-1)))
+				.withMessage("cacheMaxAge cannot be negative");
+	}
+
+	@Test
+	public void doFilterWhenCacheMaxAgeSetThenAdvertised() throws Exception {
+		OAuth2AuthorizationServerMetadataEndpointFilter filter = new OAuth2AuthorizationServerMetadataEndpointFilter(
+				ProviderSettings.builder().issuer("https://example.com/issuer1").build());
+		filter.setCacheMaxAge(Duration.ofMinutes(5));
+		assertThat(doRequest(filter, null).getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("max-age=300, must-revalidate");
+
+		filter.setCacheMaxAge(Duration.ZERO);
+		assertThat(doRequest(filter, null).getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("no-cache");
+	}
+
+	private static MockHttpServletResponse doRequest(OAuth2AuthorizationServerMetadataEndpointFilter filter, String ifNoneMatch) throws Exception {
+		String requestUri = DEFAULT_OAUTH2_AUTHORIZATION_SERVER_METADATA_ENDPOINT_URI;
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+		request.setServletPath(requestUri);
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain filterChain = mock(FilterChain.class);
+
+		filter.doFilter(request, response, filterChain);
+
+		verifyNoInteractions(filterChain);
+		return response;
+	}
+
 }